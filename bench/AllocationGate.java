@@ -0,0 +1,77 @@
+import cse.ElementParser;
+import cse.Machine;
+import cse.Options;
+import cse.Stack;
+import cse.element.Value;
+import tree.Converters;
+import tree.FlatTree;
+import tree.TreeParser;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+
+/**
+ * Checks that an RPAL loop allocates no more than a budget of bytes per iteration.
+ * <p>
+ * The same loop is evaluated for two iteration counts; the difference in allocated bytes divided
+ * by the difference in iterations is the cost of one iteration, free of startup and parsing.
+ * Each count is run a few times first so the measured run is compiled.
+ * <pre>
+ * java AllocationGate BUDGET small.ast SMALL_ITERATIONS large.ast LARGE_ITERATIONS
+ * </pre>
+ * Exits with status 1 when the budget is exceeded.
+ */
+public class AllocationGate {
+    private static final int WARMUP_RUNS = 10;
+    private static final int MEASURED_RUNS = 5;
+
+    public static void main(String[] args) throws Exception {
+        long budget = Long.parseLong(args[0]);
+        long smallIterations = Long.parseLong(args[2]);
+        long largeIterations = Long.parseLong(args[4]);
+        long small = allocatedBytes(args[1]);
+        long large = allocatedBytes(args[3]);
+        double perIteration = (double) (large - small) / (largeIterations - smallIterations);
+        System.out.printf("%.1f bytes per iteration (budget %d)%n", perIteration, budget);
+        if (perIteration > budget) {
+            System.out.println("Allocation budget exceeded");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @param fileName Ast of the loop
+     * @return Fewest bytes allocated by an evaluation after warming up
+     */
+    private static long allocatedBytes(String fileName) throws Exception {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        PrintStream out = System.out;
+        long fewest = Long.MAX_VALUE;
+        try {
+            System.setOut(new PrintStream(new OutputStream() {
+                @Override
+                public void write(int b) {
+                }
+            }));
+            for (int run = 0; run < WARMUP_RUNS + MEASURED_RUNS; run++) {
+                FlatTree tree = TreeParser.flatTreeFromFile(fileName);
+                Converters.astToSt(tree);
+                ArrayList<Stack<Value>> controls = ElementParser.generateControlStructures(tree, new Options());
+                Machine machine = new Machine(controls, new Options());
+                long before = threads.getThreadAllocatedBytes(thread);
+                machine.evaluate();
+                long bytes = threads.getThreadAllocatedBytes(thread) - before;
+                if (run >= WARMUP_RUNS) {
+                    fewest = Math.min(fewest, bytes);
+                }
+            }
+        } finally {
+            System.setOut(out);
+        }
+        return fewest;
+    }
+}
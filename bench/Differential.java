@@ -0,0 +1,223 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs RPAL programs through the reference rpal executable and through the interpreter, and compares
+ * their output, wall time and peak resident set size.
+ * <p>
+ * The interpreter evaluates the ast the reference executable prints for the program. Outputs must be
+ * the same apart from trailing newlines. Times are the median of the runs; peak RSS is the largest
+ * VmHWM seen in /proc while the process runs, so it is missing where there is no /proc and may be
+ * low for runs of a few milliseconds. With a baseline of interpreter times, a program whose time
+ * grows beyond the threshold ratio is a regression; --update writes the baseline instead.
+ * <pre>
+ * java Differential [--update] BASELINE THRESHOLD RUNS REFERENCE "INTERPRETER COMMAND" program.rpal...
+ * </pre>
+ * Exits with status 1 on an output mismatch or a regression.
+ */
+public class Differential {
+    /**
+     * Regressions are only reported beyond this many milliseconds, so that tiny programs do not fail on noise.
+     */
+    private static final long NOISE_MILLIS = 20;
+
+    public static void main(String[] args) throws Exception {
+        List<String> arguments = new ArrayList<>(Arrays.asList(args));
+        boolean update = arguments.remove("--update");
+        Path baselinePath = Paths.get(arguments.get(0));
+        double threshold = Double.parseDouble(arguments.get(1));
+        int runs = Integer.parseInt(arguments.get(2));
+        String reference = arguments.get(3);
+        List<String> interpreter = Arrays.asList(arguments.get(4).split(" "));
+        Map<String, Long> baseline = update ? new LinkedHashMap<>() : readBaseline(baselinePath);
+
+        boolean failed = false;
+        System.out.printf("%-12s %10s %10s %10s %10s %8s  %s%n",
+                "program", "rpal ms", "rpal MiB", "java ms", "java MiB", "ratio", "status");
+        for (String program : arguments.subList(5, arguments.size())) {
+            String name = Paths.get(program).getFileName().toString().replaceFirst("\\.rpal$", "");
+            Path ast = Files.createTempFile(name, ".ast");
+            try {
+                Run parse = run(Arrays.asList(reference, "-ast", program));
+                if (parse.exitCode != 0) {
+                    System.out.printf("%-12s the reference cannot parse it: %s%n", name, parse.output.trim());
+                    failed = true;
+                    continue;
+                }
+                Files.write(ast, parse.output.getBytes(StandardCharsets.UTF_8));
+
+                List<String> interpreterCommand = new ArrayList<>(interpreter);
+                interpreterCommand.add(ast.toString());
+                Measurement expected = measure(Arrays.asList(reference, program), runs);
+                Measurement actual = measure(interpreterCommand, runs);
+
+                List<String> problems = new ArrayList<>();
+                if (!normalize(expected.output).equals(normalize(actual.output))) {
+                    problems.add("output differs");
+                }
+                Long previous = baseline.get(name);
+                if (update) {
+                    baseline.put(name, actual.millis);
+                } else if (previous != null && actual.millis > previous * threshold
+                        && actual.millis - previous > NOISE_MILLIS) {
+                    problems.add(String.format("slower than baseline %d ms", previous));
+                }
+                System.out.printf("%-12s %10d %10s %10d %10s %8.1f  %s%n", name,
+                        expected.millis, mebibytes(expected.peakKibibytes),
+                        actual.millis, mebibytes(actual.peakKibibytes),
+                        (double) actual.millis / Math.max(1, expected.millis),
+                        problems.isEmpty() ? "ok" : String.join(", ", problems));
+                if (problems.contains("output differs")) {
+                    System.out.println("  rpal: " + normalize(expected.output).replace("\n", "\n        "));
+                    System.out.println("  java: " + normalize(actual.output).replace("\n", "\n        "));
+                }
+                failed |= !problems.isEmpty();
+            } finally {
+                Files.deleteIfExists(ast);
+            }
+        }
+        if (update) {
+            writeBaseline(baselinePath, baseline);
+        }
+        if (failed) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @return Output without trailing newlines
+     */
+    private static String normalize(String output) {
+        return output.replaceAll("\\n+$", "");
+    }
+
+    private static String mebibytes(long kibibytes) {
+        return kibibytes < 0 ? "-" : String.format("%.1f", kibibytes / 1024.0);
+    }
+
+    /**
+     * Run a command the given number of times.
+     *
+     * @return Output of the first run, median wall time and largest peak RSS
+     */
+    private static Measurement measure(List<String> command, int runs) throws IOException, InterruptedException {
+        long[] millis = new long[runs];
+        long peak = -1;
+        String output = null;
+        for (int i = 0; i < runs; i++) {
+            Run run = run(command);
+            if (output == null) output = run.output;
+            millis[i] = run.millis;
+            peak = Math.max(peak, run.peakKibibytes);
+        }
+        Arrays.sort(millis);
+        return new Measurement(output, millis[runs / 2], peak);
+    }
+
+    /**
+     * Run a command, sampling its peak RSS while it runs.
+     */
+    private static Run run(List<String> command) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        Path status = Paths.get("/proc", Long.toString(process.pid()), "status");
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Thread reader = new Thread(() -> copy(process.getInputStream(), output));
+        reader.start();
+        long peak = -1;
+        while (process.isAlive()) {
+            peak = Math.max(peak, peakKibibytes(status));
+            Thread.sleep(1);
+        }
+        int exitCode = process.waitFor();
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        reader.join();
+        return new Run(output.toString("UTF-8"), exitCode, millis, peak);
+    }
+
+    /**
+     * @return VmHWM of the process in KiB, -1 if it cannot be read
+     */
+    private static long peakKibibytes(Path status) {
+        try {
+            for (String line : Files.readAllLines(status)) {
+                if (line.startsWith("VmHWM:")) {
+                    return Long.parseLong(line.replaceAll("[^0-9]", ""));
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // The process exited or there is no /proc
+        }
+        return -1;
+    }
+
+    private static void copy(InputStream input, ByteArrayOutputStream output) {
+        byte[] buffer = new byte[8192];
+        try {
+            for (int read = input.read(buffer); read >= 0; read = input.read(buffer)) {
+                output.write(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            // The process was destroyed
+        }
+    }
+
+    /**
+     * Baseline lines are a program name and its interpreter time in milliseconds.
+     */
+    private static Map<String, Long> readBaseline(Path path) throws IOException {
+        Map<String, Long> baseline = new LinkedHashMap<>();
+        if (Files.exists(path)) {
+            for (String line : Files.readAllLines(path)) {
+                String[] nameAndMillis = line.trim().split("\\s+");
+                if (nameAndMillis.length == 2) {
+                    baseline.put(nameAndMillis[0], Long.parseLong(nameAndMillis[1]));
+                }
+            }
+        }
+        return baseline;
+    }
+
+    private static void writeBaseline(Path path, Map<String, Long> baseline) throws IOException {
+        List<String> lines = new ArrayList<>();
+        baseline.forEach((name, millis) -> lines.add(name + " " + millis));
+        Files.write(path, lines);
+        System.out.println("Baseline written to " + path);
+    }
+
+    private static class Run {
+        private final String output;
+        private final int exitCode;
+        private final long millis;
+        private final long peakKibibytes;
+
+        Run(String output, int exitCode, long millis, long peakKibibytes) {
+            this.output = output;
+            this.exitCode = exitCode;
+            this.millis = millis;
+            this.peakKibibytes = peakKibibytes;
+        }
+    }
+
+    private static class Measurement {
+        private final String output;
+        private final long millis;
+        private final long peakKibibytes;
+
+        Measurement(String output, long millis, long peakKibibytes) {
+            this.output = output;
+            this.millis = millis;
+            this.peakKibibytes = peakKibibytes;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+import cse.ElementParser;
+import cse.Options;
+import cse.Stack;
+import cse.element.Value;
+import tree.Converters;
+import tree.FlatTree;
+import tree.TreeParser;
+
+import java.util.ArrayList;
+
+/**
+ * Checks that the parallel generation builds the same control structures as the sequential one,
+ * with the same delta numbering.
+ * <p>
+ * Each ast is standardized sequentially, then its control structures are generated sequentially
+ * and in parallel with thresholds small enough to give every lambda body and conditional branch of
+ * the corpus programs a task of its own, and compared index by index. The time of both ways with
+ * the default threshold is reported. Parallel standardization is checked by StandardizeCheck.
+ * <pre>
+ * java GenerateCheck file.ast...
+ * </pre>
+ * Exits with status 1 when a control structure differs.
+ */
+public class GenerateCheck {
+    private static final int[] THRESHOLDS = {0, 4, 64, ElementParser.PARALLEL_THRESHOLD};
+    private static final int TIMED_RUNS = 5;
+
+    public static void main(String[] args) throws Exception {
+        boolean same = true;
+        for (String fileName : args) {
+            FlatTree tree = TreeParser.flatTreeFromFile(fileName);
+            Converters.astToSt(tree);
+            ArrayList<Stack<Value>> expected = ElementParser.generateControlStructures(tree, new Options());
+            for (int threshold : THRESHOLDS) {
+                ArrayList<Stack<Value>> actual = ElementParser.generateControlStructures(tree, new Options(), threshold);
+                if (!expected.toString().equals(actual.toString())) {
+                    System.out.printf("%s: differs with threshold %d%n", fileName, threshold);
+                    same = false;
+                }
+            }
+            System.out.printf("%s: %d nodes, %d control structures, sequential %.1f ms, parallel %.1f ms%n",
+                    fileName, tree.size(), expected.size(),
+                    fewestMillis(tree, Integer.MAX_VALUE), fewestMillis(tree, ElementParser.PARALLEL_THRESHOLD));
+        }
+        if (!same) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @param tree      Standardized tree
+     * @param threshold Number of nodes above which a body or branch is generated by a task
+     * @return Fewest milliseconds a generation of the control structures took
+     */
+    private static double fewestMillis(FlatTree tree, int threshold) {
+        long fewest = Long.MAX_VALUE;
+        for (int run = 0; run < TIMED_RUNS; run++) {
+            long start = System.nanoTime();
+            ElementParser.generateControlStructures(tree, new Options(), threshold);
+            fewest = Math.min(fewest, System.nanoTime() - start);
+        }
+        return fewest / 1e6;
+    }
+}
@@ -0,0 +1,85 @@
+import tree.Converters;
+import tree.FlatTree;
+import tree.TreeParser;
+
+/**
+ * Checks that the parallel standardization builds the same tree as the sequential one.
+ * <p>
+ * Each ast is standardized sequentially and in parallel with thresholds small enough to split
+ * even the corpus programs into many tasks, and the trees are compared node by node from their
+ * roots. The time of both passes with the default threshold is reported.
+ * <pre>
+ * java StandardizeCheck file.ast...
+ * </pre>
+ * Exits with status 1 when a tree differs.
+ */
+public class StandardizeCheck {
+    private static final int[] THRESHOLDS = {1, 4, 64, Converters.PARALLEL_THRESHOLD};
+    private static final int TIMED_RUNS = 5;
+
+    public static void main(String[] args) throws Exception {
+        boolean same = true;
+        for (String fileName : args) {
+            FlatTree expected = TreeParser.flatTreeFromFile(fileName);
+            Converters.astToSt(expected);
+            for (int threshold : THRESHOLDS) {
+                FlatTree actual = TreeParser.flatTreeFromFile(fileName);
+                Converters.astToStParallel(actual, threshold);
+                if (!sameTree(expected, expected.getRoot(), actual, actual.getRoot())) {
+                    System.out.printf("%s: differs with threshold %d%n", fileName, threshold);
+                    same = false;
+                }
+            }
+            System.out.printf("%s: %d nodes, sequential %.1f ms, parallel %.1f ms%n", fileName,
+                    expected.size(), fewestMillis(fileName, false), fewestMillis(fileName, true));
+        }
+        if (!same) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @return Whether the subtrees have the same labels, values and shape
+     */
+    private static boolean sameTree(FlatTree first, int firstNode, FlatTree second, int secondNode) {
+        if (firstNode == FlatTree.NONE || secondNode == FlatTree.NONE) {
+            return firstNode == secondNode;
+        }
+        if (!first.getLabel(firstNode).equals(second.getLabel(secondNode))) {
+            return false;
+        }
+        String firstValue = first.getValue(firstNode);
+        String secondValue = second.getValue(secondNode);
+        if (firstValue == null ? secondValue != null : !firstValue.equals(secondValue)) {
+            return false;
+        }
+        int firstChild = first.getFirstChild(firstNode);
+        int secondChild = second.getFirstChild(secondNode);
+        while (firstChild != FlatTree.NONE && secondChild != FlatTree.NONE) {
+            if (!sameTree(first, firstChild, second, secondChild)) {
+                return false;
+            }
+            firstChild = first.getNextSibling(firstChild);
+            secondChild = second.getNextSibling(secondChild);
+        }
+        return firstChild == secondChild;
+    }
+
+    /**
+     * @return Fewest milliseconds a standardization of the ast took, parsing excluded
+     */
+    private static double fewestMillis(String fileName, boolean parallel) throws Exception {
+        long fewest = Long.MAX_VALUE;
+        for (int run = 0; run < TIMED_RUNS; run++) {
+            FlatTree tree = TreeParser.flatTreeFromFile(fileName);
+            long start = System.nanoTime();
+            if (parallel) {
+                Converters.astToStParallel(tree);
+            } else {
+                Converters.astToSt(tree);
+            }
+            fewest = Math.min(fewest, System.nanoTime() - start);
+        }
+        return fewest / 1e6;
+    }
+}
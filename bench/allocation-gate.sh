@@ -0,0 +1,21 @@
+#!/bin/bash
+# Fails when the arithmetic/comparison loop in loop.rpal allocates more than
+# BUDGET bytes per iteration (default 320). The asts are made with the rpal
+# binary at the repository root.
+#
+# An iteration is 20 steps and allocates about 280 bytes, 14 bytes a step.
+# Each application keeps one environment live until the recursion returns
+# (the environment, its two binding arrays and its environment element), and
+# integers outside -128..1023 are not shared, so it cannot reach zero.
+cd "$(dirname "$0")/.." || exit 1
+BUDGET=${BUDGET:-320}
+work=$(mktemp -d)
+trap 'rm -rf "$work"' EXIT
+
+mkdir -p "$work/classes"
+javac --release 11 -d "$work/classes" -sourcepath src bench/AllocationGate.java || exit 1
+for n in 500 1000; do
+    sed "s/\bN\b/$n/" bench/loop.rpal > "$work/loop$n.rpal"
+    ./rpal -ast "$work/loop$n.rpal" > "$work/loop$n.ast"
+done
+java -cp "$work/classes" AllocationGate "$BUDGET" "$work/loop500.ast" 500 "$work/loop1000.ast" 1000
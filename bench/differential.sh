@@ -0,0 +1,19 @@
+#!/bin/bash
+# Runs the programs of bench/corpus through the reference rpal executable at the repository root and
+# through rpal.jar, rebuilt first. Fails when an output differs (apart from trailing newlines) or when
+# the interpreter takes more than THRESHOLD (default 1.25) times its time in BASELINE (default
+# bench/differential.baseline, missing by default). UPDATE=1 writes the baseline instead; make it on
+# the machine the harness runs on. Times are the median of RUNS (default 5) runs; extra arguments are
+# passed to the interpreter, e.g. bench/differential.sh --lazy.
+cd "$(dirname "$0")/.." || exit 1
+RUNS=${RUNS:-5}
+THRESHOLD=${THRESHOLD:-1.25}
+BASELINE=${BASELINE:-bench/differential.baseline}
+work=$(mktemp -d)
+trap 'rm -rf "$work"' EXIT
+
+sh compile.sh > /dev/null || exit 1
+javac --release 11 -d "$work" bench/Differential.java || exit 1
+update=()
+[ -n "$UPDATE" ] && update=(--update)
+java -cp "$work" Differential "${update[@]}" "$BASELINE" "$THRESHOLD" "$RUNS" ./rpal "java -jar rpal.jar $*" bench/corpus/*.rpal
@@ -0,0 +1,20 @@
+#!/bin/bash
+# Fails when the parallel control-structure generation of a corpus program, or
+# of an ast given as an argument, differs from the sequential one. The corpus
+# asts are made with the rpal binary at the repository root.
+asts=()
+for ast in "$@"; do
+    asts+=("$(realpath "$ast")")
+done
+cd "$(dirname "$0")/.." || exit 1
+work=$(mktemp -d)
+trap 'rm -rf "$work"' EXIT
+
+mkdir -p "$work/classes"
+javac --release 11 -d "$work/classes" -sourcepath src bench/GenerateCheck.java || exit 1
+for program in bench/corpus/*.rpal; do
+    ast="$work/$(basename "$program" .rpal).ast"
+    ./rpal -ast "$program" > "$ast" || exit 1
+    asts+=("$ast")
+done
+java -cp "$work/classes" GenerateCheck "${asts[@]}"
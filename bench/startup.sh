@@ -0,0 +1,51 @@
+#!/bin/bash
+# Compares the startup of the interpreter on the programs of bench/corpus: plain JVM (rpal.jar),
+# JVM with the AppCDS archive (rpal.jsa, see cds.sh) and native executable (rpal-native, see
+# native.sh). Variants whose files are missing are skipped. Each program is run RUNS times
+# (default 10) per variant, and every variant must print what the plain JVM prints.
+cd "$(dirname "$0")/.." || exit 1
+RUNS=${RUNS:-10}
+work=$(mktemp -d)
+trap 'rm -rf "$work"' EXIT
+
+[ -f rpal.jar ] || sh compile.sh > /dev/null || exit 1
+variants=(jvm)
+declare -A command=([jvm]="java -jar rpal.jar")
+if [ -f rpal.jsa ]; then
+    variants+=(cds)
+    command[cds]="java -XX:SharedArchiveFile=rpal.jsa -Xshare:on -jar rpal.jar"
+fi
+if [ -x rpal-native ]; then
+    variants+=(native)
+    command[native]="./rpal-native"
+fi
+
+printf "%-12s" program
+for variant in "${variants[@]}"; do printf "%12s" "$variant ms"; done
+echo
+declare -A total
+rc=0
+for program in bench/corpus/*.rpal; do
+    name=$(basename "$program" .rpal)
+    ./rpal -ast "$program" > "$work/$name.ast" || exit 1
+    ${command[jvm]} "$work/$name.ast" > "$work/$name.expected"
+    printf "%-12s" "$name"
+    for variant in "${variants[@]}"; do
+        if [ "$(${command[$variant]} "$work/$name.ast")" != "$(cat "$work/$name.expected")" ]; then
+            echo "$variant output differs on $name" >&2
+            rc=1
+        fi
+        start=$(date +%s%N)
+        for ((i = 0; i < RUNS; i++)); do
+            ${command[$variant]} "$work/$name.ast" > /dev/null
+        done
+        elapsed=$(( ($(date +%s%N) - start) / RUNS / 1000 ))
+        total[$variant]=$(( ${total[$variant]:-0} + elapsed ))
+        awk -v us="$elapsed" 'BEGIN { printf "%12.1f", us / 1000 }'
+    done
+    echo
+done
+printf "%-12s" total
+for variant in "${variants[@]}"; do awk -v us="${total[$variant]}" 'BEGIN { printf "%12.1f", us / 1000 }'; done
+echo
+exit $rc
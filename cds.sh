@@ -0,0 +1,23 @@
+#!/bin/bash
+# Builds rpal.jar and rpal.jsa, an AppCDS archive of the classes (lambda proxies included) that a
+# training run over bench/corpus loads in each evaluation mode. The asts are made with the rpal
+# binary at the repository root. Run the interpreter on the archive with
+#   java -XX:SharedArchiveFile=rpal.jsa -jar rpal.jar filename
+cd "$(dirname "$0")" || exit 1
+work=$(mktemp -d)
+trap 'rm -rf "$work"' EXIT
+
+sh compile.sh || exit 1
+run=0
+for program in bench/corpus/*.rpal; do
+    ast="$work/$(basename "$program" .rpal).ast"
+    ./rpal -ast "$program" > "$ast" || exit 1
+    for options in "" --lazy --parallel --typecheck --no-superinstructions; do
+        run=$((run + 1))
+        java -Xshare:off -XX:DumpLoadedClassList="$work/$run.classlist" -jar rpal.jar $options "$ast" > /dev/null || exit 1
+    done
+done
+# Union of the class lists, keeping the first load order
+awk '!seen[$0]++' "$work"/*.classlist > "$work/rpal.classlist"
+java -Xshare:dump -XX:SharedClassListFile="$work/rpal.classlist" -XX:SharedArchiveFile=rpal.jsa -jar rpal.jar || exit 1
+echo "Archived $(wc -l < "$work/rpal.classlist") classes in rpal.jsa"
@@ -1,6 +1,7 @@
 cd src
 mkdir -p ../bin
-javac Rpal.java -d ../bin
+javac --release 11 Rpal.java -d ../bin
+cp -r META-INF ../bin
 cd ../bin
-jar cfve rpal.jar Rpal Rpal.class cse tree
+jar cfve rpal.jar Rpal Rpal.class cse tree META-INF/native-image
 mv rpal.jar ..
@@ -0,0 +1,10 @@
+#!/bin/bash
+# Builds rpal-native, a GraalVM native executable of the interpreter. Needs native-image on the PATH.
+# Its options are in src/META-INF/native-image/rpal/native-image.properties, packed into rpal.jar.
+cd "$(dirname "$0")" || exit 1
+if ! command -v native-image > /dev/null; then
+    echo "native-image not found; install GraalVM and put its bin directory on the PATH" >&2
+    exit 1
+fi
+sh compile.sh || exit 1
+native-image -jar rpal.jar rpal-native
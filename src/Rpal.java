@@ -1,27 +1,88 @@
 import cse.CseException;
 import cse.ElementParser;
+import cse.LimitExceededException;
+import cse.Limits;
 import cse.Machine;
+import cse.Options;
+import cse.Repl;
 import cse.Stack;
+import cse.Trace;
+import cse.TypeCheckException;
+import cse.Watch;
 import cse.element.Value;
 import tree.*;
 
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 public class Rpal {
     public static void main(String[] args) {
         try {
-            if (args.length == 0)
-                throw new Exception("File name must be provided as an command line argument");
-
-            String fileName = args[0];
-            Node root = TreeParser.nodeFromFile(fileName);
-            Converters.astToSt(root);
-            ArrayList<Stack<Value>> controls = ElementParser.generateControlStructures(root);
-            Machine cseMachine = new Machine(controls);
-            cseMachine.evaluate();
+            if (args.length == 2 && args[0].equals("--decode-trace")) {
+                Trace.decode(args[1], System.out);
+                return;
+            }
+            Options options = new Options();
+            if (args.length > 0 && args[0].equals("--repl")) {
+                if (parseArguments(Arrays.copyOfRange(args, 1, args.length), options) != null)
+                    throw new Exception("The REPL does not take a file name");
+                new Repl(options, System.out)
+                        .run(new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)));
+                return;
+            }
+            if (args.length > 0 && args[0].equals("--watch")) {
+                String fileName = parseArguments(Arrays.copyOfRange(args, 1, args.length), options);
+                if (fileName == null)
+                    throw new Exception("File name must be provided as an command line argument");
+                new Watch(fileName, options, System.out).run();
+                return;
+            }
+            String fileName = parseArguments(args, options);
+            Machine cseMachine;
+            if (options.getResumePath() != null) {
+                cseMachine = Machine.resume(options.getResumePath(), options);
+            } else {
+                if (fileName == null)
+                    throw new Exception("File name must be provided as an command line argument");
+                FlatTree tree = TreeParser.flatTreeFromFile(fileName);
+                if (tree.getRoot() == FlatTree.NONE)
+                    throw new Exception("The ast is empty: " + fileName);
+                if (options.isParallel()) {
+                    Converters.astToStParallel(tree);
+                } else {
+                    Converters.astToSt(tree);
+                }
+                ArrayList<Stack<Value>> controls = ElementParser.generateControlStructures(tree, options);
+                cseMachine = new Machine(controls, options);
+            }
+            boolean completed = false;
+            try {
+                cseMachine.evaluate();
+                completed = true;
+            } finally {
+                if (cseMachine.getTrace() != null && (!completed || options.isTraceOnExit())) {
+                    cseMachine.getTrace().dump(options.getTracePath());
+                }
+                if (cseMachine.getProfiler() != null) {
+                    // Also written when evaluation fails, to profile up to the failure
+                    cseMachine.getProfiler().write(options.getProfilePath());
+                }
+            }
+        } catch (AstParseException exception) {
+            System.out.println("Error occurred while parsing ast:");
+            System.out.println(exception.getMessage());
         } catch (AstException exception) {
             System.out.println("Error occurred while standardizing ast:");
             System.out.println(exception.getMessage());
+        } catch (TypeCheckException exception) {
+            System.out.println("Type errors found before evaluation:");
+            System.out.println(exception.getMessage());
+        } catch (LimitExceededException exception) {
+            System.out.println("Evaluation stopped:");
+            System.out.println(exception.getMessage());
         } catch (CseException exception) {
             System.out.println("Error occurred while evaluating cse:");
             System.out.println(exception.getMessage());
@@ -30,6 +91,110 @@ public class Rpal {
             System.out.println(exception.getMessage());
         } catch (Exception exception) {
             System.out.println(exception.getMessage());
+        } catch (StackOverflowError error) {
+            System.out.println("Evaluation stopped:");
+            System.out.println("Recursion is too deep for the Java stack; run java with a larger -Xss");
+        } catch (OutOfMemoryError error) {
+            System.out.println("Evaluation stopped:");
+            System.out.println("Out of memory; run java with a larger -Xmx or limit --max-environments");
+        } catch (Error error) {
+            System.out.println("Internal error:");
+            System.out.println(error);
         }
     }
+
+    /**
+     * Reads the options and the file name from the command line arguments.
+     * <pre>
+     * java Rpal [--parallel] [--parallel-threshold=N] [--lazy] [--no-superinstructions] [--typecheck] [--monitor] [--profile[=FILE]] [trace] [limits] [checkpoint] filename
+     * java Rpal --decode-trace FILE
+     * java Rpal --repl [--rpal=PATH] [options]
+     * java Rpal --watch [--rpal=PATH] [options] filename
+     * java Rpal --resume=FILE [options]
+     * </pre>
+     * Trace options are --trace[=FILE], --trace-size=N and --trace-on-exit.
+     * Limits are --max-steps=N, --timeout=MILLIS, --max-control=N, --max-stack=N,
+     * --max-environments=N, --max-environment-depth=N and --max-tuple=N.
+     * Checkpoint options are --checkpoint[=FILE] and --checkpoint-interval=MILLIS.
+     *
+     * --rpal=PATH is the front end that parses RPAL source for the REPL and watch mode.
+     *
+     * @param args    Command line arguments
+     * @param options Options to fill
+     * @return File name of the ast, null if none is given
+     * @throws Exception If an option is unknown or its value is out of range
+     */
+    private static String parseArguments(String[] args, Options options) throws Exception {
+        String fileName = null;
+        Limits limits = options.getLimits();
+        for (String arg : args) {
+            if (arg.equals("--parallel")) {
+                options.setParallel(true);
+            } else if (arg.startsWith("--parallel-threshold=")) {
+                options.setParallelThreshold((int) optionValue(arg));
+            } else if (arg.equals("--lazy")) {
+                options.setLazy(true);
+            } else if (arg.equals("--no-superinstructions")) {
+                options.setSuperinstructions(false);
+            } else if (arg.equals("--typecheck")) {
+                options.setTypecheck(true);
+            } else if (arg.equals("--monitor")) {
+                options.setMonitored(true);
+            } else if (arg.equals("--trace")) {
+                options.setTrace(true);
+            } else if (arg.startsWith("--trace=")) {
+                options.setTrace(true);
+                options.setTracePath(arg.substring(arg.indexOf('=') + 1));
+            } else if (arg.startsWith("--trace-size=")) {
+                long traceSize = optionValue(arg);
+                if (traceSize <= 0 || traceSize > Integer.MAX_VALUE)
+                    throw new Exception("Trace size must be a positive int: " + arg);
+                options.setTraceSize((int) traceSize);
+            } else if (arg.equals("--trace-on-exit")) {
+                options.setTraceOnExit(true);
+            } else if (arg.equals("--profile")) {
+                options.setProfilePath("profile.txt");
+            } else if (arg.startsWith("--profile=")) {
+                options.setProfilePath(arg.substring(arg.indexOf('=') + 1));
+            } else if (arg.equals("--checkpoint")) {
+                options.setCheckpointPath("checkpoint.bin");
+            } else if (arg.startsWith("--checkpoint=")) {
+                options.setCheckpointPath(arg.substring(arg.indexOf('=') + 1));
+            } else if (arg.startsWith("--checkpoint-interval=")) {
+                options.setCheckpointInterval(optionValue(arg));
+            } else if (arg.startsWith("--resume=")) {
+                options.setResumePath(arg.substring(arg.indexOf('=') + 1));
+            } else if (arg.startsWith("--max-steps=")) {
+                limits.setMaxSteps(optionValue(arg));
+            } else if (arg.startsWith("--timeout=")) {
+                limits.setTimeoutMillis(optionValue(arg));
+            } else if (arg.startsWith("--max-control=")) {
+                limits.setMaxControlSize(optionValue(arg));
+            } else if (arg.startsWith("--max-stack=")) {
+                limits.setMaxStackSize(optionValue(arg));
+            } else if (arg.startsWith("--max-environments=")) {
+                limits.setMaxEnvironments(optionValue(arg));
+            } else if (arg.startsWith("--max-environment-depth=")) {
+                limits.setMaxEnvironmentDepth(optionValue(arg));
+            } else if (arg.startsWith("--max-tuple=")) {
+                limits.setMaxTupleLength(optionValue(arg));
+            } else if (arg.startsWith("--rpal=")) {
+                options.setFrontEnd(arg.substring(arg.indexOf('=') + 1));
+            } else if (arg.startsWith("--")) {
+                throw new Exception("Unknown option: " + arg);
+            } else {
+                fileName = arg;
+                options.setProgramName(arg);
+            }
+        }
+        return fileName;
+    }
+
+    /**
+     * @param arg Option of the form --name=value
+     * @return Numeric value of the option
+     */
+    private static long optionValue(String arg) {
+        return Long.parseLong(arg.substring(arg.indexOf('=') + 1));
+    }
 }
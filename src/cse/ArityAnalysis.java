@@ -0,0 +1,149 @@
+package cse;
+
+import cse.applicator.Builtin;
+import cse.applicator.Builtins;
+import tree.FlatTree;
+
+/**
+ * Arity analysis over the standardized tree for uncurried calls.
+ * <p>
+ * The arity of a function is the length of its chain of lambdas, so f x y z = E has arity 3.
+ * Functions are known when bound by let/where (gamma of a lambda) or by rec (yStar), as long as
+ * their name is not shadowed; builtins such as Conc are known by their declared arity. An
+ * application spine f a1 .. an of a known function with arity of at least two is called with
+ * min(n, arity) arguments at once; the rest stay curried.
+ */
+class ArityAnalysis {
+    private final FlatTree tree;
+    private final int[] calls;
+
+    private ArityAnalysis(FlatTree tree) {
+        this.tree = tree;
+        this.calls = new int[tree.size()];
+    }
+
+    /**
+     * Finds the applications that can pass several arguments at once.
+     *
+     * @param tree Standardized tree
+     * @param root Root of the subtree to analyse
+     * @return Number of arguments of the call for the outermost gamma node of each such spine, by node; 0 for other nodes
+     */
+    static int[] uncurriedCalls(FlatTree tree, int root) {
+        ArityAnalysis analysis = new ArityAnalysis(tree);
+        analysis.walk(root, null);
+        return analysis.calls;
+    }
+
+    /**
+     * Visit every application spine in the subtree.
+     *
+     * @param node  Current node
+     * @param scope Names visible at the node
+     */
+    private void walk(int node, Scope scope) {
+        if (tree.isLabel(node, "lambda")) {
+            walk(tree.getChild(node, 1), shadow(scope, tree.getChild(node, 0)));
+        } else if (isRec(node)) {
+            // rec: the name refers to the body of the rec lambda within it
+            int recLambda = tree.getChild(node, 1);
+            String name = tree.getValue(tree.getChild(recLambda, 0));
+            walk(tree.getChild(recLambda, 1), new Scope(name, arityOf(tree.getChild(recLambda, 1)), scope));
+        } else if (tree.isLabel(node, "gamma")) {
+            int head = node;
+            int arguments = 0;
+            for (; tree.isLabel(head, "gamma"); head = tree.getChild(head, 0)) {
+                arguments++;
+                walk(tree.getChild(head, 1), scope);
+            }
+            int arity = tree.isLabel(head, "id") ? Scope.arityOf(scope, tree.getValue(head)) : 0;
+            if (arity >= 2 && arguments >= 2) {
+                calls[node] = Math.min(arity, arguments);
+            }
+            if (tree.isLabel(head, "lambda") && tree.getChild(node, 0) == head) {
+                // let/where: the body sees the bound name with the arity of the argument
+                walk(tree.getChild(head, 1), bind(tree.getChild(head, 0), tree.getChild(node, 1), scope));
+            } else {
+                walk(head, scope);
+            }
+        } else {
+            tree.forEachChild(node, child -> walk(child, scope));
+        }
+    }
+
+    /**
+     * @param parameter Parameter node of the applied lambda
+     * @param argument  Argument node
+     * @param scope     Names visible at the application
+     * @return Names visible in the body of the applied lambda
+     */
+    private Scope bind(int parameter, int argument, Scope scope) {
+        if (tree.isLabel(parameter, "id")) {
+            return new Scope(tree.getValue(parameter), arityOf(argument), scope);
+        }
+        return shadow(scope, parameter);
+    }
+
+    /**
+     * @param parameter Parameter node of a lambda (id or ,)
+     * @return Scope with the parameters bound to unknown values
+     */
+    private Scope shadow(Scope scope, int parameter) {
+        if (tree.isLabel(parameter, ",")) {
+            for (int child = tree.getFirstChild(parameter); child != FlatTree.NONE; child = tree.getNextSibling(child)) {
+                scope = new Scope(tree.getValue(child), 0, scope);
+            }
+            return scope;
+        }
+        return new Scope(tree.getValue(parameter), 0, scope);
+    }
+
+    /**
+     * @param node Expression node
+     * @return Number of chained lambdas the expression evaluates to, 0 if unknown
+     */
+    private int arityOf(int node) {
+        if (isRec(node)) {
+            return arityOf(tree.getChild(tree.getChild(node, 1), 1));
+        }
+        int arity = 0;
+        for (int body = node; tree.isLabel(body, "lambda"); body = tree.getChild(body, 1)) {
+            arity++;
+        }
+        return arity;
+    }
+
+    /**
+     * @return Whether the node is yStar applied to a lambda with a single parameter
+     */
+    private boolean isRec(int node) {
+        return tree.isLabel(node, "gamma") && tree.isLabel(tree.getChild(node, 0), "yStar")
+                && tree.isLabel(tree.getChild(node, 1), "lambda") && tree.isLabel(tree.getChild(tree.getChild(node, 1), 0), "id");
+    }
+
+    /**
+     * Immutable list of visible names with the arity of their functions; 0 for unknown values.
+     */
+    private static class Scope {
+        private final String name;
+        private final int arity;
+        private final Scope parent;
+
+        Scope(String name, int arity, Scope parent) {
+            this.name = name;
+            this.arity = arity;
+            this.parent = parent;
+        }
+
+        /**
+         * @return Arity of the innermost binding of the name or of the builtin, 0 if unknown or not bound
+         */
+        static int arityOf(Scope scope, String name) {
+            for (Scope current = scope; current != null; current = current.parent) {
+                if (current.name.equals(name)) return current.arity;
+            }
+            Builtin builtin = Builtins.function(name);
+            return builtin == null ? 0 : builtin.getArity();
+        }
+    }
+}
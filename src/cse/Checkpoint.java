@@ -0,0 +1,237 @@
+package cse;
+
+import cse.element.Element;
+import cse.element.Value;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Checkpoints of the primary machine, written between two steps and resumed in a new JVM.
+ * <p>
+ * A checkpoint holds the control structures, the environments, the control and the stack. It is
+ * written with Java serialization, which writes each object once however many elements refer to it,
+ * so shared environments and tuples are not copied and a checkpoint stays proportional to the live
+ * state. Checkpoints are written every interval and when the JVM is asked to shut down (SIGINT,
+ * SIGTERM), to a temporary file that replaces the previous checkpoint once it is complete. The
+ * checkpoint is deleted when the evaluation completes.
+ * <p>
+ * A native executable has no serialization metadata for the machine state, so checkpoints are
+ * only available on the JVM.
+ * <pre>
+ * gzip(int magic, int version, serialized State)
+ * </pre>
+ */
+class Checkpoint {
+    private static final int MAGIC = 0x52504350;
+    private static final int VERSION = 3;
+    /**
+     * Serialization recurses into nested tuples and environment chains, so it runs on a thread with a large stack.
+     */
+    private static final long STACK_SIZE = 1L << 28;
+    /**
+     * The shutdown hook holds up the exit until the machine reaches its next step and writes the
+     * checkpoint. Steps are short, so the wait only runs out when the machine does not get to another
+     * step, such as inside a builtin building a huge tuple, or when the state is too large to write in
+     * time. It bounds how long SIGINT or SIGTERM leaves the process running without a checkpoint: long
+     * enough for a large state, short enough that the interrupt still feels like one.
+     */
+    private static final long SHUTDOWN_WAIT_MILLIS = 10_000;
+
+    private final Path path;
+    private final long intervalNanos;
+    private final CountDownLatch shutdownWritten = new CountDownLatch(1);
+    private volatile boolean requested;
+    private long nextWrite;
+    private Thread shutdownHook;
+
+    /**
+     * @param path           File to write checkpoints to
+     * @param intervalMillis Milliseconds between checkpoints, 0 to write them only on shutdown
+     */
+    Checkpoint(String path, long intervalMillis) {
+        requireSerialization();
+        this.path = Paths.get(path);
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+    }
+
+    /**
+     * Start the interval and write a checkpoint if the JVM is asked to shut down during the evaluation.
+     */
+    void start() {
+        nextWrite = System.nanoTime() + intervalNanos;
+        shutdownHook = new Thread(this::shutdown, "checkpoint");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    /**
+     * Ask the machine for a checkpoint and give it some time to write it before the JVM exits.
+     */
+    private void shutdown() {
+        requested = true;
+        try {
+            shutdownWritten.await(SHUTDOWN_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return Whether a checkpoint was requested or the interval has passed
+     */
+    boolean isDue() {
+        return requested || (intervalNanos > 0 && System.nanoTime() - nextWrite >= 0);
+    }
+
+    /**
+     * Write a checkpoint. A checkpoint that cannot be written is reported and the evaluation goes on.
+     *
+     * @param state State of the machine between two steps
+     */
+    void write(State state) {
+        boolean shuttingDown = requested;
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            onLargeStack(() -> {
+                try (ObjectOutputStream output = new ObjectOutputStream(
+                        new GZIPOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary))))) {
+                    output.writeInt(MAGIC);
+                    output.writeInt(VERSION);
+                    output.writeObject(state);
+                }
+                return null;
+            });
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Cannot write checkpoint " + path + ": " + e.getMessage());
+        } finally {
+            requested = false;
+            nextWrite = System.nanoTime() + intervalNanos;
+            if (shuttingDown) {
+                shutdownWritten.countDown();
+            }
+        }
+    }
+
+    /**
+     * Stop writing checkpoints. The checkpoint of a completed evaluation is of no use and is deleted.
+     *
+     * @param completed Whether the evaluation completed
+     */
+    void finish(boolean completed) {
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            // Already shutting down; the hook is waiting for this
+        }
+        shutdownWritten.countDown();
+        if (completed) {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                System.err.println("Cannot delete checkpoint " + path + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Read a checkpoint.
+     *
+     * @param path Checkpoint file
+     * @return State of the machine when the checkpoint was written
+     * @throws IOException If the file cannot be read or is not a checkpoint
+     */
+    static State read(String path) throws IOException {
+        requireSerialization();
+        return onLargeStack(() -> {
+            try (ObjectInputStream input = new ObjectInputStream(
+                    new GZIPInputStream(new BufferedInputStream(Files.newInputStream(Paths.get(path)))))) {
+                if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                    throw new IOException("Not a checkpoint file: " + path);
+                }
+                return (State) input.readObject();
+            } catch (ClassNotFoundException e) {
+                throw new IOException("Not a checkpoint file: " + path, e);
+            }
+        });
+    }
+
+    /**
+     * @throws UnsupportedOperationException In a native executable, which cannot serialize the state
+     */
+    private static void requireSerialization() {
+        if (System.getProperty("org.graalvm.nativeimage.imagecode") != null) {
+            // Serializing the state needs metadata for every class of the machine state, which is not registered
+            throw new UnsupportedOperationException("Checkpoints are not available in the native executable; run rpal.jar");
+        }
+    }
+
+    /**
+     * Run a task on a new thread with a large stack and wait for it.
+     */
+    private static <T> T onLargeStack(Callable<T> task) throws IOException {
+        FutureTask<T> future = new FutureTask<>(task);
+        Thread thread = new Thread(null, future, "checkpoint-io", STACK_SIZE);
+        thread.start();
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * State of the primary machine between two steps.
+     * Child machines are not running then, so their state does not need to be saved.
+     */
+    static class State implements Serializable {
+        private static final long serialVersionUID = 1L;
+        final String programName;
+        final ArrayList<Stack<Value>> controlStructures;
+        final List<Environment> environments;
+        final Stack<Value> control;
+        final Stack<Element> stack;
+        final int[] freeFrames;
+        final int freeFrameCount;
+        final int tracedEnvironment;
+        final Machine.Link link;
+
+        State(String programName, ArrayList<Stack<Value>> controlStructures, List<Environment> environments,
+              Stack<Value> control, Stack<Element> stack, int[] freeFrames, int freeFrameCount,
+              int tracedEnvironment, Machine.Link link) {
+            this.programName = programName;
+            this.controlStructures = controlStructures;
+            this.environments = environments;
+            this.control = control;
+            this.stack = stack;
+            this.freeFrames = freeFrames;
+            this.freeFrameCount = freeFrameCount;
+            this.tracedEnvironment = tracedEnvironment;
+            this.link = link;
+        }
+    }
+}
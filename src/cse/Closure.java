@@ -0,0 +1,90 @@
+package cse;
+
+import cse.element.Value;
+
+import java.util.Objects;
+
+/**
+ * Closure of a lambda element in an environment, lambda(k, x, c).
+ * <p>
+ * Rule 2 only pairs the lambda element with the environment index. The "k x c" value is built
+ * when something reads it, such as printing, and closures compare as their values would.
+ */
+class Closure extends Value {
+    private static final long serialVersionUID = 1L;
+    private final Lambda lambda;
+    private final int environment;
+    private transient String value;
+
+    /**
+     * @param lambda      Lambda element
+     * @param environment Environment index c
+     */
+    Closure(Lambda lambda, int environment) {
+        super("lambda", null);
+        this.lambda = lambda;
+        this.environment = environment;
+    }
+
+    /**
+     * @return Lambda element the closure was created from
+     */
+    Lambda getLambda() {
+        return lambda;
+    }
+
+    /**
+     * @return Control structure index k of the body
+     */
+    int getDelta() {
+        return lambda.getDelta();
+    }
+
+    /**
+     * @return Bound variable names; one name unless the parameter is a tuple
+     */
+    String[] getParameters() {
+        return lambda.getParameters();
+    }
+
+    /**
+     * @return Whether the parameter is a tuple of names, applied by rule 11
+     */
+    boolean isTuple() {
+        return lambda.isTuple();
+    }
+
+    /**
+     * @return Environment index c
+     */
+    int getEnvironment() {
+        return environment;
+    }
+
+    @Override
+    public String getValue() {
+        // Racing threads build equal strings, and a string is safe to publish without a lock
+        if (value == null) {
+            value = lambda.getValue() + " " + environment;
+        }
+        return value;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Closure that = (Closure) o;
+        return environment == that.environment && lambda.getValue().equals(that.lambda.getValue());
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(getLabel(), lambda.getValue(), environment);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s(%s)", getLabel(), getValue());
+    }
+}
@@ -0,0 +1,48 @@
+package cse;
+
+import cse.element.Element;
+import cse.element.Value;
+
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Fork-join task that evaluates one independent component of a tau or operator node.
+ * <p>
+ * A failure is kept instead of completing the task exceptionally: the pool would rethrow a copy
+ * wrapping it, and the machine that forked the component rethrows it as it is.
+ */
+class ComponentTask extends RecursiveTask<Element> {
+    private static final long serialVersionUID = 1L;
+    private final Machine machine;
+    private final Stack<Value> component;
+    private final int environmentIndex;
+    private Throwable failure;
+
+    /**
+     * @param machine          Machine that forked the component
+     * @param component        Control structure of the component
+     * @param environmentIndex Environment to evaluate the component in
+     */
+    ComponentTask(Machine machine, Stack<Value> component, int environmentIndex) {
+        this.machine = machine;
+        this.component = component;
+        this.environmentIndex = environmentIndex;
+    }
+
+    /**
+     * @return Exception or error the evaluation of the component threw, null if it completed
+     */
+    Throwable getFailure() {
+        return failure;
+    }
+
+    @Override
+    protected Element compute() {
+        try {
+            return machine.evaluateComponent(component, environmentIndex);
+        } catch (RuntimeException | Error e) {
+            failure = e;
+            return null;
+        }
+    }
+}
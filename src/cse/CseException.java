@@ -4,6 +4,8 @@ package cse;
  * Exception on CSE machine evaluation
  */
 public class CseException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
     public CseException(String message) {
         super(message);
     }
@@ -0,0 +1,35 @@
+package cse;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event committed when the control of a machine grows beyond the deep recursion
+ * threshold. The machine reports again each time its control doubles.
+ */
+@Name("rpal.DeepRecursion")
+@Label("Deep Recursion")
+@Category("RPAL")
+class DeepRecursionEvent extends jdk.jfr.Event {
+    @Label("Program")
+    private String program;
+
+    @Label("Control Depth")
+    private int controlDepth;
+
+    @Label("Stack Depth")
+    private int stackDepth;
+
+    @Label("Environment Depth")
+    @Description("Length of the environment chain of the current environment")
+    private int environmentDepth;
+
+    DeepRecursionEvent(String program, int controlDepth, int stackDepth, int environmentDepth) {
+        this.program = program;
+        this.controlDepth = controlDepth;
+        this.stackDepth = stackDepth;
+        this.environmentDepth = environmentDepth;
+    }
+}
@@ -0,0 +1,26 @@
+package cse;
+
+import cse.element.Value;
+
+/**
+ * Control element of a delayed argument. Evaluating it creates a thunk instead of a value.
+ */
+class Delay extends Value {
+    private static final long serialVersionUID = 1L;
+    private final Stack<Value> code;
+
+    /**
+     * @param code Control structure of the delayed argument
+     */
+    Delay(Stack<Value> code) {
+        super("delay");
+        this.code = code;
+    }
+
+    /**
+     * @return Control structure of the delayed argument
+     */
+    Stack<Value> getCode() {
+        return code;
+    }
+}
@@ -1,126 +1,520 @@
 package cse;
 
+import cse.applicator.Builtin;
+import cse.applicator.Builtins;
 import cse.element.Value;
+import tree.FlatTree;
 import tree.Node;
 
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Parser that will convert ast to Element stacks by preorder traversal.
+ * <p>
+ * Generation and the analyses it uses run over a {@link FlatTree}; trees of nodes are flattened first.
+ * <p>
+ * Delta indices are numbered in the order of the traversal. Large trees can be generated in two
+ * phases instead: a sizing pass counts the nodes and the delta indices of every subtree, so the
+ * index of each lambda body and conditional branch is known before it is generated, and bodies and
+ * branches of more than a threshold of nodes are generated by fork-join tasks. The numbering is the
+ * same as that of the sequential traversal.
  */
 public class ElementParser {
+    /**
+     * Lambda bodies and conditional branches of more than this many nodes are generated by a task
+     * of their own when generating in parallel.
+     */
+    public static final int PARALLEL_THRESHOLD = 1 << 12;
+
+    private final FlatTree tree;
+    private final ArrayList<Stack<Value>> controls;
+    private final Options options;
+    private final BitSet delayedArguments;
+    private final int[] uncurriedCalls;
+    private final Map<Integer, Builtin> typedOperators;
+    private final int threshold;
+    /**
+     * Number of nodes and number of delta indices of each subtree, null without a sizing pass.
+     */
+    private final int[] sizes;
+    private final int[] deltas;
+    private final ArrayList<DeltaTask> tasks = new ArrayList<>();
+    private int nextIndex;
+
+    /**
+     * @param tree      Standardized tree
+     * @param root      Root of the subtree to generate
+     * @param options   Generation options
+     * @param controls  Control structures to add to
+     * @param threshold Number of nodes above which a body or branch is generated by a task
+     * @param nextIndex Delta index of the first control structure below the root
+     */
+    private ElementParser(FlatTree tree, int root, Options options, ArrayList<Stack<Value>> controls,
+                          int threshold, int nextIndex) {
+        this.tree = tree;
+        this.controls = controls;
+        this.options = options;
+        this.threshold = threshold;
+        this.nextIndex = nextIndex;
+        if (threshold < tree.size()) {
+            this.sizes = new int[tree.size()];
+            this.deltas = new int[tree.size()];
+            countSubtree(root);
+        } else {
+            this.sizes = null;
+            this.deltas = null;
+        }
+        if (options.isLazy()) {
+            this.delayedArguments = StrictnessAnalysis.delayedArguments(tree, root);
+        } else {
+            this.delayedArguments = new BitSet();
+        }
+        this.uncurriedCalls = ArityAnalysis.uncurriedCalls(tree, root);
+        if (options.isTypecheck()) {
+            TypeInference inference = TypeInference.of(tree, root);
+            if (!inference.getErrors().isEmpty()) {
+                throw new TypeCheckException(inference.getErrors());
+            }
+            this.typedOperators = inference.getTypedOperators();
+        } else {
+            this.typedOperators = Collections.emptyMap();
+        }
+    }
+
+    /**
+     * Parser of a task, sharing the analyses and sizes of another parser.
+     *
+     * @param parser    Parser that forks the task
+     * @param nextIndex Delta index of the first control structure below the subtree of the task
+     */
+    private ElementParser(ElementParser parser, int nextIndex) {
+        this.tree = parser.tree;
+        this.controls = parser.controls;
+        this.options = parser.options;
+        this.delayedArguments = parser.delayedArguments;
+        this.uncurriedCalls = parser.uncurriedCalls;
+        this.typedOperators = parser.typedOperators;
+        this.threshold = parser.threshold;
+        this.sizes = parser.sizes;
+        this.deltas = parser.deltas;
+        this.nextIndex = nextIndex;
+    }
+
     /**
      * Generates the control structure array by preorder traversal.
      *
      * @return Generated control structure array.
      */
     public static ArrayList<Stack<Value>> generateControlStructures(Node root) {
+        return generateControlStructures(root, new Options());
+    }
+
+    /**
+     * Generates the control structure array by preorder traversal.
+     *
+     * @param options Generation options
+     * @return Generated control structure array.
+     * @throws TypeCheckException If type checking is enabled and finds operations that can never succeed
+     */
+    public static ArrayList<Stack<Value>> generateControlStructures(Node root, Options options) {
+        return generateControlStructures(FlatTree.of(root), options);
+    }
+
+    /**
+     * Generates the control structure array by preorder traversal.
+     *
+     * @param tree    Standardized tree
+     * @param options Generation options
+     * @return Generated control structure array.
+     * @throws TypeCheckException If type checking is enabled and finds operations that can never succeed
+     */
+    public static ArrayList<Stack<Value>> generateControlStructures(FlatTree tree, Options options) {
         ArrayList<Stack<Value>> controls = new ArrayList<>();
+        appendControlStructures(tree, tree.getRoot(), options, controls);
+        return controls;
+    }
+
+    /**
+     * Generates the control structure array, generating lambda bodies and conditional branches
+     * of more than threshold nodes in parallel.
+     *
+     * @param tree      Standardized tree
+     * @param options   Generation options
+     * @param threshold Number of nodes above which a body or branch is generated by a task
+     * @return Generated control structure array, numbered as by the sequential traversal.
+     * @throws TypeCheckException If type checking is enabled and finds operations that can never succeed
+     */
+    public static ArrayList<Stack<Value>> generateControlStructures(FlatTree tree, Options options, int threshold) {
+        ArrayList<Stack<Value>> controls = new ArrayList<>();
+        appendControlStructures(tree, tree.getRoot(), options, threshold, controls);
+        return controls;
+    }
+
+    /**
+     * Generates the control structures of a tree after existing ones, which are left as they are.
+     * Delta indices continue from the existing control structures, so the REPL can add each input
+     * to the control structures its machine already runs.
+     *
+     * @param tree     Standardized tree
+     * @param root     Root of the subtree to generate
+     * @param options  Generation options
+     * @param controls Existing control structures, added to
+     * @return Index of the control structure of the root
+     * @throws TypeCheckException If type checking is enabled and finds operations that can never succeed
+     */
+    static int appendControlStructures(FlatTree tree, int root, Options options, ArrayList<Stack<Value>> controls) {
+        int threshold = options.isParallel() ? PARALLEL_THRESHOLD : Integer.MAX_VALUE;
+        return appendControlStructures(tree, root, options, threshold, controls);
+    }
+
+    /**
+     * @param threshold Number of nodes above which a body or branch is generated by a task
+     * @see #appendControlStructures(FlatTree, int, Options, ArrayList)
+     */
+    private static int appendControlStructures(FlatTree tree, int root, Options options, int threshold,
+                                               ArrayList<Stack<Value>> controls) {
+        int rootIndex = controls.size();
+        ElementParser parser = new ElementParser(tree, root, options, controls, threshold, rootIndex + 1);
         Stack<Value> control = new Stack<>();
         controls.add(control);
-        generateControlStructures(root, controls, control);
-        return controls;
+        if (parser.sizes != null) {
+            // Tasks set the control structures at their pre-assigned indices
+            controls.addAll(Collections.nCopies(parser.deltas[root], null));
+        }
+        parser.generateControlStructures(root, control);
+        parser.joinTasks();
+        if (options.isSuperinstructions()) {
+            Peephole.optimize(controls.subList(rootIndex, controls.size()));
+        }
+        return rootIndex;
+    }
+
+    /**
+     * Sizing pass: count the nodes and the delta indices of a subtree.
+     *
+     * @param node Root of the subtree
+     */
+    private void countSubtree(int node) {
+        boolean lambda = tree.isLabel(node, "lambda");
+        sizes[node] = 1;
+        deltas[node] = lambda ? 1 : tree.isLabel(node, "->") ? 2 : 0;
+        for (int child = tree.getFirstChild(node); child != FlatTree.NONE; child = tree.getNextSibling(child)) {
+            countSubtree(child);
+            sizes[node] += sizes[child];
+            // The parameters of a lambda are not traversed
+            if (!lambda || child != tree.getFirstChild(node)) {
+                deltas[node] += deltas[child];
+            }
+        }
+    }
+
+    /**
+     * Wait for the tasks forked by this parser.
+     */
+    private void joinTasks() {
+        for (DeltaTask task : tasks) {
+            task.join();
+        }
+    }
+
+    /**
+     * Generate a subtree into a new control structure with the next delta index. After a sizing
+     * pass, a subtree of more than threshold nodes is generated by a task and the indices of the
+     * control structures inside it are skipped.
+     *
+     * @param node Root of the subtree
+     * @return Delta index of the new control structure
+     */
+    private int generateDelta(int node) {
+        int index = nextIndex++;
+        Stack<Value> control = new Stack<>();
+        if (sizes == null) {
+            controls.add(control);
+            generateControlStructures(node, control);
+        } else if (sizes[node] > threshold) {
+            controls.set(index, control);
+            DeltaTask task = new DeltaTask(new ElementParser(this, nextIndex), node, control);
+            task.fork();
+            tasks.add(task);
+            nextIndex += deltas[node];
+        } else {
+            controls.set(index, control);
+            generateControlStructures(node, control);
+        }
+        return index;
     }
 
     /**
      * Generates the control structure array by preorder traversal.
      *
      * @param node           Current traversing node
-     * @param controls       Array with all control structures
      * @param currentControl Current traversing control structure
      */
-    private static void generateControlStructures(Node node, ArrayList<Stack<Value>> controls,
-                                                  Stack<Value> currentControl) {
-        if (node.isLabel("lambda")) {
-            generateCsForLambda(node, controls, currentControl);
-        } else if (node.isLabel("->")) {
-            generateCsForIf(node, controls, currentControl);
-        } else if (node.isLabel("tau")) {
-            generateCsForTau(node, controls, currentControl);
+    private void generateControlStructures(int node, Stack<Value> currentControl) {
+        if (tree.isLabel(node, "lambda")) {
+            generateCsForLambda(node, currentControl);
+        } else if (tree.isLabel(node, "->")) {
+            generateCsForIf(node, currentControl);
+        } else if (uncurriedCalls[node] > 0) {
+            generateCsForCall(node, currentControl);
+        } else if (tree.isLabel(node, "gamma") && delayedArguments.get(tree.getChild(node, 1))) {
+            generateCsForLazyGamma(node, currentControl);
+        } else if (options.isParallel() && !options.isLazy() && isForkable(node)) {
+            // Forked components must be pure, which forcing a shared thunk cannot guarantee
+            generateCsForFork(node, currentControl);
+        } else if (tree.isLabel(node, "tau")) {
+            generateCsForTau(node, currentControl);
         } else {
             // Add this node and recurse on children
-            currentControl.push(new Value(node));
-            node.forEachChild(child -> generateControlStructures(child, controls, currentControl));
+            currentControl.push(elementOf(node));
+            tree.forEachChild(node, child -> generateControlStructures(child, currentControl));
+        }
+    }
+
+    /**
+     * @param node Node that becomes a single element
+     * @return Application site for gamma, the builtin of an operator (typed if its operand types are
+     * proven), the canonical element of a constant, a plain element otherwise
+     */
+    private Value elementOf(int node) {
+        switch (tree.getLabel(node)) {
+            case "gamma":
+                return new GammaSite();
+            case "true":
+                return Value.TRUE;
+            case "false":
+                return Value.FALSE;
+            case "nil":
+                return Value.NIL;
+            case "dummy":
+                return Value.DUMMY;
+        }
+        Builtin operator = typedOperators.get(node);
+        if (operator == null) {
+            operator = Builtins.operator(tree.getLabel(node));
         }
+        return operator != null ? operator : new Value(tree.getLabel(node), tree.getValue(node));
     }
 
     /**
      * Split the control structure on lambda nodes and use a delta node to traverse in the sub tree.
      *
      * @param node           Current traversing node
-     * @param controls       Array with all control structures
      * @param currentControl Current traversing control structure
      */
-    private static void generateCsForLambda(Node node, ArrayList<Stack<Value>> controls,
-                                            Stack<Value> currentControl) {
+    private void generateCsForLambda(int node, Stack<Value> currentControl) {
         // Get right and left children
-        int newIndex = controls.size();
-        Node leftChild = node.getChild(0);
-        Node rightChild = node.getChild(1);
+        int leftChild = tree.getChild(node, 0);
+        int rightChild = tree.getChild(node, 1);
 
-        if (leftChild.isLabel(",")) {
+        String params;
+        if (tree.isLabel(leftChild, ",")) {
             ArrayList<String> children = new ArrayList<>();
-            leftChild.forEachChild(child -> children.add(child.getValue()));
-            String combinedParams = String.join(",", children);
-            leftChild = new Node("id", combinedParams);
+            tree.forEachChild(leftChild, child -> children.add(tree.getValue(child)));
+            params = String.join(",", children);
+        } else {
+            params = tree.getValue(leftChild);
         }
 
+        // Traverse in new structure
+        int newIndex = generateDelta(rightChild);
+
         // Create the control element
-        String controlValue = String.format("%s %s", newIndex, leftChild.getValue());
-        Value newControlElem = new Value("lambda", controlValue);
+        Value newControlElem = new Lambda(newIndex, String.valueOf(params));
         currentControl.push(newControlElem);
-
-        // Create new control structure
-        Stack<Value> newControl = new Stack<>();
-        controls.add(newControl);
-
-        // Traverse in new structure
-        generateControlStructures(rightChild, controls, newControl);
     }
 
     /**
      * Split if node to then and else delta nodes and traverse in subtrees.
      *
      * @param node           Current traversing node
-     * @param controls       Array with all control structures
      * @param currentControl Current traversing control structure
      */
-    private static void generateCsForIf(Node node, ArrayList<Stack<Value>> controls,
-                                        Stack<Value> currentControl) {
-        Node conditionNode = node.getChild(0);
-        Node thenNode = node.getChild(1);
-        Node elseNode = node.getChild(2);
+    private void generateCsForIf(int node, Stack<Value> currentControl) {
+        int conditionNode = tree.getChild(node, 0);
+        int thenNode = tree.getChild(node, 1);
+        int elseNode = tree.getChild(node, 2);
 
         // Then subtree
-        int thenIndex = controls.size();
+        int thenIndex = generateDelta(thenNode);
         Value thenElem = new Value("delta", Integer.toString(thenIndex));
         currentControl.push(thenElem);
-        Stack<Value> thenControl = new Stack<>();
-        controls.add(thenControl);
-        generateControlStructures(thenNode, controls, thenControl);
 
         // Else subtree
-        int elseIndex = controls.size();
+        int elseIndex = generateDelta(elseNode);
         Value elseElem = new Value("delta", Integer.toString(elseIndex));
         currentControl.push(elseElem);
-        Stack<Value> elseControl = new Stack<>();
-        controls.add(elseControl);
-        generateControlStructures(elseNode, controls, elseControl);
 
         currentControl.push(new Value("beta"));
-        generateControlStructures(conditionNode, controls, currentControl);
+        generateControlStructures(conditionNode, currentControl);
     }
 
     /**
      * Add number of elements in tau node and traverse in each subtree.
      *
      * @param node           Current traversing node
-     * @param controls       Array with all control structures
      * @param currentControl Current traversing control structure
      */
-    private static void generateCsForTau(Node node, ArrayList<Stack<Value>> controls,
-                                         Stack<Value> currentControl) {
-        currentControl.push(new Value("tau", Integer.toString(node.getNumberOfChildren())));
-        node.forEachChild(child -> generateControlStructures(child, controls, currentControl));
+    private void generateCsForTau(int node, Stack<Value> currentControl) {
+        currentControl.push(new Value("tau", Integer.toString(tree.getNumberOfChildren(node))));
+        tree.forEachChild(node, child -> generateControlStructures(child, currentControl));
+    }
+
+    /**
+     * Generate each tau component or operand into its own control structure so the machine can fork them.
+     * The operator is kept in the current control structure and consumes the forked results.
+     * Component control structures are kept in the fork element and do not take a delta index.
+     *
+     * @param node           Current traversing node
+     * @param currentControl Current traversing control structure
+     */
+    private void generateCsForFork(int node, Stack<Value> currentControl) {
+        if (tree.isLabel(node, "tau")) {
+            currentControl.push(new Value("tau", Integer.toString(tree.getNumberOfChildren(node))));
+        } else {
+            currentControl.push(elementOf(node));
+        }
+
+        ArrayList<Stack<Value>> componentControls = new ArrayList<>();
+        tree.forEachChild(node, child -> {
+            Stack<Value> componentControl = new Stack<>();
+            componentControls.add(componentControl);
+            generateControlStructures(child, componentControl);
+        });
+        currentControl.push(new Fork(componentControls));
+    }
+
+    /**
+     * Generate the argument of the gamma node into a delay element instead of evaluating it.
+     * The delay element creates a thunk that is forced on first lookup.
+     * Like fork components, the delayed code does not take a delta index.
+     *
+     * @param node           Current traversing node
+     * @param currentControl Current traversing control structure
+     */
+    private void generateCsForLazyGamma(int node, Stack<Value> currentControl) {
+        currentControl.push(new GammaSite());
+        generateControlStructures(tree.getChild(node, 0), currentControl);
+
+        Stack<Value> argumentControl = new Stack<>();
+        generateControlStructures(tree.getChild(node, 1), argumentControl);
+        currentControl.push(new Delay(argumentControl));
+    }
+
+    /**
+     * Replace the innermost gamma nodes of an application spine with one call element
+     * that passes several arguments at once. Remaining arguments are applied by gamma as usual.
+     * <pre>
+     * gamma gamma gamma f a b c  =&gt;  gamma call(2) f a b c
+     * </pre>
+     *
+     * @param node           Outermost gamma node of the spine
+     * @param currentControl Current traversing control structure
+     */
+    private void generateCsForCall(int node, Stack<Value> currentControl) {
+        ArrayList<Integer> arguments = new ArrayList<>();
+        int head = node;
+        for (; tree.isLabel(head, "gamma"); head = tree.getChild(head, 0)) {
+            arguments.add(0, tree.getChild(head, 1));
+        }
+        int callArguments = uncurriedCalls[node];
+        for (int i = callArguments; i < arguments.size(); i++) {
+            currentControl.push(new GammaSite());
+        }
+        currentControl.push(new Value("call", Integer.toString(callArguments)));
+        generateControlStructures(head, currentControl);
+        for (int argument : arguments) {
+            if (delayedArguments.get(argument)) {
+                Stack<Value> argumentControl = new Stack<>();
+                generateControlStructures(argument, argumentControl);
+                currentControl.push(new Delay(argumentControl));
+            } else {
+                generateControlStructures(argument, currentControl);
+            }
+        }
+    }
+
+    /**
+     * A tau or binary operator node is worth forking if at least two of its components
+     * contain enough applications and none of them refer to Print.
+     *
+     * @param node Node to check
+     * @return Whether the components of the node should be evaluated in parallel
+     */
+    private boolean isForkable(int node) {
+        if (!tree.isLabel(node, "tau") && !Builtins.isBinaryOperator(tree.getLabel(node))) {
+            return false;
+        }
+        int expensiveComponents = 0;
+        for (int child = tree.getFirstChild(node); child != FlatTree.NONE; child = tree.getNextSibling(child)) {
+            if (countApplications(child, options.getParallelThreshold()) >= options.getParallelThreshold()) {
+                expensiveComponents++;
+            }
+        }
+        if (expensiveComponents < 2) {
+            return false;
+        }
+        for (int child = tree.getFirstChild(node); child != FlatTree.NONE; child = tree.getNextSibling(child)) {
+            if (refersToPrint(child)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Counts gamma nodes in the subtree, stopping once the limit is reached.
+     *
+     * @param node  Root of the subtree
+     * @param limit Count at which to stop searching
+     * @return Number of applications found (at most limit)
+     */
+    private int countApplications(int node, int limit) {
+        int applications = tree.isLabel(node, "gamma") ? 1 : 0;
+        for (int child = tree.getFirstChild(node); child != FlatTree.NONE && applications < limit;
+             child = tree.getNextSibling(child)) {
+            applications += countApplications(child, limit - applications);
+        }
+        return applications;
+    }
+
+    /**
+     * @param node Root of the subtree
+     * @return Whether Print is referenced anywhere in the subtree
+     */
+    private boolean refersToPrint(int node) {
+        if (tree.isLabel(node, "id") && "Print".equals(tree.getValue(node))) {
+            return true;
+        }
+        for (int child = tree.getFirstChild(node); child != FlatTree.NONE; child = tree.getNextSibling(child)) {
+            if (refersToPrint(child)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Generates a lambda body or conditional branch into its pre-assigned control structure.
+     */
+    private static class DeltaTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final ElementParser parser;
+        private final int node;
+        private final Stack<Value> control;
+
+        DeltaTask(ElementParser parser, int node, Stack<Value> control) {
+            this.parser = parser;
+            this.node = node;
+            this.control = control;
+        }
+
+        @Override
+        protected void compute() {
+            parser.generateControlStructures(node, control);
+            parser.joinTasks();
+        }
     }
 }
@@ -1,36 +1,45 @@
 package cse;
 
 
+import cse.applicator.Builtin;
+import cse.applicator.Builtins;
 import cse.element.Element;
+import cse.element.Thunk;
+import cse.element.Value;
 
+import java.io.Serializable;
+import java.util.Arrays;
 import java.util.HashMap;
 
 /**
  * Environment which will keep entries on names and their values.
+ * <p>
+ * The primary environment keeps the builtins in a hash map. A sub environment binds the few
+ * parameters of one lambda, so its entries are kept in two small arrays and searched in order.
  */
-public class Environment {
+public class Environment implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final int INITIAL_CAPACITY = 2;
+
     private Environment parent;
     private final HashMap<String, Element> memory;
+    private String[] names;
+    private Element[] values;
+    private int size;
+    private int depth;
+    private final boolean reusable;
+    private EnvironmentMarker marker;
 
     /**
-     * Create primary environment.
+     * Create primary environment with the builtin functions.
      */
     Environment() {
         this.memory = new HashMap<>();
-        remember("Print", null);
-        remember("Isstring", null);
-        remember("Isinteger", null);
-        remember("Istruthvalue", null);
-        remember("Istuple", null);
-        remember("Isfunction", null);
-        remember("Null", null);
-        remember("Order", null);
-        remember("Stern", null);
-        remember("Stem", null);
-        remember("ItoS", null);
-        remember("neg", null);
-        remember("not", null);
-        remember("Conc", null);
+        this.depth = 0;
+        this.reusable = false;
+        for (Builtin builtin : Builtins.functions()) {
+            remember(builtin.getLabel(), builtin);
+        }
     }
 
     /**
@@ -39,8 +48,22 @@ public class Environment {
      * @param parent Parent environment
      */
     Environment(Environment parent) {
-        this.memory = new HashMap<>();
+        this(parent, false);
+    }
+
+    /**
+     * Create empty sub environment.
+     *
+     * @param parent   Parent environment
+     * @param reusable Whether nothing can refer to the environment once its body returns
+     */
+    Environment(Environment parent, boolean reusable) {
+        this.memory = null;
+        this.names = new String[INITIAL_CAPACITY];
+        this.values = new Element[INITIAL_CAPACITY];
         this.parent = parent;
+        this.depth = parent.depth + 1;
+        this.reusable = reusable;
     }
 
     /**
@@ -51,11 +74,55 @@ public class Environment {
      * @param value  Value of variable
      */
     Environment(Environment parent, String key, Element value) {
-        this.memory = new HashMap<>();
+        this.memory = null;
+        this.names = new String[INITIAL_CAPACITY];
+        this.values = new Element[INITIAL_CAPACITY];
         this.parent = parent;
+        this.depth = parent.depth + 1;
+        this.reusable = false;
         remember(key, value);
     }
 
+    /**
+     * @return Number of environments between this environment and the primary environment.
+     */
+    int getDepth() {
+        return depth;
+    }
+
+    /**
+     * @return Environment element of the environment, shared by all its uses
+     */
+    EnvironmentMarker getMarker() {
+        return marker;
+    }
+
+    /**
+     * @param index Index of the environment in the machine
+     */
+    void setIndex(int index) {
+        this.marker = new EnvironmentMarker(index);
+    }
+
+    /**
+     * @return Whether nothing can refer to the environment once its body returns.
+     */
+    boolean isReusable() {
+        return reusable;
+    }
+
+    /**
+     * Clear the entries of a reusable environment and attach it to a new parent.
+     *
+     * @param parent Parent environment
+     */
+    void reuse(Environment parent) {
+        Arrays.fill(values, 0, size, null);
+        size = 0;
+        this.parent = parent;
+        this.depth = parent.depth + 1;
+    }
+
     /**
      * Remember an entry. Error if already defined.
      *
@@ -63,38 +130,78 @@ public class Environment {
      * @param value Value of variable
      */
     void remember(String key, Element value) {
-        if (memory.containsKey(key)) {
+        if (memory != null ? memory.containsKey(key) : indexOf(key) >= 0) {
             throw new RuntimeException("Variable is already defined: " + key);
         }
-        memory.put(key, value);
+        if (memory != null) {
+            memory.put(key, value);
+            return;
+        }
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        names[size] = key;
+        values[size] = value;
+        size++;
     }
 
     /**
-     * Get the value of a variable.
-     * Returns null if defined in primary environment.
+     * @param key Key/name of variable
+     * @return Position of the entry in a sub environment, -1 if it is not defined here
+     */
+    private int indexOf(String key) {
+        for (int i = 0; i < size; i++) {
+            if (names[i].equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Get the value of a variable, forcing it if it is a thunk.
      * Throws error if undefined.
      *
      * @param id Name of the variable
      * @return Value of the variable.
      */
     Element lookup(String id) {
-        if (memory.containsKey(id)) {
-            return memory.get(id);
+        return Thunk.force(lookupUnforced(id));
+    }
+
+    /**
+     * Get the value of a variable without forcing thunks.
+     * Throws error if undefined.
+     *
+     * @param id Name of the variable
+     * @return Value or thunk of the variable.
+     */
+    Element lookupUnforced(String id) {
+        if (memory != null) {
+            Element value = memory.get(id);
+            if (value != null) {
+                return value;
+            }
+        } else {
+            int i = indexOf(id);
+            if (i >= 0) {
+                return values[i];
+            }
         }
         if (parent == null) {
             // Primary Environment and not found
             throw new RuntimeException("Undefined variable: " + id);
         }
-        return parent.lookup(id);
+        return parent.lookupUnforced(id);
     }
 
     @Override
     public String toString() {
         if (parent != null) {
-            String[] data = new String[memory.size()];
-            int i = 0;
-            for (String key : memory.keySet()) {
-                data[i++] = "[" + memory.get(key) + "/" + key + "]";
+            String[] data = new String[size];
+            for (int i = 0; i < size; i++) {
+                data[i] = "[" + values[i] + "/" + names[i] + "]";
             }
             return parent + " > " + String.join("", data);
         }
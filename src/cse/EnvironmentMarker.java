@@ -0,0 +1,56 @@
+package cse;
+
+import cse.element.Value;
+
+/**
+ * Environment element e(n) of an environment, shared by all its uses.
+ * <p>
+ * It keeps the index as a number so finding the current environment and closing a frame
+ * do not parse it, and only builds the "n" value when something reads it, such as a trace.
+ */
+class EnvironmentMarker extends Value {
+    private static final long serialVersionUID = 1L;
+    private final int index;
+    private transient String value;
+
+    /**
+     * @param index Index of the environment in the machine
+     */
+    EnvironmentMarker(int index) {
+        super("environment", null);
+        this.index = index;
+    }
+
+    /**
+     * @return Index of the environment in the machine
+     */
+    int getIndex() {
+        return index;
+    }
+
+    @Override
+    public String getValue() {
+        // Racing threads build equal strings, and a string is safe to publish without a lock
+        if (value == null) {
+            value = Integer.toString(index);
+        }
+        return value;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        return index == ((EnvironmentMarker) o).index;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * getLabel().hashCode() + index;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s(%s)", getLabel(), getValue());
+    }
+}
@@ -0,0 +1,78 @@
+package cse;
+
+import cse.element.Value;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+
+/**
+ * Escape analysis of the environments created for lambda bodies.
+ * <p>
+ * The environment of a body escapes when something created while evaluating the body can refer to
+ * it after the body returns: a closure (lambda element not applied right away, including rec
+ * lambdas given to yStar) or a thunk of a delayed argument. A lambda applied right away
+ * (let/where) creates an environment whose parent is the current one, so its body must not
+ * let its own environment escape either. The then and else control structures of a
+ * conditional and forked components run in the same environment and are checked as part of it.
+ * Environments of bodies that do not escape are dead once their environment element is removed.
+ */
+class EscapeAnalysis {
+    private final ArrayList<Stack<Value>> controlStructures;
+    private final Boolean[] escapes;
+
+    private EscapeAnalysis(ArrayList<Stack<Value>> controlStructures) {
+        this.controlStructures = controlStructures;
+        this.escapes = new Boolean[controlStructures.size()];
+    }
+
+    /**
+     * @param controlStructures Generated control structures
+     * @return Indices of the lambda control structures whose environments can be reused
+     */
+    static BitSet reusableFrames(ArrayList<Stack<Value>> controlStructures) {
+        EscapeAnalysis analysis = new EscapeAnalysis(controlStructures);
+        BitSet reusable = new BitSet(controlStructures.size());
+        for (int k = 1; k < controlStructures.size(); k++) {
+            if (!analysis.escapes(k)) reusable.set(k);
+        }
+        return reusable;
+    }
+
+    /**
+     * @param k Control structure index of a lambda body
+     * @return Whether the environment of the body may be referred to after the body returns
+     */
+    private boolean escapes(int k) {
+        if (escapes[k] == null) {
+            // Bodies only refer to control structures numbered after them, so there are no cycles
+            escapes[k] = escapes(controlStructures.get(k));
+        }
+        return escapes[k];
+    }
+
+    /**
+     * @param control Control structure evaluated in the environment
+     * @return Whether evaluating it may capture the environment
+     */
+    private boolean escapes(Stack<Value> control) {
+        Value previous = null;
+        for (Value element : control) {
+            if (element instanceof Fork) {
+                for (Stack<Value> component : ((Fork) element).getComponents()) {
+                    if (escapes(component)) return true;
+                }
+            } else if (element instanceof Delay) {
+                // A delayed variable shares the binding and does not capture the environment
+                Stack<Value> code = ((Delay) element).getCode();
+                if (code.size() != 1 || !code.iterator().next().isLabel("id")) return true;
+            } else if (element.isLabel("delta")) {
+                if (escapes(controlStructures.get(Integer.parseInt(element.getValue())))) return true;
+            } else if (element.isLabel("lambda")) {
+                boolean applied = previous != null && previous.isLabel("gamma");
+                if (!applied || escapes(Integer.parseInt(element.getValue().split(" ")[0]))) return true;
+            }
+            previous = element;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,51 @@
+package cse;
+
+import cse.element.Value;
+
+import java.util.Objects;
+
+/**
+ * Eta element, eta(i, v, c), made by applying Y to the closure lambda(i, v, c).
+ * Rule 13 unrolls it by applying that same closure again.
+ */
+class Eta extends Value {
+    private static final long serialVersionUID = 1L;
+    private final Closure lambda;
+
+    /**
+     * @param lambda Closure Y was applied to
+     */
+    Eta(Closure lambda) {
+        super("eta", null);
+        this.lambda = lambda;
+    }
+
+    /**
+     * @return Closure lambda(i, v, c) Y was applied to
+     */
+    Closure getLambda() {
+        return lambda;
+    }
+
+    @Override
+    public String getValue() {
+        return lambda.getValue();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        return lambda.equals(((Eta) o).lambda);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(getLabel(), lambda);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s(%s)", getLabel(), getValue());
+    }
+}
@@ -0,0 +1,38 @@
+package cse;
+
+import cse.element.Thunk;
+import cse.element.Value;
+
+/**
+ * Control element below the code of a thunk forced on the machine that needs its value.
+ * Reaching it stores the value in the thunk.
+ */
+class Force extends Value {
+    private static final long serialVersionUID = 1L;
+    private final Thunk thunk;
+    private final boolean kept;
+
+    /**
+     * @param thunk Thunk being forced
+     * @param kept  Whether the value stays on the stack; otherwise the element that needed it runs again
+     */
+    Force(Thunk thunk, boolean kept) {
+        super("force");
+        this.thunk = thunk;
+        this.kept = kept;
+    }
+
+    /**
+     * @return Thunk being forced
+     */
+    Thunk getThunk() {
+        return thunk;
+    }
+
+    /**
+     * @return Whether the value stays on the stack
+     */
+    boolean isKept() {
+        return kept;
+    }
+}
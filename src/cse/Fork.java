@@ -0,0 +1,28 @@
+package cse;
+
+import cse.element.Value;
+
+import java.util.ArrayList;
+
+/**
+ * Control element whose components are independent and may be evaluated in parallel.
+ */
+class Fork extends Value {
+    private static final long serialVersionUID = 1L;
+    private final ArrayList<Stack<Value>> components;
+
+    /**
+     * @param components Control structure of each component, in tree order
+     */
+    Fork(ArrayList<Stack<Value>> components) {
+        super("fork");
+        this.components = components;
+    }
+
+    /**
+     * @return Control structure of each component, in tree order
+     */
+    ArrayList<Stack<Value>> getComponents() {
+        return components;
+    }
+}
@@ -0,0 +1,105 @@
+package cse;
+
+import tree.AstParseException;
+import tree.FlatTree;
+import tree.TreeParser;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * RPAL front end executable, run as PATH -ast FILE to parse RPAL source into an ast.
+ * Undeclared identifiers are not errors here: they may be builtins the front end does not know,
+ * or names defined by earlier REPL inputs.
+ */
+class FrontEnd {
+    private final String path;
+
+    /**
+     * @param path Path of the front end executable
+     */
+    FrontEnd(String path) {
+        this.path = path;
+    }
+
+    /**
+     * @return Path of the front end executable
+     */
+    String getPath() {
+        return path;
+    }
+
+    /**
+     * Parse a source file.
+     *
+     * @param file RPAL source
+     * @return Ast, or the error of the front end
+     * @throws IOException If the front end cannot be run
+     */
+    Result parse(Path file) throws IOException {
+        try {
+            Process process = new ProcessBuilder(path, "-ast", file.toString())
+                    .redirectErrorStream(true)
+                    .start();
+            List<String> lines = new ArrayList<>();
+            try (BufferedReader output = new BufferedReader(
+                    new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                for (String line = output.readLine(); line != null; line = output.readLine()) {
+                    lines.add(line);
+                }
+            }
+            int exitCode = process.waitFor();
+            String error = String.join("\n", lines).trim();
+            if (error.isEmpty()) {
+                error = "The front end failed with exit code " + exitCode;
+            }
+            if (exitCode == 0 || lines.stream().anyMatch(line -> line.startsWith("Undeclared Identifier"))) {
+                try {
+                    FlatTree tree = TreeParser.flatTreeFromString(lines);
+                    if (tree.getRoot() != FlatTree.NONE) {
+                        return new Result(tree, null);
+                    }
+                    error = "The front end did not produce a tree";
+                } catch (AstParseException exception) {
+                    error = "The front end did not produce a tree: " + exception.getMessage();
+                }
+            }
+            return new Result(null, error);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while parsing", exception);
+        }
+    }
+
+    /**
+     * Result of the front end: a tree or its error.
+     */
+    static class Result {
+        private final FlatTree tree;
+        private final String error;
+
+        Result(FlatTree tree, String error) {
+            this.tree = tree;
+            this.error = error;
+        }
+
+        /**
+         * @return Ast, null if the source could not be parsed
+         */
+        FlatTree getTree() {
+            return tree;
+        }
+
+        /**
+         * @return Error printed by the front end, null if the source was parsed
+         */
+        String getError() {
+            return error;
+        }
+    }
+}
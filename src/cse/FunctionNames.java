@@ -0,0 +1,119 @@
+package cse;
+
+import cse.element.Value;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Maps lambda control structure indices back to the names they are bound to.
+ * <p>
+ * Names are recovered from the generated control structures, so they follow the standardized forms:
+ * <pre>
+ * gamma lambda(k1, x) lambda(k2, ...)                 let x = fn ... : delta k2 is x
+ * gamma lambda(k1, x) gamma yStar lambda(k2, x)       let rec x = ... : delta k2 is x
+ * gamma lambda(k1, x,y) tau(n) lambda(k2) lambda(k3)  let x = fn ... and y = fn ...
+ * </pre>
+ * A control structure made of a single lambda continues the named function (curried parameters, rec bodies).
+ * The body of a let/where (lambda(k1, x) above) is named "let x".
+ */
+class FunctionNames {
+    /**
+     * @param controlStructures Generated control structures
+     * @return Bound name of each named lambda control structure
+     */
+    static HashMap<Integer, String> of(ArrayList<Stack<Value>> controlStructures) {
+        HashMap<Integer, String> names = new HashMap<>();
+        for (Stack<Value> control : controlStructures) {
+            nameBindings(elementsOf(control), names);
+        }
+        // Nested lambdas are numbered after their parents, so one pass in order reaches all of them
+        for (int k = 0; k < controlStructures.size(); k++) {
+            ArrayList<Value> elements = elementsOf(controlStructures.get(k));
+            if (names.containsKey(k) && elements.size() == 1 && elements.get(0).isLabel("lambda")) {
+                names.putIfAbsent(deltaOf(elements.get(0)), names.get(k));
+            }
+            if (names.containsKey(k) && isTupleBinding(names.get(k)) && !elements.isEmpty()
+                    && elements.get(0).isLabel("tau")) {
+                // rec with and: lambda(k, x,y) whose body is tau(n) lambda lambda
+                nameComponents(names.get(k).split(","), elements, 1, names);
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Find let/where/rec bindings of lambdas in a control structure.
+     *
+     * @param elements Elements of the control structure
+     * @param names    Names found so far
+     */
+    private static void nameBindings(ArrayList<Value> elements, HashMap<Integer, String> names) {
+        for (int i = 0; i < elements.size(); i++) {
+            Value element = elements.get(i);
+            if (element instanceof Fork) {
+                for (Stack<Value> component : ((Fork) element).getComponents()) {
+                    nameBindings(elementsOf(component), names);
+                }
+            } else if (element instanceof Delay) {
+                nameBindings(elementsOf(((Delay) element).getCode()), names);
+            }
+            if (!element.isLabel("gamma") || i + 2 >= elements.size() || !elements.get(i + 1).isLabel("lambda")) {
+                continue;
+            }
+            String bound = elements.get(i + 1).getValue().split(" ")[1];
+            names.putIfAbsent(deltaOf(elements.get(i + 1)), "let " + bound);
+            Value rand = elements.get(i + 2);
+            if (rand.isLabel("lambda")) {
+                names.putIfAbsent(deltaOf(rand), bound);
+            } else if (rand.isLabel("gamma") && i + 4 < elements.size()
+                    && elements.get(i + 3).isLabel("yStar") && elements.get(i + 4).isLabel("lambda")) {
+                names.putIfAbsent(deltaOf(elements.get(i + 4)), bound);
+            } else if (rand.isLabel("tau") && isTupleBinding(bound)) {
+                nameComponents(bound.split(","), elements, i + 3, names);
+            }
+        }
+    }
+
+    /**
+     * Name the leading lambda components of a tau bound to a tuple of names.
+     *
+     * @param bound    Names of the tuple
+     * @param elements Elements of the control structure
+     * @param first    Position of the first component
+     * @param names    Names found so far
+     */
+    private static void nameComponents(String[] bound, ArrayList<Value> elements, int first,
+                                       HashMap<Integer, String> names) {
+        for (int j = 0; j < bound.length && first + j < elements.size(); j++) {
+            Value component = elements.get(first + j);
+            if (!component.isLabel("lambda")) break;
+            names.putIfAbsent(deltaOf(component), bound[j]);
+        }
+    }
+
+    /**
+     * @return Whether the bound variable is a tuple of names
+     */
+    private static boolean isTupleBinding(String bound) {
+        return bound.contains(",");
+    }
+
+    /**
+     * @return Control structure index of a lambda element
+     */
+    private static int deltaOf(Value lambda) {
+        return Integer.parseInt(lambda.getValue().split(" ")[0]);
+    }
+
+    /**
+     * @return Elements of the control structure in order
+     */
+    private static ArrayList<Value> elementsOf(Stack<Value> control) {
+        ArrayList<Value> elements = new ArrayList<>();
+        for (Value element : control) {
+            elements.add(element);
+        }
+        return elements;
+    }
+}
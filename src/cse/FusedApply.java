@@ -0,0 +1,37 @@
+package cse;
+
+import cse.element.Value;
+
+/**
+ * Superinstruction for an application whose rator is a name.
+ * <pre>
+ * gamma id  =&gt;  fused-apply(id)
+ * </pre>
+ */
+class FusedApply extends Value {
+    private static final long serialVersionUID = 1L;
+    private final Value rator;
+    private final InlineCache cache = new InlineCache();
+
+    /**
+     * @param rator Id element of the rator
+     */
+    FusedApply(Value rator) {
+        super("fused-apply");
+        this.rator = rator;
+    }
+
+    /**
+     * @return Id element of the rator
+     */
+    Value getRator() {
+        return rator;
+    }
+
+    /**
+     * @return Inline cache of the site
+     */
+    InlineCache getCache() {
+        return cache;
+    }
+}
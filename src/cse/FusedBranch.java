@@ -0,0 +1,30 @@
+package cse;
+
+import cse.element.Value;
+
+/**
+ * Superinstruction for a conditional whose condition is a binary operator.
+ * The then and else delta elements stay in the control structure.
+ * <pre>
+ * delta delta beta op  =&gt;  delta delta fused-branch(op)
+ * </pre>
+ */
+class FusedBranch extends Value {
+    private static final long serialVersionUID = 1L;
+    private final Value condition;
+
+    /**
+     * @param condition Binary operator element or fused operation computing the condition
+     */
+    FusedBranch(Value condition) {
+        super("fused-branch");
+        this.condition = condition;
+    }
+
+    /**
+     * @return Binary operator element or fused operation computing the condition
+     */
+    Value getCondition() {
+        return condition;
+    }
+}
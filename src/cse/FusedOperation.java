@@ -0,0 +1,50 @@
+package cse;
+
+import cse.applicator.Builtin;
+import cse.element.Value;
+
+/**
+ * Superinstruction for a binary operator whose operands are names or literals.
+ * <pre>
+ * op A B  =&gt;  fused-operation(op, A, B)
+ * </pre>
+ */
+class FusedOperation extends Value {
+    private static final long serialVersionUID = 1L;
+    private final Builtin operation;
+    private final Value left;
+    private final Value right;
+
+    /**
+     * @param operation Binary operator element
+     * @param left      Left operand, id or literal
+     * @param right     Right operand, id or literal
+     */
+    FusedOperation(Builtin operation, Value left, Value right) {
+        super("fused-operation");
+        this.operation = operation;
+        this.left = left;
+        this.right = right;
+    }
+
+    /**
+     * @return Binary operator element
+     */
+    Builtin getOperation() {
+        return operation;
+    }
+
+    /**
+     * @return Left operand, id or literal
+     */
+    Value getLeft() {
+        return left;
+    }
+
+    /**
+     * @return Right operand, id or literal
+     */
+    Value getRight() {
+        return right;
+    }
+}
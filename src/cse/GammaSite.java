@@ -0,0 +1,22 @@
+package cse;
+
+import cse.element.Value;
+
+/**
+ * Gamma element of the generated control structures, with the inline cache of its application site.
+ */
+class GammaSite extends Value {
+    private static final long serialVersionUID = 1L;
+    private final InlineCache cache = new InlineCache();
+
+    GammaSite() {
+        super("gamma");
+    }
+
+    /**
+     * @return Inline cache of the site
+     */
+    InlineCache getCache() {
+        return cache;
+    }
+}
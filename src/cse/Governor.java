@@ -0,0 +1,94 @@
+package cse;
+
+import cse.LimitExceededException.Limit;
+
+/**
+ * Enforces the resource limits of an evaluation.
+ * Shared by a machine and the machines it creates for forks and thunks.
+ * <p>
+ * Machines take steps from the governor in rations and only come back when a ration is used up,
+ * so the evaluate loop pays a single counter decrement per step.
+ * Sizes and the deadline are checked whenever a new ration is taken.
+ */
+class Governor {
+    /**
+     * Maximum number of steps a machine runs between checks.
+     */
+    private static final int RATION = 1024;
+
+    private final Limits limits;
+    private final long maxSteps;
+    private final long deadline;
+    private long granted;
+
+    /**
+     * @param limits Limits to enforce
+     */
+    Governor(Limits limits) {
+        this.limits = limits;
+        this.maxSteps = limits.getMaxSteps() > 0 ? limits.getMaxSteps() : Long.MAX_VALUE;
+        this.deadline = limits.getTimeoutMillis() > 0
+                ? System.nanoTime() + limits.getTimeoutMillis() * 1_000_000 : Long.MAX_VALUE;
+    }
+
+    /**
+     * Check the limits and grant the next steps to a machine.
+     *
+     * @param controlSize Control size of the machine
+     * @param stackSize   Stack size of the machine
+     * @return Number of steps granted (at least 1)
+     */
+    synchronized int ration(int controlSize, int stackSize) {
+        if (granted >= maxSteps) {
+            throw new LimitExceededException(Limit.STEPS, maxSteps, granted);
+        }
+        if (deadline != Long.MAX_VALUE && System.nanoTime() - deadline > 0) {
+            throw new LimitExceededException(Limit.TIME, limits.getTimeoutMillis(), granted);
+        }
+        check(Limit.CONTROL_SIZE, limits.getMaxControlSize(), controlSize, 0);
+        check(Limit.STACK_SIZE, limits.getMaxStackSize(), stackSize, 0);
+        int ration = (int) Math.min(RATION, maxSteps - granted);
+        granted += ration;
+        return ration;
+    }
+
+    /**
+     * Give back steps that a finished machine did not use.
+     *
+     * @param steps Unused steps
+     */
+    synchronized void refund(int steps) {
+        granted -= steps;
+    }
+
+    /**
+     * Check the limits on a newly created environment.
+     *
+     * @param environments Number of environments including the new one
+     * @param depth        Length of the environment chain of the new one
+     * @param unusedSteps  Steps granted to the machine that it has not used yet
+     */
+    void checkEnvironment(int environments, int depth, int unusedSteps) {
+        check(Limit.ENVIRONMENTS, limits.getMaxEnvironments(), environments, unusedSteps);
+        check(Limit.ENVIRONMENT_DEPTH, limits.getMaxEnvironmentDepth(), depth, unusedSteps);
+    }
+
+    /**
+     * @param limit       Limit to check
+     * @param maximum     Configured value, 0 if unlimited
+     * @param value       Current value
+     * @param unusedSteps Steps granted to the checked machine that it has not used yet
+     */
+    private void check(Limit limit, long maximum, long value, int unusedSteps) {
+        if (maximum > 0 && value > maximum) {
+            throw new LimitExceededException(limit, maximum, getSteps() - unusedSteps);
+        }
+    }
+
+    /**
+     * @return Steps granted so far, which is an upper bound of the steps executed.
+     */
+    synchronized long getSteps() {
+        return granted;
+    }
+}
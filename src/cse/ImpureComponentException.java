@@ -0,0 +1,13 @@
+package cse;
+
+/**
+ * Exception when a forked component applies Print, which must happen in the sequential order.
+ * The machine that forked the component catches it and evaluates the components inline instead.
+ */
+class ImpureComponentException extends CseException {
+    private static final long serialVersionUID = 1L;
+
+    ImpureComponentException() {
+        super("Print is not allowed in a forked component");
+    }
+}
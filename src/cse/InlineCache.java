@@ -0,0 +1,190 @@
+package cse;
+
+import cse.element.Element;
+import cse.element.Tuple;
+
+import java.io.Serializable;
+
+/**
+ * Inline cache of an application site.
+ * <p>
+ * Remembers the kinds of rators the site has applied: closures of a lambda (by control structure
+ * index), builtins (by label), tuples and the rec elements. A rator matching an entry goes
+ * straight to its handler. On a miss the machine takes the generic path and the cache learns the
+ * rator, up to {@link #MAX_ENTRIES} kinds; a site that sees more becomes megamorphic and is no
+ * longer cached.
+ * <p>
+ * Sites are shared by forked machines. Learning is synchronized so the number of entries never
+ * passes {@link #MAX_ENTRIES}; entries are immutable so a racing lookup sees either an entry or
+ * nothing, and the hit and miss counts are only approximate under parallel evaluation.
+ */
+class InlineCache implements Serializable {
+    private static final long serialVersionUID = 1L;
+    static final int CLOSURE = 0;
+    static final int TUPLE_CLOSURE = 1;
+    static final int RECURSIVE = 2;
+    static final int RECURSIVE_TUPLE = 3;
+    static final int BUILTIN = 4;
+    static final int TAU = 5;
+    static final int ETA = 6;
+    static final int Y_STAR = 7;
+
+    private static final int MAX_ENTRIES = 4;
+
+    private final Entry[] entries = new Entry[MAX_ENTRIES];
+    private int size;
+    private boolean megamorphic;
+    private long hits;
+    private long misses;
+
+    /**
+     * @param rator Rator about to be applied
+     * @return Entry of the rator kind, null on a miss
+     */
+    Entry lookup(Element rator) {
+        if (!megamorphic) {
+            // Read once: a racing learn may be adding an entry
+            int known = Math.min(size, MAX_ENTRIES);
+            for (int i = 0; i < known; i++) {
+                Entry entry = entries[i];
+                if (entry != null && entry.matches(rator)) {
+                    hits++;
+                    return entry;
+                }
+            }
+        }
+        misses++;
+        return null;
+    }
+
+    /**
+     * Learn the kind of a rator that missed.
+     *
+     * @param rator Rator applied by the generic path
+     */
+    synchronized void learn(Element rator) {
+        if (megamorphic) {
+            return;
+        }
+        if (size == MAX_ENTRIES) {
+            megamorphic = true;
+            return;
+        }
+        entries[size] = Entry.of(rator);
+        size++;
+    }
+
+    /**
+     * @return Number of applications that matched an entry.
+     */
+    long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return Number of applications that took the generic path.
+     */
+    long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return monomorphic, polymorphic, megamorphic or unused
+     */
+    String getState() {
+        if (megamorphic) return "megamorphic";
+        if (size == 0) return "unused";
+        return size == 1 ? "monomorphic" : "polymorphic";
+    }
+
+    /**
+     * Kind of rator with what its handler needs.
+     */
+    static class Entry implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private final int kind;
+        private final Class<?> type;
+        private final String label;
+        private final int delta;
+        private final String[] parameters;
+
+        private Entry(int kind, Class<?> type, String label, int delta, String[] parameters) {
+            this.kind = kind;
+            this.type = type;
+            this.label = label;
+            this.delta = delta;
+            this.parameters = parameters;
+        }
+
+        /**
+         * Classify a rator in the order of the generic path.
+         *
+         * @param rator Rator element
+         * @return Entry matching rators of the same kind
+         */
+        static Entry of(Element rator) {
+            if (rator.isLabel("yStar")) {
+                return new Entry(Y_STAR, rator.getClass(), rator.getLabel(), 0, null);
+            } else if (rator instanceof RecursiveClosure) {
+                return closure(RECURSIVE, RECURSIVE_TUPLE, rator, ((RecursiveClosure) rator).getClosure());
+            } else if (rator.isLabel("eta")) {
+                return new Entry(ETA, rator.getClass(), rator.getLabel(), 0, null);
+            } else if (rator.isLabel("lambda")) {
+                return closure(CLOSURE, TUPLE_CLOSURE, rator, (Closure) rator);
+            } else if (rator instanceof Tuple) {
+                return new Entry(TAU, rator.getClass(), rator.getLabel(), 0, null);
+            }
+            return new Entry(BUILTIN, rator.getClass(), rator.getLabel(), 0, null);
+        }
+
+        /**
+         * @param lambda lambda(k, x, c) element
+         * @return Entry matching closures of lambda k
+         */
+        private static Entry closure(int kind, int tupleKind, Element rator, Closure lambda) {
+            return new Entry(lambda.isTuple() ? tupleKind : kind, rator.getClass(), rator.getLabel(),
+                    lambda.getDelta(), lambda.getParameters());
+        }
+
+        /**
+         * @return Whether the rator is of this kind
+         */
+        boolean matches(Element rator) {
+            if (rator.getClass() != type || !label.equals(rator.getLabel())) {
+                return false;
+            }
+            return parameters == null || closureOf(rator).getDelta() == delta;
+        }
+
+        /**
+         * @param rator Rator matching a closure entry
+         * @return lambda(k, x, c) element of the rator
+         */
+        Closure closureOf(Element rator) {
+            return rator instanceof RecursiveClosure ? ((RecursiveClosure) rator).getClosure() : (Closure) rator;
+        }
+
+        /**
+         * @param rator Rator matching a closure entry
+         * @return Environment index c of the closure
+         */
+        int environmentOf(Element rator) {
+            return closureOf(rator).getEnvironment();
+        }
+
+        int getKind() {
+            return kind;
+        }
+
+        int getDelta() {
+            return delta;
+        }
+
+        /**
+         * @return Parameter names of a closure entry; one name unless it is a tuple closure
+         */
+        String[] getParameters() {
+            return parameters;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package cse;
+
+import cse.element.Value;
+
+/**
+ * Lambda element of the generated control structures, lambda(k, x).
+ * <p>
+ * The control structure index and the bound variables are parsed once when the element is
+ * generated, so creating and applying its closures does not split the value.
+ */
+class Lambda extends Value {
+    private static final long serialVersionUID = 1L;
+    private final int delta;
+    private final String[] parameters;
+
+    /**
+     * @param delta Control structure index of the body
+     * @param bound Bound variable, or names separated by commas for a tuple parameter
+     */
+    Lambda(int delta, String bound) {
+        super("lambda", delta + " " + bound);
+        this.delta = delta;
+        this.parameters = bound.split(",");
+    }
+
+    /**
+     * @return Control structure index k of the body
+     */
+    int getDelta() {
+        return delta;
+    }
+
+    /**
+     * @return Bound variable names; one name unless the parameter is a tuple
+     */
+    String[] getParameters() {
+        return parameters;
+    }
+
+    /**
+     * @return Whether the parameter is a tuple of names, applied by rule 11
+     */
+    boolean isTuple() {
+        return parameters.length > 1;
+    }
+}
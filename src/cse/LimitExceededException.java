@@ -0,0 +1,65 @@
+package cse;
+
+/**
+ * Exception when evaluation exceeds one of the configured resource limits.
+ */
+public class LimitExceededException extends CseException {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Kinds of resource limits.
+     */
+    public enum Limit {
+        STEPS, TIME, CONTROL_SIZE, STACK_SIZE, ENVIRONMENTS, ENVIRONMENT_DEPTH, TUPLE_LENGTH
+    }
+
+    private final Limit limit;
+    private final long maximum;
+    private final long steps;
+
+    /**
+     * Create an exception when the number of steps executed is not known.
+     *
+     * @param limit   Limit that was exceeded
+     * @param maximum Configured value of the limit
+     */
+    public LimitExceededException(Limit limit, long maximum) {
+        super(String.format("Limit exceeded: %s (limit %s)", limit, maximum));
+        this.limit = limit;
+        this.maximum = maximum;
+        this.steps = -1;
+    }
+
+    /**
+     * @param limit   Limit that was exceeded
+     * @param maximum Configured value of the limit
+     * @param steps   Machine steps executed before the limit was exceeded
+     */
+    public LimitExceededException(Limit limit, long maximum, long steps) {
+        super(String.format("Limit exceeded: %s (limit %s, after %s steps)", limit, maximum, steps));
+        this.limit = limit;
+        this.maximum = maximum;
+        this.steps = steps;
+    }
+
+    /**
+     * @return Limit that was exceeded
+     */
+    public Limit getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return Configured value of the limit
+     */
+    public long getMaximum() {
+        return maximum;
+    }
+
+    /**
+     * @return Machine steps executed before the limit was exceeded, -1 if not known
+     */
+    public long getSteps() {
+        return steps;
+    }
+}
@@ -0,0 +1,121 @@
+package cse;
+
+/**
+ * Resource limits for evaluating untrusted programs.
+ * A limit of 0 means unlimited, which is the default for every limit.
+ */
+public class Limits {
+    private long maxSteps;
+    private long timeoutMillis;
+    private long maxControlSize;
+    private long maxStackSize;
+    private long maxEnvironments;
+    private long maxEnvironmentDepth;
+    private long maxTupleLength;
+
+    /**
+     * @return Whether any limit is set.
+     */
+    public boolean isEnabled() {
+        return maxSteps > 0 || timeoutMillis > 0 || maxControlSize > 0 || maxStackSize > 0
+                || maxEnvironments > 0 || maxEnvironmentDepth > 0 || maxTupleLength > 0;
+    }
+
+    /**
+     * @return Maximum number of machine steps.
+     */
+    public long getMaxSteps() {
+        return maxSteps;
+    }
+
+    /**
+     * @param maxSteps Maximum number of machine steps
+     */
+    public void setMaxSteps(long maxSteps) {
+        this.maxSteps = maxSteps;
+    }
+
+    /**
+     * @return Wall-clock time allowed for the evaluation in milliseconds.
+     */
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    /**
+     * @param timeoutMillis Wall-clock time allowed for the evaluation in milliseconds
+     */
+    public void setTimeoutMillis(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * @return Maximum number of elements in the control of a machine.
+     */
+    public long getMaxControlSize() {
+        return maxControlSize;
+    }
+
+    /**
+     * @param maxControlSize Maximum number of elements in the control of a machine
+     */
+    public void setMaxControlSize(long maxControlSize) {
+        this.maxControlSize = maxControlSize;
+    }
+
+    /**
+     * @return Maximum number of elements in the stack of a machine.
+     */
+    public long getMaxStackSize() {
+        return maxStackSize;
+    }
+
+    /**
+     * @param maxStackSize Maximum number of elements in the stack of a machine
+     */
+    public void setMaxStackSize(long maxStackSize) {
+        this.maxStackSize = maxStackSize;
+    }
+
+    /**
+     * @return Maximum number of environments created.
+     */
+    public long getMaxEnvironments() {
+        return maxEnvironments;
+    }
+
+    /**
+     * @param maxEnvironments Maximum number of environments created
+     */
+    public void setMaxEnvironments(long maxEnvironments) {
+        this.maxEnvironments = maxEnvironments;
+    }
+
+    /**
+     * @return Maximum length of an environment chain.
+     */
+    public long getMaxEnvironmentDepth() {
+        return maxEnvironmentDepth;
+    }
+
+    /**
+     * @param maxEnvironmentDepth Maximum length of an environment chain
+     */
+    public void setMaxEnvironmentDepth(long maxEnvironmentDepth) {
+        this.maxEnvironmentDepth = maxEnvironmentDepth;
+    }
+
+    /**
+     * @return Maximum number of elements in a tuple.
+     */
+    public long getMaxTupleLength() {
+        return maxTupleLength;
+    }
+
+    /**
+     * @param maxTupleLength Maximum number of elements in a tuple
+     */
+    public void setMaxTupleLength(long maxTupleLength) {
+        this.maxTupleLength = maxTupleLength;
+    }
+}
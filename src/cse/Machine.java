@@ -1,33 +1,222 @@
 package cse;
 
 import cse.applicator.Applicator;
+import cse.applicator.Builtin;
+import cse.applicator.Builtins;
 import cse.element.Element;
+import cse.element.Thunk;
 import cse.element.Tuple;
 import cse.element.Value;
 
+import java.io.IOException;
+import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
 
 /**
  * CSE machine to evaluate the traversed tree
  */
 public class Machine {
+    /**
+     * Forks are evaluated inline once this many tasks are queued beyond the idle workers.
+     */
+    private static final int MAX_SURPLUS_TASKS = 2;
+    /**
+     * Steps between reports to the metrics and checks for a due checkpoint when no governor rations the steps.
+     */
+    private static final int CHECK_RATION = 1024;
+    private static final Value GAMMA = new Value("gamma");
+
     private final Stack<Value> control;
     private final Stack<Element> stack;
+    private final Link link;
+    private final Checkpoint checkpoint;
     private final Applicator applicator;
-    private final ArrayList<Environment> environments;
+    private final GammaSite callback = new GammaSite();
+    private final List<Environment> environments;
+    private final boolean forking;
     private final ArrayList<Stack<Value>> controlStructures;
+    private CallChain[][] callChains;
+    private BitSet reusableFrames;
+    private final int baseEnvironment;
+    private int[] freeFrames = new int[16];
+    private int freeFrameCount;
+    private final boolean pure;
+    private final boolean lazy;
+    private final Governor governor;
+    private final Profiler profiler;
+    private final Profiler.CallStack callStack;
+    private final Trace trace;
+    private final Trace.Buffer traceBuffer;
+    private int tracedEnvironment;
+    private final Metrics metrics;
+    private final boolean primary;
+    private final String programName;
+    private final LongAdder programSteps;
+    private long applications;
+    private long environmentsCreated;
+    private long tupleBytes;
+    private int recursionReport;
+    private int ration;
+    private int fuel;
 
     public Machine(ArrayList<Stack<Value>> controlStructures) {
+        this(controlStructures, new Options());
+    }
+
+    /**
+     * @param controlStructures Generated control structures
+     * @param options           Evaluation options
+     */
+    public Machine(ArrayList<Stack<Value>> controlStructures, Options options) {
+        this(controlStructures, options, null);
+    }
+
+    /**
+     * Resume the evaluation saved in a checkpoint. Limits, monitoring, profiling and tracing
+     * are taken from the options, and start over from the checkpoint.
+     *
+     * @param path    Checkpoint file
+     * @param options Evaluation options
+     * @return Machine that continues from the checkpoint
+     * @throws IOException If the checkpoint cannot be read
+     */
+    public static Machine resume(String path, Options options) throws IOException {
+        Checkpoint.State state = Checkpoint.read(path);
+        options.setProgramName(state.programName);
+        return new Machine(state.controlStructures, options, state);
+    }
+
+    /**
+     * @param controlStructures Generated control structures
+     * @param options           Evaluation options
+     * @param state             Checkpointed state to continue from, null to start with delta 0
+     */
+    private Machine(ArrayList<Stack<Value>> controlStructures, Options options, Checkpoint.State state) {
         this.controlStructures = controlStructures;
+        this.callChains = new CallChain[controlStructures.size()][];
+        this.applicator = new Applicator(this::call);
+        this.pure = false;
+        this.lazy = options.isLazy();
+
+        Limits limits = options.getLimits();
+        this.governor = limits.isEnabled() ? new Governor(limits) : null;
+        applicator.setMaxTupleLength(limits.getMaxTupleLength());
+
+        if (options.getProfilePath() != null) {
+            this.profiler = new Profiler(controlStructures);
+            this.callStack = profiler.newCallStack(null, "main");
+        } else {
+            this.profiler = null;
+            this.callStack = null;
+        }
+        this.trace = options.isTrace() ? new Trace(options.getTraceSize()) : null;
+        this.traceBuffer = trace == null ? null : trace.buffer();
+        this.reusableFrames = EscapeAnalysis.reusableFrames(controlStructures);
+        this.baseEnvironment = 0;
+        this.metrics = options.isMonitored() ? Metrics.global() : null;
+        this.primary = true;
+        this.programName = options.getProgramName();
+        this.programSteps = metrics == null ? null : new LongAdder();
+        this.recursionReport = metrics == null ? 0 : metrics.getDeepRecursionThreshold();
+        applicator.setMonitored(metrics != null);
+        if (options.getCheckpointPath() != null) {
+            this.checkpoint = new Checkpoint(options.getCheckpointPath(), options.getCheckpointInterval());
+        } else {
+            this.checkpoint = null;
+        }
+
+        // Only forked components register environments from other threads. A resumed program
+        // forks if its control structures were generated in parallel, whatever the options now.
+        this.forking = options.isParallel() || containsFork(controlStructures);
+        if (state != null) {
+            environments = state.environments;
+            control = state.control;
+            stack = state.stack;
+            freeFrames = state.freeFrames;
+            freeFrameCount = state.freeFrameCount;
+            tracedEnvironment = state.tracedEnvironment;
+            link = state.link;
+        } else {
+            environments = forking ? Collections.synchronizedList(new ArrayList<>()) : new ArrayList<>();
+            Environment primary = new Environment();
+            primary.setIndex(0);
+            environments.add(primary);
+            control = new Stack<>();
+            stack = new Stack<>();
+            control.push(primary.getMarker());
+            control.push(new Value("delta", "0"));
+            stack.push(primary.getMarker());
+            link = new Link();
+        }
+        link.machine = this;
+    }
+
+    /**
+     * Create a machine that evaluates a forked component or a thunk.
+     * Control structures and environments are shared with the parent machine.
+     * Forked machines are pure; applying Print is an error so the parent can fall back to sequential order.
+     *
+     * @param parent           Machine that created the component
+     * @param component        Control structure of the component
+     * @param environmentIndex Environment to evaluate the component in
+     * @param pure             Whether applying Print is an error
+     */
+    private Machine(Machine parent, Stack<Value> component, int environmentIndex, boolean pure) {
+        this.controlStructures = parent.controlStructures;
+        this.link = parent.link;
+        this.checkpoint = null;
+        // Chains are immutable, so machines racing to fill a slot only repeat the work
+        this.callChains = parent.callChains;
+        this.environments = parent.environments;
+        this.forking = parent.forking;
+        this.applicator = new Applicator(this::call);
+        applicator.setMaxTupleLength(parent.applicator.getMaxTupleLength());
         this.stack = new Stack<>();
-        this.applicator = new Applicator();
+        this.pure = pure;
+        this.lazy = parent.lazy;
+        this.governor = parent.governor;
+        this.profiler = parent.profiler;
+        this.callStack = profiler == null ? null : profiler.newCallStack(parent.callStack, pure ? "(fork)" : "(thunk)");
+        this.trace = parent.trace;
+        this.traceBuffer = trace == null ? null : trace.buffer();
+        this.tracedEnvironment = environmentIndex;
+        this.reusableFrames = parent.reusableFrames;
+        // The environment of the component belongs to the parent and must not be reused here
+        this.baseEnvironment = environmentIndex;
+        this.metrics = parent.metrics;
+        this.primary = false;
+        this.programName = parent.programName;
+        this.programSteps = parent.programSteps;
+        this.recursionReport = parent.recursionReport;
+        applicator.setMonitored(metrics != null);
 
+        Value marker = environments.get(environmentIndex).getMarker();
         control = new Stack<>();
-        control.push(new Value("environment", "0"));
-        control.push(new Value("delta", "0"));
-        stack.push(new Value("environment", "0"));
-        environments = new ArrayList<>();
-        environments.add(new Environment());
+        control.push(marker);
+        extractControl(component);
+        stack.push(marker);
+    }
+
+    /**
+     * @return Profiler of the evaluation, null if profiling is disabled
+     */
+    public Profiler getProfiler() {
+        return profiler;
+    }
+
+    /**
+     * @return Trace of the evaluation, null if tracing is disabled
+     */
+    public Trace getTrace() {
+        return trace;
     }
 
     @Override
@@ -43,9 +232,8 @@ public class Machine {
     private int currentEnvironmentIndex() {
         int closestEnvironment = 0;
         for (Element element : control) {
-            if (element instanceof Value && element.isLabel("environment")) {
-                String closestEnvironmentStr = ((Value) element).getValue();
-                closestEnvironment = Integer.parseInt(closestEnvironmentStr);
+            if (element instanceof EnvironmentMarker) {
+                closestEnvironment = ((EnvironmentMarker) element).getIndex();
             }
         }
         return closestEnvironment;
@@ -58,33 +246,262 @@ public class Machine {
         return environments.get(currentEnvironmentIndex());
     }
 
+    /**
+     * @param controlStructures Control structures of the program
+     * @return Whether any of them forks components, which then run on other threads
+     */
+    private static boolean containsFork(List<Stack<Value>> controlStructures) {
+        for (Stack<Value> controlStructure : controlStructures) {
+            for (Value value : controlStructure) {
+                if (value instanceof Fork) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Register a new environment. Forked machines share the environment list, which is
+     * synchronized only if the program forks.
+     *
+     * @param environment Environment to register
+     * @return Index of the registered environment
+     */
+    private int addEnvironment(Environment environment) {
+        int index;
+        if (forking) {
+            synchronized (environments) {
+                environments.add(environment);
+                index = environments.size() - 1;
+            }
+        } else {
+            environments.add(environment);
+            index = environments.size() - 1;
+        }
+        environment.setIndex(index);
+        environmentsCreated++;
+        if (governor != null) {
+            governor.checkEnvironment(index + 1, environment.getDepth(), fuel);
+        }
+        return index;
+    }
+
+    /**
+     * Create the environment of a lambda body, reusing a released one if the body lets none escape.
+     *
+     * @param parent Environment of the closure
+     * @param delta  Control structure index of the body
+     * @return Index of the new environment
+     */
+    private int openFrame(Environment parent, int delta) {
+        boolean reusable = reusableFrames.get(delta);
+        if (reusable && freeFrameCount > 0) {
+            int index = freeFrames[--freeFrameCount];
+            Environment environment = environments.get(index);
+            environment.reuse(parent);
+            environmentsCreated++;
+            if (governor != null) {
+                governor.checkEnvironment(environments.size(), environment.getDepth(), fuel);
+            }
+            return index;
+        }
+        return addEnvironment(new Environment(parent, reusable));
+    }
+
+    /**
+     * Release the environment of a body that returned, if it can be reused.
+     *
+     * @param index Index of the environment
+     */
+    private void closeFrame(int index) {
+        if (index == baseEnvironment || !environments.get(index).isReusable()) {
+            return;
+        }
+        if (freeFrameCount == freeFrames.length) {
+            freeFrames = Arrays.copyOf(freeFrames, freeFrameCount * 2);
+        }
+        freeFrames[freeFrameCount++] = index;
+    }
+
+    /**
+     * Take the next steps from the governor, which checks the resource limits.
+     * Without limits the machine runs unchecked, except for reporting to the metrics if monitored
+     * and checking for a due checkpoint if enabled.
+     * <p>
+     * Checkpoints are only written by the outermost loop, which is between two steps here; a loop
+     * run for a builtin has more state on the Java stack than a checkpoint can hold.
+     *
+     * @param outermost Whether the loop taking the steps is the outermost one
+     */
+    private void refuel(boolean outermost) {
+        if (metrics != null) {
+            report(ration);
+        }
+        if (checkpoint != null && outermost && checkpoint.isDue()) {
+            checkpoint.write(new Checkpoint.State(programName, controlStructures, environments, control, stack,
+                    freeFrames, freeFrameCount, tracedEnvironment, link));
+        }
+        if (governor != null) {
+            ration = governor.ration(control.size(), stack.size());
+        } else {
+            ration = metrics != null || checkpoint != null ? CHECK_RATION : Integer.MAX_VALUE;
+        }
+        // The current step uses one of the granted steps
+        fuel = ration - 1;
+    }
+
+    /**
+     * Report the counts since the previous report to the metrics, and deep recursion to the flight recorder.
+     *
+     * @param steps Steps executed since the previous report
+     */
+    private void report(int steps) {
+        metrics.record(steps, applications, environmentsCreated, tupleBytes + applicator.takeTupleBytes(),
+                control.size(), stack.size());
+        programSteps.add(steps);
+        applications = 0;
+        environmentsCreated = 0;
+        tupleBytes = 0;
+        if (recursionReport > 0 && control.size() >= recursionReport) {
+            new DeepRecursionEvent(programName, control.size(), stack.size(), currentEnvironment().getDepth()).commit();
+            recursionReport = control.size() * 2;
+        }
+    }
+
+    /**
+     * Make room for control structures added after the machine was created.
+     */
+    void controlStructuresAdded() {
+        callChains = Arrays.copyOf(callChains, controlStructures.size());
+        // Bodies only refer to control structures after them, so the earlier results do not change
+        reusableFrames = EscapeAnalysis.reusableFrames(controlStructures);
+    }
+
+    /**
+     * Evaluate a control structure in an environment, as the REPL does for each input.
+     * Whatever a failed evaluation left on the control and stack is discarded first.
+     *
+     * @param delta            Control structure index
+     * @param environmentIndex Environment to evaluate it in
+     * @return Value of the control structure
+     */
+    Element evaluate(int delta, int environmentIndex) {
+        Value marker = environments.get(environmentIndex).getMarker();
+        control.clear();
+        stack.clear();
+        control.push(marker);
+        control.push(new Value("delta", Integer.toString(delta)));
+        stack.push(marker);
+        tracedEnvironment = environmentIndex;
+        evaluate();
+        return Thunk.force(stack.pop());
+    }
+
+    /**
+     * Delay a control structure, like a delayed argument of lazy evaluation.
+     *
+     * @param delta            Control structure index
+     * @param environmentIndex Environment to evaluate it in when forced
+     * @return Thunk of the control structure
+     */
+    Element delay(int delta, int environmentIndex) {
+        return new Thunk(new DelayedArgument(this, controlStructures.get(delta), environmentIndex, false));
+    }
+
+    /**
+     * Bind names in a new environment, like applying a lambda does (rules 4 and 11).
+     *
+     * @param environmentIndex Parent environment
+     * @param names            Names to bind; several names take the elements of a tuple value
+     * @param value            Value to bind
+     * @return Index of the new environment
+     */
+    int define(int environmentIndex, String[] names, Element value) {
+        Environment environment = new Environment(environments.get(environmentIndex));
+        if (names.length == 1) {
+            environment.remember(names[0], value);
+        } else if (Thunk.force(value) instanceof Tuple) {
+            Tuple tuple = (Tuple) Thunk.force(value);
+            for (int i = 0; i < names.length; i++) {
+                environment.remember(names[i], tuple.get(i));
+            }
+        } else {
+            throw new CseException("Expected tuple but found: " + value);
+        }
+        return addEnvironment(environment);
+    }
+
+    /**
+     * Print a value the way the Print builtin does.
+     *
+     * @param value Value to print
+     */
+    void print(Element value) {
+        Builtins.function("Print").invoke(applicator, value);
+    }
+
     /**
      * Start processing the control stack to evaluate result.
      */
     public void evaluate() {
-        while (!control.isEmpty()) {
+        ProgramFinishEvent program = primary && metrics != null ? metrics.programStarted(programName) : null;
+        boolean completed = false;
+        if (checkpoint != null) {
+            checkpoint.start();
+        }
+        try {
+            run(0);
+            if (governor != null) {
+                governor.refund(fuel);
+            }
+            completed = true;
+        } finally {
+            if (checkpoint != null) {
+                checkpoint.finish(completed);
+            }
+            if (metrics != null) {
+                report(ration - fuel);
+                if (program != null) {
+                    metrics.programFinished(program, programSteps.sum(), completed);
+                }
+            }
+        }
+    }
+
+    /**
+     * Apply an RPAL function on behalf of a higher order builtin. The application is evaluated
+     * on top of the current control and stack, which are left as they were.
+     *
+     * @param function Rator element
+     * @param argument Rand element
+     * @return Result of the application
+     */
+    private Element call(Element function, Element argument) {
+        int depth = control.size();
+        stack.push(argument);
+        stack.push(function);
+        control.push(callback);
+        run(depth);
+        return stack.pop();
+    }
+
+    /**
+     * Process the control stack until it is back to the given size.
+     *
+     * @param depth Control size to stop at
+     */
+    private void run(int depth) {
+        while (control.size() > depth) {
+            if (--fuel < 0) refuel(depth == 0);
             Value currentElement = control.pop();
 
+            if (profiler != null) profiler.countDispatch();
+
             if (currentElement.isLabel("gamma")) {
-                Element firstElem = stack.pop();
-                Element secondElem = stack.pop();
-                if (firstElem.isLabel("yStar")) {
-                    cseRule12(secondElem);
-                } else if (firstElem.isLabel("eta")) {
-                    stack.push(secondElem);
-                    cseRule13(currentElement, firstElem);
-                } else if (firstElem.isLabel("lambda")) {
-                    Value firstValue = (Value) firstElem;
-                    if (firstValue.getValue().contains(",")) {
-                        cseRule11(firstElem, secondElem);
-                    } else {
-                        cseRule4(firstElem, secondElem);
-                    }
-                } else if (firstElem.isLabel("tau")) {
-                    cseRule10(firstElem, secondElem);
-                } else {
-                    cseRule3(firstElem, secondElem);
-                }
+                Element rator = stack.pop();
+                Element rand = stack.pop();
+                apply(currentElement, rator, rand);
             } else if (currentElement.isLabel("delta")) {
                 int controlIndex = Integer.parseInt(currentElement.getValue());
                 extractDelta(controlIndex);
@@ -96,22 +513,148 @@ public class Machine {
                 cseRule5(currentElement);
             } else if (currentElement.isLabel("beta")) {
                 cseRule8();
+            } else if (currentElement.isLabel("call")) {
+                cseCall(currentElement);
             } else if (currentElement.isLabel("tau")) {
                 cseRule9(currentElement);
-            } else if (!cseRule6And7(currentElement)) {
+            } else if (lazy && forcesOperands(currentElement)) {
+                continue;
+            } else if (currentElement instanceof FusedApply) {
+                cseFusedApply((FusedApply) currentElement);
+            } else if (currentElement instanceof FusedOperation) {
+                stack.push(fusedOperation((FusedOperation) currentElement));
+            } else if (currentElement instanceof FusedBranch) {
+                cseFusedBranch((FusedBranch) currentElement);
+            } else if (currentElement instanceof Fork) {
+                cseFork((Fork) currentElement);
+            } else if (currentElement instanceof Delay) {
+                cseDelay((Delay) currentElement);
+            } else if (currentElement instanceof Force) {
+                cseForce((Force) currentElement);
+            } else if (currentElement instanceof Builtin) {
+                cseRule6And7((Builtin) currentElement);
+            } else {
+                step(Rules.PUSH);
                 stack.push(currentElement);
             }
-            // System.out.println(this);
         }
     }
 
+    /**
+     * Apply a rator to a rand, through the inline cache if the gamma element is an application site.
+     *
+     * @param gamma Gamma element, pushed back when eta is unrolled
+     * @param rator Rator element
+     * @param rand  Rand element
+     */
+    private void apply(Value gamma, Element rator, Element rand) {
+        if (gamma instanceof GammaSite) {
+            apply(gamma, ((GammaSite) gamma).getCache(), rator, rand);
+        } else {
+            applyGeneric(gamma, rator, rand);
+        }
+    }
+
+    /**
+     * Apply a rator by testing its kind.
+     *
+     * @param gamma Gamma element, pushed back when eta is unrolled
+     * @param rator Rator element
+     * @param rand  Rand element
+     */
+    private void applyGeneric(Value gamma, Element rator, Element rand) {
+        if (rator.isLabel("yStar")) {
+            cseRule12(rand);
+        } else if (rator instanceof RecursiveClosure) {
+            Closure closure = ((RecursiveClosure) rator).getClosure();
+            if (closure.isTuple()) {
+                cseRule11(closure, rand);
+            } else {
+                cseRule4(closure, rand);
+            }
+        } else if (rator.isLabel("eta")) {
+            stack.push(rand);
+            cseRule13(gamma, rator);
+        } else if (rator instanceof Closure) {
+            if (((Closure) rator).isTuple()) {
+                cseRule11(rator, rand);
+            } else {
+                cseRule4(rator, rand);
+            }
+        } else if (rator instanceof Tuple) {
+            cseRule10(rator, rand);
+        } else {
+            cseRule3(rator, rand);
+        }
+    }
+
+    /**
+     * Apply a rator at a site with an inline cache. A rator of a kind the site has seen goes
+     * straight to its handler; otherwise the generic path applies it and the cache learns it.
+     *
+     * @param gamma Gamma element, pushed back when eta is unrolled
+     * @param cache Inline cache of the site
+     * @param rator Rator element
+     * @param rand  Rand element
+     */
+    private void apply(Value gamma, InlineCache cache, Element rator, Element rand) {
+        InlineCache.Entry entry = cache.lookup(rator);
+        if (entry == null) {
+            cache.learn(rator);
+            applyGeneric(gamma, rator, rand);
+            return;
+        }
+        switch (entry.getKind()) {
+            case InlineCache.CLOSURE:
+            case InlineCache.RECURSIVE:
+                enterBody(entry.getDelta(), entry.getParameters()[0], entry.environmentOf(rator), rand);
+                break;
+            case InlineCache.TUPLE_CLOSURE:
+            case InlineCache.RECURSIVE_TUPLE:
+                enterTupleBody(entry.getDelta(), entry.getParameters(), entry.environmentOf(rator), Thunk.force(rand));
+                break;
+            case InlineCache.BUILTIN:
+                cseRule3(rator, rand);
+                break;
+            case InlineCache.TAU:
+                cseRule10(rator, rand);
+                break;
+            case InlineCache.ETA:
+                stack.push(rand);
+                cseRule13(gamma, rator);
+                break;
+            default:
+                cseRule12(rand);
+        }
+    }
+
+    /**
+     * Count the step in the profiler and record it in the trace, if enabled.
+     *
+     * @param rule Rule identifier from {@link Rules}
+     */
+    private void step(int rule) {
+        if (metrics != null && Rules.isApplication(rule)) applications++;
+        if (profiler != null) callStack.countRule(rule);
+        if (traceBuffer != null) traceBuffer.record(rule, control.size(), stack.size(), tracedEnvironment);
+    }
+
     /**
      * Extract elements from the control structure specified.
      *
      * @param controlIndex Index of control structure to extract
      */
     private void extractDelta(int controlIndex) {
-        Stack<Value> control = controlStructures.get(controlIndex);
+        step(Rules.EXTRACT_DELTA);
+        extractControl(controlStructures.get(controlIndex));
+    }
+
+    /**
+     * Push the elements of a control structure to the control.
+     *
+     * @param control Control structure to extract
+     */
+    private void extractControl(Stack<Value> control) {
         for (Value controlElem : control) {
             this.control.push(controlElem);
         }
@@ -127,12 +670,20 @@ public class Machine {
      * @param name Current element
      */
     private void cseRule1(Value name) {
-        String id = name.getValue();
-        Element value = currentEnvironment().lookup(id);
-        if (value == null) {
-            value = new Value(id);
+        step(Rules.RULE_1);
+        Element value = currentEnvironment().lookupUnforced(name.getValue());
+        if (!forceHere(value, null)) {
+            stack.push(Thunk.force(value));
         }
-        stack.push(value);
+    }
+
+    /**
+     * @param name Id element
+     * @return Value of the name in the current environment
+     */
+    private Element lookup(Value name) {
+        step(Rules.RULE_1);
+        return currentEnvironment().lookup(name.getValue());
     }
 
     /**
@@ -145,11 +696,8 @@ public class Machine {
      * @param lambda Current element
      */
     private void cseRule2(Value lambda) {
-        String[] kAndX = lambda.getValue().split(" ");
-        String c = Integer.toString(currentEnvironmentIndex());
-        String[] newValues = {kAndX[0], kAndX[1], c};
-        Element newLambda = new Value("lambda", String.join(" ", newValues));
-        stack.push(newLambda);
+        step(Rules.RULE_2);
+        stack.push(new Closure((Lambda) lambda, currentEnvironmentIndex()));
     }
 
     /**
@@ -163,6 +711,13 @@ public class Machine {
      * @param rand  second argument
      */
     private void cseRule3(Element rator, Element rand) {
+        if (pure && rator.isLabel("Print")) {
+            throw new ImpureComponentException();
+        }
+        step(Rules.RULE_3);
+        if (profiler != null) {
+            profiler.countBuiltin(rator.getLabel());
+        }
         Element result = applicator.apply(rator, rand);
         stack.push(result);
     }
@@ -173,29 +728,53 @@ public class Machine {
      * ... e(n) delta(k)                   e(n)  ...
      * e(n) = [Rand/x]e(c)
      * </pre>
+     * delta(k) is extracted in the same dispatch.
      *
      * @param lambda lambda(k, x, c) argument
      * @param rand   second argument
      */
     private void cseRule4(Element lambda, Element rand) {
-        if (lambda instanceof Value && lambda.isLabel("lambda")) {
-            String[] kAndXAndC = ((Value) lambda).getValue().split(" ");
-            String k = kAndXAndC[0];
-            String x = kAndXAndC[1];
-            String c = kAndXAndC[2];
-            Environment envC = environments.get(Integer.parseInt(c));
-
-            Environment newEnvironment = new Environment(envC, x, rand);
-            String newEnvIndex = Integer.toString(environments.size());
-            environments.add(newEnvironment);
-            control.push(new Value("environment", newEnvIndex));
-            control.push(new Value("delta", k));
-            stack.push(new Value("environment", newEnvIndex));
+        if (lambda instanceof Closure) {
+            Closure closure = (Closure) lambda;
+            enterBody(closure.getDelta(), closure.getParameters()[0], closure.getEnvironment(), rand);
             return;
         }
         throw new CseException("Expected lambda element but found: " + lambda);
     }
 
+    /**
+     * Rule 4 on a parsed closure.
+     *
+     * @param k    Control structure index of the body
+     * @param x    Parameter name
+     * @param c    Environment index of the closure
+     * @param rand Argument
+     */
+    private void enterBody(int k, String x, int c, Element rand) {
+        int newIndex = openFrame(environments.get(c), k);
+        environments.get(newIndex).remember(x, rand);
+        enterFrame(newIndex, k, Rules.RULE_4);
+    }
+
+    /**
+     * Push the environment elements of a new environment and extract the body.
+     *
+     * @param newIndex Index of the environment
+     * @param k        Control structure index of the body
+     * @param rule     Rule that created the environment
+     */
+    private void enterFrame(int newIndex, int k, int rule) {
+        Value marker = environments.get(newIndex).getMarker();
+        tracedEnvironment = newIndex;
+        step(rule);
+        if (profiler != null) {
+            callStack.enter(k);
+        }
+        control.push(marker);
+        stack.push(marker);
+        extractDelta(k);
+    }
+
 
     /**
      * <pre>
@@ -208,6 +787,15 @@ public class Machine {
         Element envS = stack.pop();
         if (envS instanceof Value && envS.isLabel("environment")) {
             if (env.equals(envS)) {
+                step(Rules.RULE_5);
+                if (profiler != null) {
+                    callStack.exit();
+                }
+                closeFrame(((EnvironmentMarker) env).getIndex());
+                if (trace != null) {
+                    // The environment element is off the control, so this finds the enclosing one
+                    tracedEnvironment = currentEnvironmentIndex();
+                }
                 stack.push(value);
                 return;
             }
@@ -217,23 +805,31 @@ public class Machine {
     }
 
     /**
-     * @param element Operation element
-     * @return true if element was either bin-op or un-op
+     * <pre>
+     * ... binop        rator rand ...      ... unop        rand ...
+     * ...                 result  ...      ...           result ...
+     * </pre>
+     *
+     * @param operator Operator element
      */
-    private boolean cseRule6And7(Value element) {
-        if (applicator.isBinaryOperation(element)) {
+    private void cseRule6And7(Builtin operator) {
+        Element result;
+        if (operator.getArity() == 2) {
+            step(Rules.RULE_6);
+            if (profiler != null) {
+                profiler.countBuiltin(operator.getLabel());
+            }
             Element rator = stack.pop();
             Element rand = stack.pop();
-            Element result = applicator.apply(element, rator, rand);
-            stack.push(result);
-        } else if (applicator.isUnaryOperation(element)) {
-            Element rand = stack.pop();
-            Element result = applicator.apply(element, rand);
-            stack.push(result);
+            result = operator.invoke(applicator, rator, rand);
         } else {
-            return false;
+            step(Rules.RULE_7);
+            if (profiler != null) {
+                profiler.countBuiltin(operator.getLabel());
+            }
+            result = operator.invoke(applicator, stack.pop());
         }
-        return true;
+        stack.push(result);
     }
 
     /**
@@ -241,18 +837,28 @@ public class Machine {
      * ... delta(then) delta(else) beta           truth ...
      * ... delta()                                      ...
      * </pre>
+     * The chosen delta is extracted in the same dispatch.
      */
     private void cseRule8() {
+        branch(stack.pop());
+    }
+
+    /**
+     * Rule 8 on a computed condition. The chosen delta is extracted right away.
+     *
+     * @param condition Truth value
+     */
+    private void branch(Element condition) {
+        step(Rules.RULE_8);
         Value deltaElse = control.pop();
         Value deltaThen = control.pop();
-        Element condition = stack.pop();
 
         if (deltaElse.isLabel("delta") && deltaThen.isLabel("delta")) {
             if (condition.isLabel("true")) {
-                control.push(deltaThen);
+                extractDelta(Integer.parseInt(deltaThen.getValue()));
                 return;
             } else if (condition.isLabel("false")) {
-                control.push(deltaElse);
+                extractDelta(Integer.parseInt(deltaElse.getValue()));
                 return;
             }
             throw new RuntimeException("If condition must evaluate to a truth value.");
@@ -269,12 +875,16 @@ public class Machine {
      * @param tau Tau element
      */
     private void cseRule9(Value tau) {
+        step(Rules.RULE_9);
         int elements = Integer.parseInt(tau.getValue());
         Element[] tupleElements = new Element[elements];
         for (int i = 0; i < elements; i++) {
             tupleElements[i] = stack.pop();
         }
-        Element tuple = new Tuple(tupleElements);
+        Tuple tuple = new Tuple(tupleElements);
+        if (metrics != null) {
+            tupleBytes += tuple.getEstimatedSize();
+        }
         stack.push(tuple);
     }
 
@@ -283,21 +893,14 @@ public class Machine {
      * ... gamma                 (V1 .. Vn) I ...
      * ...                                 Vi ...
      * </pre>
+     * The index is checked and the element taken by the applicator, as when a builtin selects it.
      *
      * @param tuple tuple element
-     * @param index index to extract
+     * @param index index to extract, from 1
      */
     private void cseRule10(Element tuple, Element index) {
-        if (tuple instanceof Tuple) {
-            if (index instanceof Value && index.isLabel("int")) {
-                int ind = Integer.parseInt(((Value) index).getValue());
-                Element value = ((Tuple) tuple).getValue()[ind];
-                stack.push(value);
-                return;
-            }
-            throw new CseException("Expected integer index but found: " + index);
-        }
-        throw new CseException("Expected tuple but found: " + tuple);
+        step(Rules.RULE_10);
+        stack.push(applicator.apply(tuple, index));
     }
 
     /**
@@ -306,48 +909,74 @@ public class Machine {
      * ... e(n) delta(k)                       e(n)  ...
      * e(n) = [Rand1/v1][Rand2/v2]e(c)
      * </pre>
+     * delta(k) is extracted in the same dispatch.
      *
      * @param lambda lambda(k, v1,v2, c) argument
      * @param rand   second argument
      */
     private void cseRule11(Element lambda, Element rand) {
-        if (lambda instanceof Value && lambda.isLabel("lambda")) {
-            if (rand instanceof Tuple) {
-                String[] kAndVAndC = ((Value) lambda).getValue().split(" ");
-                String k = kAndVAndC[0];
-                String[] v = kAndVAndC[1].split(",");
-                String c = kAndVAndC[2];
-                Environment envC = environments.get(Integer.parseInt(c));
-
-                Environment newEnvironment = new Environment(envC);
-                for (int i = 0; i < v.length; i++) {
-                    newEnvironment.remember(v[i], ((Tuple) rand).getValue()[i]);
-                }
-                String newEnvIndex = Integer.toString(environments.size());
-                environments.add(newEnvironment);
-                control.push(new Value("environment", newEnvIndex));
-                control.push(new Value("delta", k));
-                stack.push(new Value("environment", newEnvIndex));
-                return;
-            }
-            throw new CseException("Expected tuple but found: " + rand);
+        rand = Thunk.force(rand);
+        if (lambda instanceof Closure) {
+            Closure closure = (Closure) lambda;
+            enterTupleBody(closure.getDelta(), closure.getParameters(), closure.getEnvironment(), rand);
+            return;
         }
         throw new CseException("Expected lambda element but found: " + lambda);
     }
 
+    /**
+     * Rule 11 on a parsed closure.
+     *
+     * @param k    Control structure index of the body
+     * @param v    Parameter names
+     * @param c    Environment index of the closure
+     * @param rand Argument, forced
+     */
+    private void enterTupleBody(int k, String[] v, int c, Element rand) {
+        if (rand instanceof Tuple) {
+            int newIndex = openFrame(environments.get(c), k);
+            Environment newEnvironment = environments.get(newIndex);
+            for (int i = 0; i < v.length; i++) {
+                newEnvironment.remember(v[i], ((Tuple) rand).get(i));
+            }
+            enterFrame(newIndex, k, Rules.RULE_11);
+            return;
+        }
+        throw new CseException("Expected tuple but found: " + rand);
+    }
+
     /**
      * <pre>
      * ... gamma            Y lambda(i, v, c) ...
      * ...                      eta(i, v, c) ...
      * </pre>
      *
+     * If the body of the lambda is itself a lambda, eta is replaced by a closure of that body
+     * in an environment binding v to the closure, so applying it needs no unrolling:
+     * <pre>
+     * ... gamma            Y lambda(i, v, c) ...     delta(i) = lambda(k, x)
+     * ...              rec(lambda(k, x, e(n))) ...   e(n) = [rec/v]e(c)
+     * </pre>
+     *
      * @param lambda lambda(i, v, c) element
      */
     private void cseRule12(Element lambda) {
-        if (lambda instanceof Value && lambda.isLabel("lambda")) {
-            String iAndVAndC = ((Value) lambda).getValue();
-            Element etaElement = new Value("eta", iAndVAndC);
-            stack.push(etaElement);
+        step(Rules.RULE_12);
+        if (lambda instanceof Closure) {
+            Closure recLambda = (Closure) lambda;
+            Stack<Value> body = controlStructures.get(recLambda.getDelta());
+            Value bodyElement = body.size() == 1 ? body.iterator().next() : null;
+            if (bodyElement instanceof Lambda && !recLambda.isTuple()) {
+                Environment envC = environments.get(recLambda.getEnvironment());
+                Environment recEnvironment = new Environment(envC);
+                int recIndex = addEnvironment(recEnvironment);
+                Closure closure = new Closure((Lambda) bodyElement, recIndex);
+                RecursiveClosure rec = new RecursiveClosure(recLambda, closure);
+                recEnvironment.remember(recLambda.getParameters()[0], rec);
+                stack.push(rec);
+                return;
+            }
+            stack.push(new Eta(recLambda));
             return;
         }
         throw new CseException("Expected lambda element but found: " + lambda);
@@ -362,18 +991,457 @@ public class Machine {
      * @param gamma Gamma element
      */
     private void cseRule13(Value gamma, Element eta) {
-        if (eta instanceof Value && eta.isLabel("eta")) {
-            String iAndVAndC = ((Value) eta).getValue();
-            Value lambda = new Value("lambda", iAndVAndC);
-            Value newGamma = new Value("gamma");
-
+        step(Rules.RULE_13);
+        if (eta instanceof Eta) {
             stack.push(eta);
-            stack.push(lambda);
+            stack.push(((Eta) eta).getLambda());
 
             control.push(gamma);
-            control.push(newGamma);
+            control.push(GAMMA);
             return;
         }
         throw new CseException("Expected eta element but found: " + eta);
     }
+
+    /**
+     * <pre>
+     * ... call(m)            lambda(k1, x1, c) R1 .. Rm ...
+     * ... e(n) delta(km)                           e(n) ...
+     * e(n) = [R1/x1] .. [Rm/xm]e(c) where delta(ki) is lambda(ki+1, xi+1)
+     * </pre>
+     * Applies a curried function to m arguments with a single environment.
+     * A builtin of arity m is invoked directly on the m arguments, without partial applications.
+     * If the rator is neither, m gamma elements are pushed instead
+     * so the arguments are applied one at a time.
+     *
+     * @param call Call element with the number of arguments
+     */
+    private void cseCall(Value call) {
+        step(Rules.CALL);
+        int arguments = Integer.parseInt(call.getValue());
+        Element rator = stack.pop();
+        if (rator instanceof Builtin && ((Builtin) rator).getArity() == arguments) {
+            callBuiltin((Builtin) rator);
+            return;
+        }
+        Element lambda = rator instanceof RecursiveClosure ? ((RecursiveClosure) rator).getClosure() : rator;
+        CallChain chain = null;
+        if (lambda instanceof Closure) {
+            chain = callChain((Closure) lambda, arguments);
+        }
+        if (chain == null) {
+            stack.push(rator);
+            for (int i = 0; i < arguments; i++) {
+                control.push(GAMMA);
+            }
+            return;
+        }
+
+        int c = ((Closure) lambda).getEnvironment();
+        int newIndex = openFrame(environments.get(c), chain.delta);
+        Environment newEnvironment = environments.get(newIndex);
+        for (Lambda parameter : chain.parameters) {
+            Element rand = stack.pop();
+            String[] v = parameter.getParameters();
+            if (parameter.isTuple()) {
+                rand = Thunk.force(rand);
+                if (!(rand instanceof Tuple)) {
+                    throw new CseException("Expected tuple but found: " + rand);
+                }
+                for (int i = 0; i < v.length; i++) {
+                    newEnvironment.remember(v[i], ((Tuple) rand).get(i));
+                }
+            } else {
+                newEnvironment.remember(v[0], rand);
+            }
+        }
+        Value marker = newEnvironment.getMarker();
+        tracedEnvironment = newIndex;
+        if (profiler != null) {
+            callStack.enter(chain.delta);
+        }
+        control.push(marker);
+        stack.push(marker);
+        extractDelta(chain.delta);
+    }
+
+    /**
+     * Invoke a builtin on as many arguments from the stack as its arity.
+     *
+     * @param builtin Builtin rator
+     */
+    private void callBuiltin(Builtin builtin) {
+        step(Rules.RULE_3);
+        if (profiler != null) {
+            profiler.countBuiltin(builtin.getLabel());
+        }
+        Element result;
+        if (builtin.getArity() == 2) {
+            Element operand1 = stack.pop();
+            Element operand2 = stack.pop();
+            result = builtin.invoke(applicator, operand1, operand2);
+        } else {
+            Element[] operands = new Element[builtin.getArity()];
+            for (int i = 0; i < operands.length; i++) {
+                operands[i] = stack.pop();
+            }
+            result = builtin.invoke(applicator, operands);
+        }
+        stack.push(result);
+    }
+
+    /**
+     * Follow the control structures of a closure through m chained lambdas.
+     *
+     * @param closure   lambda(k1, x1, c) element
+     * @param arguments Number of lambdas in the chain
+     * @return Parameters and innermost body of the chain, null if it is shorter or repeats a parameter
+     */
+    private CallChain callChain(Closure closure, int arguments) {
+        int k = closure.getDelta();
+        CallChain[] chains = callChains[k];
+        if (chains != null && arguments < chains.length && chains[arguments] != null) {
+            return chains[arguments];
+        }
+        Lambda lambda = closure.getLambda();
+        Lambda[] parameters = new Lambda[arguments];
+        HashSet<String> names = new HashSet<>();
+        for (int i = 0; ; i++) {
+            parameters[i] = lambda;
+            for (String name : lambda.getParameters()) {
+                if (!names.add(name)) return null;
+            }
+            if (i == arguments - 1) break;
+            Stack<Value> body = controlStructures.get(lambda.getDelta());
+            Value bodyElement = body.size() == 1 ? body.iterator().next() : null;
+            if (!(bodyElement instanceof Lambda)) {
+                return null;
+            }
+            lambda = (Lambda) bodyElement;
+        }
+        CallChain chain = new CallChain(parameters, lambda.getDelta());
+        if (chains == null || arguments >= chains.length) {
+            chains = chains == null ? new CallChain[arguments + 1] : Arrays.copyOf(chains, arguments + 1);
+            callChains[k] = chains;
+        }
+        chains[arguments] = chain;
+        return chain;
+    }
+
+    /**
+     * Lambdas of a chain of curried lambdas and the control structure of the innermost body.
+     */
+    private static class CallChain {
+        private final Lambda[] parameters;
+        private final int delta;
+
+        CallChain(Lambda[] parameters, int delta) {
+            this.parameters = parameters;
+            this.delta = delta;
+        }
+    }
+
+    /**
+     * Computation of a thunk. A checkpoint does not save the machine that created the thunk; after a
+     * resume the thunk is evaluated on the resumed primary machine, which shares the same state.
+     */
+    private static class DelayedArgument implements Supplier<Element>, Serializable {
+        private static final long serialVersionUID = 1L;
+        private final transient Machine machine;
+        private final Link link;
+        private final Stack<Value> code;
+        private final int environmentIndex;
+        private final boolean pure;
+
+        DelayedArgument(Machine machine, Stack<Value> code, int environmentIndex, boolean pure) {
+            this.machine = machine;
+            this.link = machine.link;
+            this.code = code;
+            this.environmentIndex = environmentIndex;
+            this.pure = pure;
+        }
+
+        @Override
+        public Element get() {
+            Machine evaluator = machine != null ? machine : link.machine;
+            return evaluator.evaluate(code, environmentIndex, pure);
+        }
+    }
+
+    /**
+     * Primary machine of an evaluation, shared by its thunks and set again when a checkpoint is resumed.
+     */
+    static class Link implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private transient Machine machine;
+    }
+
+    /**
+     * <pre>
+     * ... fused-apply(id)        rand ...
+     * ... gamma           Lookup(id) rand ...
+     * </pre>
+     * The application is done in the same dispatch.
+     *
+     * @param apply Fused apply element
+     */
+    private void cseFusedApply(FusedApply apply) {
+        Element rator = lookup(apply.getRator());
+        Element rand = stack.pop();
+        apply(GAMMA, apply.getCache(), rator, rand);
+    }
+
+    /**
+     * Rule 6 on operands that are looked up or taken as literals, without the stack.
+     * The right operand is evaluated first, as it would be from the control.
+     *
+     * @param operation Fused operation element
+     * @return Result of the operation
+     */
+    private Element fusedOperation(FusedOperation operation) {
+        Element right = operand(operation.getRight());
+        Element left = operand(operation.getLeft());
+        Builtin operator = operation.getOperation();
+        step(Rules.RULE_6);
+        if (profiler != null) profiler.countBuiltin(operator.getLabel());
+        return operator.invoke(applicator, left, right);
+    }
+
+    /**
+     * @param operand Id or literal element
+     * @return Value of the operand
+     */
+    private Element operand(Value operand) {
+        if (operand.isLabel("id")) {
+            return lookup(operand);
+        }
+        step(Rules.PUSH);
+        return operand;
+    }
+
+    /**
+     * <pre>
+     * ... delta(then) delta(else) fused-branch(op)    ...
+     * ... delta()                                      ...
+     * </pre>
+     * Computes the condition and applies rule 8 in one dispatch.
+     *
+     * @param branch Fused branch element
+     */
+    private void cseFusedBranch(FusedBranch branch) {
+        Value condition = branch.getCondition();
+        if (condition instanceof FusedOperation) {
+            branch(fusedOperation((FusedOperation) condition));
+        } else {
+            cseRule6And7((Builtin) condition);
+            branch(stack.pop());
+        }
+    }
+
+    /**
+     * <pre>
+     * ... fork(C1 .. Cn)                    ...
+     * ...                         Vn .. V1  ...
+     * Vi = Ci evaluated in the current environment
+     * </pre>
+     * Components are evaluated concurrently when the pool has capacity.
+     * Otherwise, or if a component needs Print, they are expanded inline so
+     * that they run in the usual sequential order. Any other failure of a
+     * component is rethrown as it is, the one sequential order meets first.
+     *
+     * @param fork Fork element
+     */
+    private void cseFork(Fork fork) {
+        step(Rules.FORK);
+        ArrayList<Stack<Value>> components = fork.getComponents();
+        if (ForkJoinTask.getSurplusQueuedTaskCount() <= MAX_SURPLUS_TASKS) {
+            int environmentIndex = currentEnvironmentIndex();
+            ComponentTask[] tasks = new ComponentTask[components.size()];
+            for (int i = 0; i < tasks.length; i++) {
+                tasks[i] = new ComponentTask(this, components.get(i), environmentIndex);
+            }
+            ForkJoinTask.invokeAll(tasks);
+            if (!anyImpure(tasks)) {
+                // The last component is the first to run in sequential order
+                for (int i = tasks.length - 1; i >= 0; i--) {
+                    rethrowFailure(tasks[i]);
+                }
+                for (int i = tasks.length - 1; i >= 0; i--) {
+                    stack.push(tasks[i].join());
+                }
+                return;
+            }
+            // Nothing was printed, so the components can run again in order. Their steps,
+            // fuel and monitoring counts up to the Print are counted a second time.
+        }
+        for (Stack<Value> component : components) {
+            extractControl(component);
+        }
+    }
+
+    /**
+     * @return Whether a component applied Print
+     */
+    private static boolean anyImpure(ComponentTask[] tasks) {
+        for (ComponentTask task : tasks) {
+            if (task.getFailure() instanceof ImpureComponentException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Rethrow the exception or error of a component that failed, unchanged.
+     */
+    private static void rethrowFailure(ComponentTask task) {
+        Throwable failure = task.getFailure();
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        }
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+    }
+
+    /**
+     * Evaluate a forked component on a new machine sharing this machine's state.
+     *
+     * @param component        Control structure of the component
+     * @param environmentIndex Environment to evaluate the component in
+     * @return Value of the component
+     */
+    Element evaluateComponent(Stack<Value> component, int environmentIndex) {
+        return evaluate(component, environmentIndex, true);
+    }
+
+    /**
+     * <pre>
+     * ... delay(C)              ...
+     * ...             thunk(C)  ...
+     * thunk(C) evaluates C in the current environment when first forced
+     * </pre>
+     * A delayed variable shares the binding (thunk or value) of the variable instead.
+     *
+     * @param delay Delay element
+     */
+    private void cseDelay(Delay delay) {
+        step(Rules.DELAY);
+        Stack<Value> code = delay.getCode();
+        int environmentIndex = currentEnvironmentIndex();
+        if (code.size() == 1) {
+            Value onlyElement = code.iterator().next();
+            if (onlyElement.isLabel("id")) {
+                stack.push(environments.get(environmentIndex).lookupUnforced(onlyElement.getValue()));
+                return;
+            }
+        }
+        stack.push(new Thunk(new DelayedArgument(this, code, environmentIndex, pure)));
+    }
+
+    /**
+     * Force a thunk by running its code on this machine, so a chain of thunks each needing the
+     * previous one is forced without nesting machines.
+     * <pre>
+     * ... Name                            ...
+     * ... force(T) e(c) C           e(c)  ...
+     * T = Lookup(Name, ec) = thunk(C) made in e(c)
+     * </pre>
+     * A thunk made by a machine of another purity, or in an environment that may be reused once
+     * its frame returns, is left to {@link Thunk#force}.
+     *
+     * @param value Value of a name, which may be a thunk
+     * @param then  Element to run again once the thunk has its value, null to push the value instead
+     * @return Whether the code of the thunk was pushed to the control
+     */
+    private boolean forceHere(Element value, Value then) {
+        if (!(value instanceof Thunk)) {
+            return false;
+        }
+        Thunk thunk = (Thunk) value;
+        Supplier<Element> computation = thunk.getComputation();
+        if (!(computation instanceof DelayedArgument)) {
+            return false;
+        }
+        DelayedArgument argument = (DelayedArgument) computation;
+        Environment environment = environments.get(argument.environmentIndex);
+        if (argument.pure != pure || environment.isReusable() || !thunk.begin()) {
+            return false;
+        }
+        step(Rules.FORCE);
+        if (profiler != null) {
+            callStack.enterThunk();
+        }
+        if (then != null) {
+            control.push(then);
+        }
+        control.push(new Force(thunk, then == null));
+        control.push(environment.getMarker());
+        extractControl(argument.code);
+        stack.push(environment.getMarker());
+        tracedEnvironment = argument.environmentIndex;
+        return true;
+    }
+
+    /**
+     * Force the thunks of the names a fused element reads, before the element runs.
+     *
+     * @param element Control element
+     * @return Whether a thunk is being forced; the element then runs again after it
+     */
+    private boolean forcesOperands(Value element) {
+        if (element instanceof FusedApply) {
+            return forcesOperand(element, ((FusedApply) element).getRator());
+        }
+        Value operation = element instanceof FusedBranch ? ((FusedBranch) element).getCondition() : element;
+        if (operation instanceof FusedOperation) {
+            // In the order fusedOperation reads them
+            return forcesOperand(element, ((FusedOperation) operation).getRight())
+                    || forcesOperand(element, ((FusedOperation) operation).getLeft());
+        }
+        return false;
+    }
+
+    /**
+     * @param element Fused element reading the operand
+     * @param operand Id or literal operand
+     * @return Whether the operand is a thunk now being forced
+     */
+    private boolean forcesOperand(Value element, Value operand) {
+        if (!operand.isLabel("id")) {
+            return false;
+        }
+        Element value = currentEnvironment().lookupUnforced(operand.getValue());
+        return value instanceof Thunk && forceHere(value, element);
+    }
+
+    /**
+     * <pre>
+     * ... force(T)              value ...
+     * ...                       value ...
+     * </pre>
+     * The value is stored in T, and dropped if the element that needed it runs again.
+     *
+     * @param force Force element
+     */
+    private void cseForce(Force force) {
+        Element value = force.getThunk().complete(stack.pop());
+        if (force.isKept()) {
+            stack.push(value);
+        }
+    }
+
+    /**
+     * Evaluate a control structure on a new machine sharing this machine's state.
+     *
+     * @param code             Control structure to evaluate
+     * @param environmentIndex Environment to evaluate the code in
+     * @param pure             Whether applying Print is an error
+     * @return Value of the code
+     */
+    private Element evaluate(Stack<Value> code, int environmentIndex, boolean pure) {
+        Machine machine = new Machine(this, code, environmentIndex, pure);
+        machine.evaluate();
+        return machine.stack.pop();
+    }
 }
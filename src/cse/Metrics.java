@@ -0,0 +1,186 @@
+package cse;
+
+import cse.applicator.Builtin;
+import cse.applicator.Builtins;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Interpreter metrics of the JVM, published through JMX and JDK Flight Recorder.
+ * <p>
+ * Counters are striped (LongAdder), so machines evaluating in parallel do not contend on them.
+ * Machines count into plain fields and only report to the metrics once per ration of steps and
+ * when they finish; builtins count their own invocations. Flight recorder events are committed
+ * for program start and finish, deep recursion and slow builtins.
+ */
+public class Metrics implements MetricsMXBean {
+    /**
+     * Name the metrics are registered under in the platform MBean server.
+     */
+    public static final String OBJECT_NAME = "rpal:type=Interpreter";
+
+    private static Metrics global;
+
+    private final LongAdder steps = new LongAdder();
+    private final LongAdder applications = new LongAdder();
+    private final LongAdder environments = new LongAdder();
+    private final LongAdder tupleBytes = new LongAdder();
+    private final LongAccumulator maxControlDepth = new LongAccumulator(Math::max, 0);
+    private final LongAccumulator maxStackDepth = new LongAccumulator(Math::max, 0);
+    private final LongAdder programsStarted = new LongAdder();
+    private final LongAdder programsFailed = new LongAdder();
+    private final AtomicInteger runningPrograms = new AtomicInteger();
+    private volatile String currentProgram = "";
+    private volatile int deepRecursionThreshold = 10_000;
+
+    Metrics() {
+    }
+
+    /**
+     * @return Metrics of the JVM, registered in the platform MBean server on first use
+     * (except in a native executable, where only the flight recorder events are available)
+     */
+    public static synchronized Metrics global() {
+        if (global == null) {
+            global = new Metrics();
+            if (System.getProperty("org.graalvm.nativeimage.imagecode") != null) {
+                // JMX introspects the MXBean interface by reflection, which a native executable leaves out
+                return global;
+            }
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(global, new ObjectName(OBJECT_NAME));
+            } catch (InstanceAlreadyExistsException exception) {
+                // Another copy of the interpreter published its metrics first; these are only counted
+            } catch (JMException exception) {
+                throw new IllegalStateException("Could not register " + OBJECT_NAME, exception);
+            }
+        }
+        return global;
+    }
+
+    /**
+     * Add the counts of a machine since its previous report.
+     *
+     * @param steps        Steps executed
+     * @param applications Application steps
+     * @param environments Environments created
+     * @param tupleBytes   Estimated bytes of the tuples built
+     * @param controlDepth Current control size of the machine
+     * @param stackDepth   Current stack size of the machine
+     */
+    void record(long steps, long applications, long environments, long tupleBytes, int controlDepth, int stackDepth) {
+        this.steps.add(steps);
+        this.applications.add(applications);
+        this.environments.add(environments);
+        this.tupleBytes.add(tupleBytes);
+        maxControlDepth.accumulate(controlDepth);
+        maxStackDepth.accumulate(stackDepth);
+    }
+
+    /**
+     * @param program Name of the program
+     * @return Begun finish event, to be given to {@link #programFinished}
+     */
+    ProgramFinishEvent programStarted(String program) {
+        programsStarted.increment();
+        runningPrograms.incrementAndGet();
+        currentProgram = program;
+        new ProgramStartEvent(program).commit();
+        ProgramFinishEvent event = new ProgramFinishEvent(program);
+        event.begin();
+        return event;
+    }
+
+    /**
+     * @param event     Event returned when the program started
+     * @param steps     Steps the program executed
+     * @param completed Whether the program completed, rather than failed
+     */
+    void programFinished(ProgramFinishEvent event, long steps, boolean completed) {
+        if (!completed) {
+            programsFailed.increment();
+        }
+        if (runningPrograms.decrementAndGet() == 0) {
+            currentProgram = "";
+        }
+        event.finish(steps, completed);
+    }
+
+    @Override
+    public long getSteps() {
+        return steps.sum();
+    }
+
+    @Override
+    public long getApplications() {
+        return applications.sum();
+    }
+
+    @Override
+    public long getEnvironments() {
+        return environments.sum();
+    }
+
+    @Override
+    public long getMaxControlDepth() {
+        return maxControlDepth.get();
+    }
+
+    @Override
+    public long getMaxStackDepth() {
+        return maxStackDepth.get();
+    }
+
+    @Override
+    public long getTupleBytes() {
+        return tupleBytes.sum();
+    }
+
+    @Override
+    public Map<String, Long> getBuiltinCalls() {
+        // Typed operators share the label of the operator they stand for
+        Map<String, Long> calls = new TreeMap<>();
+        for (Builtin builtin : Builtins.all()) {
+            calls.merge(builtin.getLabel(), builtin.getCalls(), Long::sum);
+        }
+        return calls;
+    }
+
+    @Override
+    public String getCurrentProgram() {
+        return currentProgram;
+    }
+
+    @Override
+    public int getRunningPrograms() {
+        return runningPrograms.get();
+    }
+
+    @Override
+    public long getProgramsStarted() {
+        return programsStarted.sum();
+    }
+
+    @Override
+    public long getProgramsFailed() {
+        return programsFailed.sum();
+    }
+
+    @Override
+    public int getDeepRecursionThreshold() {
+        return deepRecursionThreshold;
+    }
+
+    @Override
+    public void setDeepRecursionThreshold(int deepRecursionThreshold) {
+        this.deepRecursionThreshold = deepRecursionThreshold;
+    }
+}
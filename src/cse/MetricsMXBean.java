@@ -0,0 +1,75 @@
+package cse;
+
+import java.util.Map;
+
+/**
+ * Management interface of the interpreter metrics, published as rpal:type=Interpreter.
+ * Counters are totals over every monitored evaluation in the JVM.
+ */
+public interface MetricsMXBean {
+    /**
+     * @return Machine steps executed
+     */
+    long getSteps();
+
+    /**
+     * @return Applications of functions, builtins and tuples (gamma, call and fused apply steps)
+     */
+    long getApplications();
+
+    /**
+     * @return Environments created, including reused frames
+     */
+    long getEnvironments();
+
+    /**
+     * @return Largest control size seen, sampled whenever a machine reports its counters
+     */
+    long getMaxControlDepth();
+
+    /**
+     * @return Largest stack size seen, sampled whenever a machine reports its counters
+     */
+    long getMaxStackDepth();
+
+    /**
+     * @return Estimated bytes of the tuples built
+     */
+    long getTupleBytes();
+
+    /**
+     * @return Number of invocations of each builtin function and operator
+     */
+    Map<String, Long> getBuiltinCalls();
+
+    /**
+     * @return Name of the latest program started that is still running, empty if none is
+     */
+    String getCurrentProgram();
+
+    /**
+     * @return Number of programs currently running
+     */
+    int getRunningPrograms();
+
+    /**
+     * @return Programs started
+     */
+    long getProgramsStarted();
+
+    /**
+     * @return Programs that failed with an error or a limit
+     */
+    long getProgramsFailed();
+
+    /**
+     * @return Control size at which a machine first reports deep recursion
+     */
+    int getDeepRecursionThreshold();
+
+    /**
+     * @param deepRecursionThreshold Control size at which a machine first reports deep recursion,
+     *                               for machines created afterwards
+     */
+    void setDeepRecursionThreshold(int deepRecursionThreshold);
+}
@@ -0,0 +1,256 @@
+package cse;
+
+/**
+ * Options that change how control structures are generated and how the machine evaluates them.
+ * Defaults reproduce plain sequential evaluation.
+ */
+public class Options {
+    private boolean parallel;
+    private int parallelThreshold = 1;
+    private boolean lazy;
+    private boolean superinstructions = true;
+    private boolean typecheck;
+    private boolean monitored;
+    private String programName = "main";
+    private String profilePath;
+    private boolean trace;
+    private int traceSize = 1 << 16;
+    private String tracePath = "trace.bin";
+    private boolean traceOnExit;
+    private String checkpointPath;
+    private long checkpointInterval;
+    private String resumePath;
+    private String frontEnd = "rpal";
+    private final Limits limits = new Limits();
+
+    /**
+     * @return Whether independent tau components and operator operands are evaluated on a fork-join pool.
+     */
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    /**
+     * @param parallel Whether independent tau components and operator operands are evaluated on a fork-join pool
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    /**
+     * @return Minimum number of applications a component must contain to be worth forking.
+     */
+    public int getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    /**
+     * @param parallelThreshold Minimum number of applications a component must contain to be worth forking
+     */
+    public void setParallelThreshold(int parallelThreshold) {
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    /**
+     * @return Whether arguments are passed as memoized thunks (call-by-need).
+     */
+    public boolean isLazy() {
+        return lazy;
+    }
+
+    /**
+     * @param lazy Whether arguments are passed as memoized thunks (call-by-need)
+     */
+    public void setLazy(boolean lazy) {
+        this.lazy = lazy;
+    }
+
+    /**
+     * @return Whether frequent element sequences are fused into superinstructions.
+     */
+    public boolean isSuperinstructions() {
+        return superinstructions;
+    }
+
+    /**
+     * @param superinstructions Whether frequent element sequences are fused into superinstructions
+     */
+    public void setSuperinstructions(boolean superinstructions) {
+        this.superinstructions = superinstructions;
+    }
+
+    /**
+     * @return Whether types are inferred before evaluation, to report type errors and skip proven type checks.
+     */
+    public boolean isTypecheck() {
+        return typecheck;
+    }
+
+    /**
+     * @param typecheck Whether types are inferred before evaluation, to report type errors and skip proven type checks
+     */
+    public void setTypecheck(boolean typecheck) {
+        this.typecheck = typecheck;
+    }
+
+    /**
+     * @return Whether the evaluation reports to the JMX metrics and flight recorder events.
+     */
+    public boolean isMonitored() {
+        return monitored;
+    }
+
+    /**
+     * @param monitored Whether the evaluation reports to the JMX metrics and flight recorder events
+     */
+    public void setMonitored(boolean monitored) {
+        this.monitored = monitored;
+    }
+
+    /**
+     * @return Name of the program in the metrics and flight recorder events.
+     */
+    public String getProgramName() {
+        return programName;
+    }
+
+    /**
+     * @param programName Name of the program in the metrics and flight recorder events
+     */
+    public void setProgramName(String programName) {
+        this.programName = programName;
+    }
+
+    /**
+     * @return File to write the profile to, or null if the evaluation is not profiled.
+     */
+    public String getProfilePath() {
+        return profilePath;
+    }
+
+    /**
+     * @param profilePath File to write the profile to, or null to disable profiling
+     */
+    public void setProfilePath(String profilePath) {
+        this.profilePath = profilePath;
+    }
+
+    /**
+     * @return Whether the latest steps are recorded in a trace.
+     */
+    public boolean isTrace() {
+        return trace;
+    }
+
+    /**
+     * @param trace Whether the latest steps are recorded in a trace
+     */
+    public void setTrace(boolean trace) {
+        this.trace = trace;
+    }
+
+    /**
+     * @return Number of latest steps kept in the trace of each thread.
+     */
+    public int getTraceSize() {
+        return traceSize;
+    }
+
+    /**
+     * @param traceSize Number of latest steps kept in the trace of each thread, positive
+     */
+    public void setTraceSize(int traceSize) {
+        this.traceSize = traceSize;
+    }
+
+    /**
+     * @return File the trace is dumped to.
+     */
+    public String getTracePath() {
+        return tracePath;
+    }
+
+    /**
+     * @param tracePath File the trace is dumped to
+     */
+    public void setTracePath(String tracePath) {
+        this.tracePath = tracePath;
+    }
+
+    /**
+     * @return Whether the trace is dumped when the evaluation completes, not only when it fails.
+     */
+    public boolean isTraceOnExit() {
+        return traceOnExit;
+    }
+
+    /**
+     * @param traceOnExit Whether the trace is dumped when the evaluation completes, not only when it fails
+     */
+    public void setTraceOnExit(boolean traceOnExit) {
+        this.traceOnExit = traceOnExit;
+    }
+
+    /**
+     * @return File checkpoints of the machine are written to, or null if there are none.
+     */
+    public String getCheckpointPath() {
+        return checkpointPath;
+    }
+
+    /**
+     * @param checkpointPath File checkpoints of the machine are written to, or null to disable checkpoints
+     */
+    public void setCheckpointPath(String checkpointPath) {
+        this.checkpointPath = checkpointPath;
+    }
+
+    /**
+     * @return Milliseconds between checkpoints, 0 if they are only written when the JVM shuts down.
+     */
+    public long getCheckpointInterval() {
+        return checkpointInterval;
+    }
+
+    /**
+     * @param checkpointInterval Milliseconds between checkpoints, 0 to write them only when the JVM shuts down
+     */
+    public void setCheckpointInterval(long checkpointInterval) {
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    /**
+     * @return Checkpoint to resume instead of evaluating an ast, or null.
+     */
+    public String getResumePath() {
+        return resumePath;
+    }
+
+    /**
+     * @param resumePath Checkpoint to resume instead of evaluating an ast, or null
+     */
+    public void setResumePath(String resumePath) {
+        this.resumePath = resumePath;
+    }
+
+    /**
+     * @return Front end executable that parses RPAL source for the REPL and watch mode.
+     */
+    public String getFrontEnd() {
+        return frontEnd;
+    }
+
+    /**
+     * @param frontEnd Front end executable that parses RPAL source for the REPL and watch mode
+     */
+    public void setFrontEnd(String frontEnd) {
+        this.frontEnd = frontEnd;
+    }
+
+    /**
+     * @return Resource limits of the evaluation.
+     */
+    public Limits getLimits() {
+        return limits;
+    }
+}
@@ -0,0 +1,108 @@
+package cse;
+
+import cse.applicator.Builtin;
+import cse.element.Value;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Peephole pass that fuses frequent element sequences of the generated control structures
+ * into superinstructions, which the machine executes in one dispatch.
+ * <p>
+ * The sequences were chosen from the rule pair counts of the profiler on the sample programs,
+ * where name/literal followed by a binary operator, a comparison followed by beta and a name
+ * followed by an application are the most frequent pairs that the generator can see.
+ * <pre>
+ * op A B               =&gt;  fused-operation(op, A, B)       A, B are ids or literals
+ * delta delta beta op  =&gt;  delta delta fused-branch(op)
+ * gamma id             =&gt;  fused-apply(id)
+ * </pre>
+ * Elements are only fused within a control structure, so delta numbering is unchanged.
+ */
+class Peephole {
+
+    /**
+     * Fuse the elements of every control structure, including forked components and delayed code.
+     *
+     * @param controlStructures Generated control structures
+     */
+    static void optimize(List<Stack<Value>> controlStructures) {
+        for (Stack<Value> control : controlStructures) {
+            optimize(control);
+        }
+    }
+
+    /**
+     * @param control Control structure to rewrite in place
+     */
+    private static void optimize(Stack<Value> control) {
+        ArrayList<Value> elements = new ArrayList<>();
+        for (Value element : control) {
+            if (element instanceof Fork) {
+                ((Fork) element).getComponents().forEach(Peephole::optimize);
+            } else if (element instanceof Delay) {
+                optimize(((Delay) element).getCode());
+            }
+            elements.add(element);
+        }
+
+        ArrayList<Value> fused = new ArrayList<>();
+        for (int i = 0; i < elements.size(); i++) {
+            Value element = elements.get(i);
+            if (isBinaryOperator(element) && i + 2 < elements.size()
+                    && isOperand(elements.get(i + 1)) && isOperand(elements.get(i + 2))) {
+                element = new FusedOperation((Builtin) element, elements.get(i + 1), elements.get(i + 2));
+                i += 2;
+            } else if (element.isLabel("gamma") && i + 1 < elements.size() && elements.get(i + 1).isLabel("id")) {
+                element = new FusedApply(elements.get(i + 1));
+                i += 1;
+            }
+            if (isCondition(element) && fused.size() >= 3 && fused.get(fused.size() - 1).isLabel("beta")
+                    && fused.get(fused.size() - 2).isLabel("delta") && fused.get(fused.size() - 3).isLabel("delta")) {
+                fused.set(fused.size() - 1, new FusedBranch(element));
+            } else {
+                fused.add(element);
+            }
+        }
+
+        while (!control.isEmpty()) {
+            control.pop();
+        }
+        for (Value element : fused) {
+            control.push(element);
+        }
+    }
+
+    /**
+     * @return Whether the element is a name or a literal, which is evaluated without the stack
+     */
+    private static boolean isOperand(Value element) {
+        switch (element.getLabel()) {
+            case "id":
+            case "int":
+            case "str":
+            case "true":
+            case "false":
+            case "nil":
+            case "dummy":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @return Whether the element computes a condition from values on the stack
+     */
+    private static boolean isCondition(Value element) {
+        return element instanceof FusedOperation || isBinaryOperator(element);
+    }
+
+    /**
+     * @return Whether the element is a binary operator builtin
+     */
+    private static boolean isBinaryOperator(Value element) {
+        return element instanceof Builtin && ((Builtin) element).getArity() == 2;
+    }
+}
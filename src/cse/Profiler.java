@@ -0,0 +1,396 @@
+package cse;
+
+import cse.element.Value;
+
+import java.io.FileNotFoundException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Execution profiler of the CSE machine.
+ * <p>
+ * Counts the executions of each CSE rule and each builtin, reports the inline cache hit rate of
+ * each application site, and attributes time and allocations
+ * to RPAL functions. Function calls are recorded in a calling context tree keyed by the lambda
+ * control structure index, which is mapped back to the name the lambda is bound to.
+ * Recursive calls are folded into the context of the outermost active call of the same function,
+ * so the tree stays small however deep the recursion goes.
+ * The tree is written as collapsed stacks (self time in microseconds) for flame graph tools.
+ */
+public class Profiler {
+    private static final int PAIRS_REPORTED = 20;
+    private static final int SITES_REPORTED = 20;
+
+    private final AtomicLongArray ruleCounts = new AtomicLongArray(Rules.COUNT);
+    private final AtomicLongArray rulePairCounts = new AtomicLongArray(Rules.COUNT * Rules.COUNT);
+    private final LongAdder dispatches = new LongAdder();
+    private final Map<String, LongAdder> builtinCounts = new ConcurrentHashMap<>();
+    private final HashMap<Integer, String> functionNames;
+    private final ArrayList<Site> sites = new ArrayList<>();
+    private final Context root = new Context("all", -1, null);
+    private final com.sun.management.ThreadMXBean threads;
+
+    /**
+     * @param controlStructures Control structures of the profiled program
+     */
+    Profiler(ArrayList<Stack<Value>> controlStructures) {
+        this.functionNames = FunctionNames.of(controlStructures);
+        for (int k = 0; k < controlStructures.size(); k++) {
+            String name = functionNames.get(k);
+            collectSites(controlStructures.get(k), name == null ? "delta " + k : name + " (delta " + k + ")");
+        }
+        java.lang.management.ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        if (threadBean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) threadBean).isThreadAllocatedMemorySupported()) {
+            this.threads = (com.sun.management.ThreadMXBean) threadBean;
+            this.threads.setThreadAllocatedMemoryEnabled(true);
+        } else {
+            this.threads = null;
+        }
+    }
+
+
+    /**
+     * Count one iteration of the machine loop. A superinstruction executes several steps in one dispatch.
+     */
+    void countDispatch() {
+        dispatches.increment();
+    }
+
+    /**
+     * Count one application of a builtin or operator.
+     *
+     * @param operation Label of the builtin
+     */
+    void countBuiltin(String operation) {
+        builtinCounts.computeIfAbsent(operation, key -> new LongAdder()).increment();
+    }
+
+    /**
+     * Start a call stack for a machine.
+     *
+     * @param parent Call stack of the machine that created it, null for the main machine
+     * @param name   Name of the outermost frame of the new call stack
+     * @return New call stack with one open frame
+     */
+    CallStack newCallStack(CallStack parent, String name) {
+        Context context = parent == null ? root : parent.current();
+        CallStack callStack = new CallStack();
+        callStack.enter(context.child(name, -1));
+        return callStack;
+    }
+
+    /**
+     * Write the report and the collapsed stacks.
+     *
+     * @param path Report file; collapsed stacks are written next to it with a .collapsed extension
+     * @throws FileNotFoundException If a file cannot be created
+     */
+    public void write(String path) throws FileNotFoundException {
+        try (PrintWriter collapsed = new PrintWriter(path + ".collapsed")) {
+            writeCollapsed(collapsed);
+        }
+        try (PrintWriter report = new PrintWriter(path)) {
+            report.println("CSE rules");
+            for (int i = 0; i < Rules.COUNT; i++) {
+                if (ruleCounts.get(i) > 0) {
+                    report.printf("  %-14s %12d%n", Rules.name(i), ruleCounts.get(i));
+                }
+            }
+            long steps = 0;
+            for (int i = 0; i < Rules.COUNT; i++) {
+                steps += ruleCounts.get(i);
+            }
+            long totalSteps = Math.max(steps, 1);
+            report.printf("  %-14s %12d%n", "steps", steps);
+            report.printf("  %-14s %12d %6.1f%% fewer than steps%n", "dispatches", dispatches.sum(),
+                    100.0 * (steps - dispatches.sum()) / totalSteps);
+            report.println();
+            report.println("Rule pairs (previous step, step)");
+            Integer[] pairs = new Integer[Rules.COUNT * Rules.COUNT];
+            for (int i = 0; i < pairs.length; i++) {
+                pairs[i] = i;
+            }
+            Arrays.sort(pairs, (a, b) -> Long.compare(rulePairCounts.get(b), rulePairCounts.get(a)));
+            for (int i = 0; i < PAIRS_REPORTED && rulePairCounts.get(pairs[i]) > 0; i++) {
+                long count = rulePairCounts.get(pairs[i]);
+                report.printf("  %-14s %-14s %12d %6.1f%%%n", Rules.name(pairs[i] / Rules.COUNT),
+                        Rules.name(pairs[i] % Rules.COUNT), count, 100.0 * count / totalSteps);
+            }
+            report.println();
+            report.println("Inline caches");
+            long hits = 0;
+            long misses = 0;
+            for (Site site : sites) {
+                hits += site.cache.getHits();
+                misses += site.cache.getMisses();
+            }
+            report.printf("  %d applications, %.1f%% hits%n", hits + misses, 100.0 * hits / Math.max(hits + misses, 1));
+            sites.stream()
+                    .filter(site -> site.applications() > 0)
+                    .sorted((a, b) -> Long.compare(b.applications(), a.applications()))
+                    .limit(SITES_REPORTED)
+                    .forEach(site -> report.printf("  %-30s %-12s %12d hits %10d misses %6.1f%%%n", site.location,
+                            site.cache.getState(), site.cache.getHits(), site.cache.getMisses(),
+                            100.0 * site.cache.getHits() / site.applications()));
+            report.println();
+            report.println("Builtins");
+            builtinCounts.entrySet().stream()
+                    .sorted((a, b) -> Long.compare(b.getValue().sum(), a.getValue().sum()))
+                    .forEach(entry -> report.printf("  %-14s %12d%n", entry.getKey(), entry.getValue().sum()));
+            report.println();
+            report.println("Functions");
+            report.printf("  %-20s %6s %12s %12s %14s%n", "name", "delta", "calls", "self ms", "self bytes");
+            collectFunctions().values().stream()
+                    .sorted((a, b) -> Long.compare(b.selfNanos, a.selfNanos))
+                    .forEach(function -> report.printf("  %-20s %6d %12d %12.3f %14d%n", function.name,
+                            function.delta, function.calls, function.selfNanos / 1e6, function.selfBytes));
+            report.println();
+            report.println("Collapsed stacks: " + path + ".collapsed");
+        }
+    }
+
+    /**
+     * Write one line per context with its frame names and self time.
+     *
+     * @param writer Collapsed stack output
+     */
+    private void writeCollapsed(PrintWriter writer) {
+        ArrayList<Context> contexts = new ArrayList<>();
+        ArrayList<String> paths = new ArrayList<>();
+        for (Context child : root.childList()) {
+            contexts.add(child);
+            paths.add(child.name);
+        }
+        while (!contexts.isEmpty()) {
+            Context context = contexts.remove(contexts.size() - 1);
+            String path = paths.remove(paths.size() - 1);
+            long micros = context.selfNanos / 1000;
+            if (micros > 0) {
+                writer.println(path + " " + micros);
+            }
+            for (Context child : context.childList()) {
+                contexts.add(child);
+                paths.add(path + ";" + child.name);
+            }
+        }
+    }
+
+    /**
+     * Sum the contexts of each function.
+     *
+     * @return Totals per control structure index
+     */
+    private HashMap<Integer, Context> collectFunctions() {
+        HashMap<Integer, Context> functions = new HashMap<>();
+        ArrayList<Context> contexts = new ArrayList<>(root.childList());
+        while (!contexts.isEmpty()) {
+            Context context = contexts.remove(contexts.size() - 1);
+            if (context.delta >= 0) {
+                Context total = functions.computeIfAbsent(context.delta, key -> new Context(context.name, key, null));
+                total.calls += context.calls;
+                total.selfNanos += context.selfNanos;
+                total.selfBytes += context.selfBytes;
+            }
+            contexts.addAll(context.childList());
+        }
+        return functions;
+    }
+
+    /**
+     * Find the application sites of a control structure, including forked components and delayed code.
+     *
+     * @param control  Control structure
+     * @param location Description of the control structure
+     */
+    private void collectSites(Stack<Value> control, String location) {
+        int position = 0;
+        for (Value element : control) {
+            String elementLocation = location + " #" + position++;
+            if (element instanceof GammaSite) {
+                sites.add(new Site(elementLocation, ((GammaSite) element).getCache()));
+            } else if (element instanceof FusedApply) {
+                FusedApply apply = (FusedApply) element;
+                sites.add(new Site(elementLocation + " " + apply.getRator().getValue(), apply.getCache()));
+            } else if (element instanceof Fork) {
+                ArrayList<Stack<Value>> components = ((Fork) element).getComponents();
+                for (int i = 0; i < components.size(); i++) {
+                    collectSites(components.get(i), elementLocation + "/" + i);
+                }
+            } else if (element instanceof Delay) {
+                collectSites(((Delay) element).getCode(), elementLocation);
+            }
+        }
+    }
+
+    /**
+     * @return Frame name of a lambda control structure
+     */
+    private String functionName(int delta) {
+        String name = functionNames.get(delta);
+        return name == null ? "lambda#" + delta : name;
+    }
+
+    /**
+     * @return Bytes allocated by the current thread so far, 0 if not supported
+     */
+    private long allocatedBytes() {
+        return threads == null ? 0 : threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Application site with its location in the control structures.
+     */
+    private static class Site {
+        private final String location;
+        private final InlineCache cache;
+
+        Site(String location, InlineCache cache) {
+            this.location = location;
+            this.cache = cache;
+        }
+
+        long applications() {
+            return cache.getHits() + cache.getMisses();
+        }
+    }
+
+    /**
+     * Node of the calling context tree.
+     */
+    private static class Context {
+        private final String name;
+        private final int delta;
+        private final Context parent;
+        private final HashMap<Integer, Context> children = new HashMap<>();
+        private final HashMap<String, Context> namedChildren = new HashMap<>();
+        private long calls;
+        private long selfNanos;
+        private long selfBytes;
+
+        Context(String name, int delta, Context parent) {
+            this.name = name;
+            this.delta = delta;
+            this.parent = parent;
+        }
+
+        /**
+         * @return Context of a call of a lambda control structure, the caller's ancestor if it is recursive
+         */
+        Context call(int delta, String name) {
+            for (Context context = this; context != null; context = context.parent) {
+                if (context.delta == delta) return context;
+            }
+            synchronized (this) {
+                return children.computeIfAbsent(delta, key -> new Context(name, key, this));
+            }
+        }
+
+        /**
+         * @return Child context for a frame that is not a function (fork, thunk)
+         */
+        synchronized Context child(String name, int delta) {
+            return namedChildren.computeIfAbsent(name, key -> new Context(key, delta, this));
+        }
+
+        synchronized ArrayList<Context> childList() {
+            ArrayList<Context> list = new ArrayList<>(namedChildren.values());
+            list.addAll(children.values());
+            return list;
+        }
+
+        synchronized void record(long nanos, long bytes) {
+            calls++;
+            selfNanos += nanos;
+            selfBytes += bytes;
+        }
+    }
+
+    /**
+     * Open frames of one machine. Frames are entered when an environment is created for a call
+     * and exited when its environment element is removed.
+     */
+    class CallStack {
+        private final ArrayList<Frame> frames = new ArrayList<>();
+        private int previousRule = -1;
+
+        /**
+         * Count one execution of a rule and the pair it forms with the previous step of the machine.
+         *
+         * @param rule Rule identifier from {@link Rules}
+         */
+        void countRule(int rule) {
+            ruleCounts.incrementAndGet(rule);
+            if (previousRule >= 0) {
+                rulePairCounts.incrementAndGet(previousRule * Rules.COUNT + rule);
+            }
+            previousRule = rule;
+        }
+
+        /**
+         * Enter a call of a lambda control structure.
+         *
+         * @param delta Control structure index of the lambda body
+         */
+        void enter(int delta) {
+            enter(current().call(delta, functionName(delta)));
+        }
+
+        /**
+         * Enter the evaluation of a thunk forced on the machine.
+         */
+        void enterThunk() {
+            enter(current().child("(thunk)", -1));
+        }
+
+        private void enter(Context context) {
+            frames.add(new Frame(context, System.nanoTime(), allocatedBytes()));
+        }
+
+        /**
+         * Exit the innermost call and record its self time and allocations.
+         */
+        void exit() {
+            Frame frame = frames.remove(frames.size() - 1);
+            long nanos = System.nanoTime() - frame.startNanos;
+            long bytes = allocatedBytes() - frame.startBytes;
+            frame.context.record(nanos - frame.childNanos, bytes - frame.childBytes);
+            if (!frames.isEmpty()) {
+                Frame caller = frames.get(frames.size() - 1);
+                caller.childNanos += nanos;
+                caller.childBytes += bytes;
+            }
+        }
+
+        /**
+         * @return Context of the innermost open frame
+         */
+        private Context current() {
+            return frames.isEmpty() ? root : frames.get(frames.size() - 1).context;
+        }
+    }
+
+    /**
+     * Open call with the time and allocations at entry and the totals of its finished callees.
+     */
+    private static class Frame {
+        private final Context context;
+        private final long startNanos;
+        private final long startBytes;
+        private long childNanos;
+        private long childBytes;
+
+        Frame(Context context, long startNanos, long startBytes) {
+            this.context = context;
+            this.startNanos = startNanos;
+            this.startBytes = startBytes;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package cse;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event spanning the evaluation of a monitored program, committed when it finishes.
+ */
+@Name("rpal.ProgramFinish")
+@Label("Program Finish")
+@Category("RPAL")
+@Description("Evaluation of a program, from start to finish")
+class ProgramFinishEvent extends jdk.jfr.Event {
+    @Label("Program")
+    private String program;
+
+    @Label("Steps")
+    private long steps;
+
+    @Label("Completed")
+    @Description("Whether the program completed rather than failed")
+    private boolean completed;
+
+    ProgramFinishEvent(String program) {
+        this.program = program;
+    }
+
+    /**
+     * @param steps     Steps the program executed
+     * @param completed Whether the program completed
+     */
+    void finish(long steps, boolean completed) {
+        this.steps = steps;
+        this.completed = completed;
+        commit();
+    }
+}
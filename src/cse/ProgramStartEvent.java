@@ -0,0 +1,20 @@
+package cse;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event committed when a monitored program starts evaluating.
+ */
+@Name("rpal.ProgramStart")
+@Label("Program Start")
+@Category("RPAL")
+class ProgramStartEvent extends jdk.jfr.Event {
+    @Label("Program")
+    private String program;
+
+    ProgramStartEvent(String program) {
+        this.program = program;
+    }
+}
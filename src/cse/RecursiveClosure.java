@@ -0,0 +1,29 @@
+package cse;
+
+/**
+ * Value of a rec binding whose body is a lambda.
+ * <p>
+ * Instead of unrolling eta on every call, the closure of the body is created once in an
+ * environment that binds the rec name to this value, so recursive calls are plain applications.
+ * It keeps the eta label and value so it prints and compares exactly like the eta it replaces.
+ */
+class RecursiveClosure extends Eta {
+    private static final long serialVersionUID = 1L;
+    private final Closure closure;
+
+    /**
+     * @param lambda  Closure Y was applied to, lambda(i, v, c)
+     * @param closure Closure of the body lambda in the environment binding the rec name
+     */
+    RecursiveClosure(Closure lambda, Closure closure) {
+        super(lambda);
+        this.closure = closure;
+    }
+
+    /**
+     * @return Closure of the body lambda, lambda(k, x, c)
+     */
+    Closure getClosure() {
+        return closure;
+    }
+}
@@ -0,0 +1,224 @@
+package cse;
+
+import cse.element.Element;
+import cse.element.Value;
+import tree.Converters;
+import tree.FlatTree;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Read-eval-print loop over one machine that is kept between inputs.
+ * <p>
+ * Each input is either a definition, let D without an in part, or an expression. Inputs are parsed
+ * by the RPAL front end, standardized and generated after the control structures of the earlier
+ * inputs, so only the new input is compiled and evaluated. A definition evaluates its value in the
+ * global environment and binds the names in a new environment, which becomes the global environment
+ * of later inputs. An expression is evaluated in the global environment and printed unless it is dummy.
+ * <pre>
+ * rpal&gt; let rec fact n = n eq 0 -&gt; 1 | n * fact (n - 1)
+ * rpal&gt; fact 5
+ * 120
+ * </pre>
+ * An input continues on the next line while the front end reaches the end of it before it is complete.
+ * A blank line ends the input anyway and :quit or the end of the input ends the session.
+ */
+public class Repl {
+    private static final String PROMPT = "rpal> ";
+    private static final String CONTINUATION = "....> ";
+    private static final String OPERATOR_ENDINGS = ",=+-*/&|.>@";
+    private static final List<String> KEYWORD_ENDINGS = Arrays.asList(
+            "let", "in", "where", "within", "and", "rec", "fn", "aug", "or", "not",
+            "gr", "ge", "ls", "le", "eq", "ne");
+
+    private final FrontEnd frontEnd;
+    private final Options options;
+    private final ArrayList<Stack<Value>> controlStructures = new ArrayList<>();
+    private final Machine machine;
+    private final PrintStream out;
+    private int globalEnvironment;
+
+    /**
+     * @param options Generation and evaluation options with the front end; profiling and type checking do not apply
+     * @param out     Stream for prompts and errors
+     */
+    public Repl(Options options, PrintStream out) {
+        this.frontEnd = new FrontEnd(options.getFrontEnd());
+        this.options = options;
+        this.out = out;
+        // Inputs refer to the names of earlier inputs, which a single input cannot type check
+        options.setTypecheck(false);
+        options.setProfilePath(null);
+        options.setTrace(false);
+        options.setCheckpointPath(null);
+        this.machine = new Machine(controlStructures, options);
+    }
+
+    /**
+     * Read and evaluate inputs until :quit or the end of the input.
+     * Prompts are only shown on a console, so inputs can also be piped in.
+     *
+     * @param in Source of the inputs
+     * @throws IOException If the input cannot be read
+     */
+    public void run(BufferedReader in) throws IOException {
+        boolean interactive = System.console() != null;
+        StringBuilder source = new StringBuilder();
+        while (true) {
+            if (interactive) {
+                out.print(source.length() == 0 ? PROMPT : CONTINUATION);
+                out.flush();
+            }
+            String line = in.readLine();
+            if (line == null || (source.length() == 0 && line.trim().equals(":quit"))) {
+                if (source.length() > 0) {
+                    evaluate(source.toString(), true);
+                }
+                return;
+            }
+            if (source.length() == 0 && line.trim().isEmpty()) {
+                continue;
+            }
+            source.append(line).append('\n');
+            if (evaluate(source.toString(), line.trim().isEmpty())) {
+                source.setLength(0);
+            }
+        }
+    }
+
+    /**
+     * @param source   Input read so far
+     * @param complete Whether no more lines will be added to the input
+     * @return Whether the input was used up, false if it needs more lines
+     */
+    private boolean evaluate(String source, boolean complete) {
+        try {
+            FrontEnd.Result expression = parse(source);
+            String error = expression.getError();
+            boolean incomplete = error != null && (error.contains("(null)")
+                    || error.contains("empty stack") && isUnfinished(source));
+            if (expression.getTree() != null) {
+                Element result = evaluate(expression.getTree());
+                if (!result.isLabel("dummy")) {
+                    machine.print(result);
+                }
+                return true;
+            }
+            if (startsWithLet(source)) {
+                FrontEnd.Result definition = parse(source + "in dummy\n");
+                if (definition.getTree() != null) {
+                    define(definition.getTree());
+                    return true;
+                }
+            }
+            if (!complete && incomplete) {
+                return false;
+            }
+            out.println("Syntax error:");
+            out.println(error);
+        } catch (LimitExceededException exception) {
+            out.println("Evaluation stopped:");
+            out.println(exception.getMessage());
+        } catch (CseException exception) {
+            out.println("Error occurred while evaluating cse:");
+            out.println(exception.getMessage());
+        } catch (RuntimeException exception) {
+            out.println("Runtime Exception:");
+            out.println(exception.getMessage());
+        } catch (StackOverflowError error) {
+            out.println("Evaluation stopped:");
+            out.println("Recursion is too deep for the Java stack; run java with a larger -Xss");
+        } catch (IOException exception) {
+            out.println("Cannot run the front end " + frontEnd.getPath() + ":");
+            out.println(exception.getMessage());
+        }
+        return true;
+    }
+
+    /**
+     * Standardize an expression, generate it after the existing control structures and evaluate it.
+     *
+     * @param tree Ast of the expression
+     * @return Value of the expression
+     */
+    private Element evaluate(FlatTree tree) {
+        Converters.astToSt(tree);
+        return compileAndEvaluate(tree, tree.getRoot());
+    }
+
+    /**
+     * Evaluate a definition and make its names visible to later inputs.
+     * let D in dummy standardizes to gamma (lambda X dummy) E, so E is evaluated and bound to X.
+     *
+     * @param tree Ast of the definition followed by in dummy
+     */
+    private void define(FlatTree tree) {
+        Converters.astToSt(tree);
+        int root = tree.getRoot();
+        int parameter = tree.getChild(tree.getChild(root, 0), 0);
+        String[] names;
+        if (tree.isLabel(parameter, ",")) {
+            names = new String[tree.getNumberOfChildren(parameter)];
+            for (int i = 0; i < names.length; i++) {
+                names[i] = tree.getValue(tree.getChild(parameter, i));
+            }
+        } else {
+            names = new String[]{tree.getValue(parameter)};
+        }
+        Element value = compileAndEvaluate(tree, tree.getChild(root, 1));
+        globalEnvironment = machine.define(globalEnvironment, names, value);
+    }
+
+    private Element compileAndEvaluate(FlatTree tree, int root) {
+        int delta = ElementParser.appendControlStructures(tree, root, options, controlStructures);
+        machine.controlStructuresAdded();
+        return machine.evaluate(delta, globalEnvironment);
+    }
+
+    /**
+     * @param source Input to parse
+     * @return Ast, or the error of the front end
+     * @throws IOException If the front end cannot be run
+     */
+    private FrontEnd.Result parse(String source) throws IOException {
+        Path file = Files.createTempFile("rpal-repl", ".rpal");
+        try {
+            Files.write(file, source.getBytes(StandardCharsets.UTF_8));
+            return frontEnd.parse(file);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * The front end reports running out of operands both at the end of an unfinished input and
+     * at a misplaced token, so the input itself decides whether more lines may finish it.
+     *
+     * @param source Input read so far
+     * @return Whether the input has open parentheses or ends with an operator or keyword
+     */
+    private static boolean isUnfinished(String source) {
+        int open = 0;
+        for (char c : source.toCharArray()) {
+            if (c == '(') open++;
+            else if (c == ')') open--;
+        }
+        String trimmed = source.trim();
+        String[] words = trimmed.split("\\s+");
+        return open > 0 || OPERATOR_ENDINGS.indexOf(trimmed.charAt(trimmed.length() - 1)) >= 0
+                || KEYWORD_ENDINGS.contains(words[words.length - 1]);
+    }
+
+    private static boolean startsWithLet(String source) {
+        String trimmed = source.trim();
+        return trimmed.startsWith("let") && (trimmed.length() == 3 || !Character.isLetterOrDigit(trimmed.charAt(3)));
+    }
+}
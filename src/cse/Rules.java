@@ -0,0 +1,52 @@
+package cse;
+
+/**
+ * Identifiers of the steps of the CSE machine, used by the profiler and the trace.
+ */
+final class Rules {
+    static final int EXTRACT_DELTA = 0;
+    static final int RULE_1 = 1;
+    static final int RULE_2 = 2;
+    static final int RULE_3 = 3;
+    static final int RULE_4 = 4;
+    static final int RULE_5 = 5;
+    static final int RULE_6 = 6;
+    static final int RULE_7 = 7;
+    static final int RULE_8 = 8;
+    static final int RULE_9 = 9;
+    static final int RULE_10 = 10;
+    static final int RULE_11 = 11;
+    static final int RULE_12 = 12;
+    static final int RULE_13 = 13;
+    static final int FORK = 14;
+    static final int DELAY = 15;
+    static final int PUSH = 16;
+    static final int CALL = 17;
+    static final int FORCE = 18;
+
+    private static final String[] NAMES = {"extractDelta", "cseRule1", "cseRule2", "cseRule3", "cseRule4",
+            "cseRule5", "cseRule6", "cseRule7", "cseRule8", "cseRule9", "cseRule10", "cseRule11", "cseRule12",
+            "cseRule13", "cseFork", "cseDelay", "push", "cseCall", "cseForce"};
+
+    static final int COUNT = NAMES.length;
+
+    private Rules() {
+    }
+
+    /**
+     * @param rule Rule identifier
+     * @return Whether the step applies a function, builtin or tuple
+     */
+    static boolean isApplication(int rule) {
+        return rule == RULE_3 || rule == RULE_4 || rule == RULE_10 || rule == RULE_11
+                || rule == RULE_12 || rule == RULE_13 || rule == CALL;
+    }
+
+    /**
+     * @param rule Rule identifier
+     * @return Name of the rule as in the machine, or the number if unknown
+     */
+    static String name(int rule) {
+        return rule >= 0 && rule < COUNT ? NAMES[rule] : "rule#" + rule;
+    }
+}
@@ -2,6 +2,7 @@ package cse;
 
 import cse.element.Element;
 
+import java.io.Serializable;
 import java.util.Iterator;
 
 /**
@@ -10,7 +11,9 @@ import java.util.Iterator;
  *
  * @param <T> Element type (Value or Element)
  */
-public class Stack<T extends Element> implements Iterable<T> {
+public class Stack<T extends Element> implements Iterable<T>, Serializable {
+    private static final long serialVersionUID = 1L;
+
     protected final java.util.Stack<T> stack;
 
     Stack() {
@@ -31,6 +34,13 @@ public class Stack<T extends Element> implements Iterable<T> {
         return stack.pop();
     }
 
+    /**
+     * Remove all elements
+     */
+    void clear() {
+        stack.clear();
+    }
+
     /**
      * Whether the stack is empty
      */
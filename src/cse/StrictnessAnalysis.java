@@ -0,0 +1,405 @@
+package cse;
+
+import cse.applicator.Builtin;
+import cse.applicator.Builtins;
+import tree.FlatTree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Strictness analysis over the standardized tree for lazy evaluation.
+ * <p>
+ * Finds the arguments of gamma nodes that must be delayed. An argument is evaluated eagerly when
+ * it is cheap (literal, lambda) or certainly needed: applied to a builtin, bound to a tuple of
+ * parameters, or passed to a known function whose body always evaluates that parameter.
+ * Known functions are lambdas bound by let/where (gamma of a lambda) or by rec (yStar),
+ * as long as their name is not shadowed. Inside its body, a rec name refers to its own function,
+ * so recursive calls count.
+ * <p>
+ * Strictness is an optimistic fixpoint: every parameter is assumed strict, the tree is walked,
+ * and a parameter found not strict under the assumptions is no longer assumed strict. The walk
+ * is repeated until no assumption changes, so a function calling itself with an argument it
+ * needs, like an accumulator, is strict in it.
+ */
+class StrictnessAnalysis {
+    private final FlatTree tree;
+    private final BitSet decided = new BitSet();
+    private final BitSet delayed = new BitSet();
+    private final Map<Integer, Function> functions = new HashMap<>();
+    private final Map<Integer, Function> recursiveFunctions = new HashMap<>();
+    private int round;
+    private boolean changed;
+
+    private StrictnessAnalysis(FlatTree tree) {
+        this.tree = tree;
+    }
+
+    /**
+     * Finds the arguments that have to be delayed.
+     *
+     * @param tree Standardized tree
+     * @param root Root of the subtree to analyse
+     * @return Argument nodes that should become thunks
+     */
+    static BitSet delayedArguments(FlatTree tree, int root) {
+        StrictnessAnalysis analysis = new StrictnessAnalysis(tree);
+        do {
+            analysis.round++;
+            analysis.changed = false;
+            analysis.decided.clear();
+            analysis.delayed.clear();
+            analysis.walk(root, null);
+        } while (analysis.changed);
+        return analysis.delayed;
+    }
+
+    /**
+     * Visit every application in the subtree and decide on its arguments.
+     *
+     * @param node  Current node
+     * @param scope Names visible at the node
+     */
+    private void walk(int node, Scope scope) {
+        if (tree.isLabel(node, "lambda")) {
+            walk(tree.getChild(node, 1), shadow(scope, tree.getChild(node, 0)));
+        } else if (tree.isLabel(node, "gamma")) {
+            int head = spineHead(node);
+            ArrayList<Integer> arguments = spineArguments(node);
+            for (int i = 0; i < arguments.size(); i++) {
+                isDelayed(arguments.get(i), head, i, arguments.size(), scope);
+                if (i == 0 && tree.isLabel(head, "yStar") && isSimpleLambda(arguments.get(0))) {
+                    int recLambda = arguments.get(0);
+                    walk(tree.getChild(recLambda, 1), recursiveScope(recLambda, scope));
+                } else {
+                    walk(arguments.get(i), scope);
+                }
+            }
+            if (tree.isLabel(head, "lambda")) {
+                walk(tree.getChild(head, 1), letScope(head, arguments.get(0), scope));
+            } else {
+                walk(head, scope);
+            }
+        } else {
+            tree.forEachChild(node, child -> walk(child, scope));
+        }
+    }
+
+    /**
+     * Decide (once) whether an argument of an application must be delayed.
+     *
+     * @param argument  Argument node
+     * @param head      Function at the head of the application spine
+     * @param position  Position of the argument in the spine (0 indexed)
+     * @param arguments Number of arguments in the spine
+     * @param scope     Names visible at the application
+     * @return Whether the argument becomes a thunk
+     */
+    private boolean isDelayed(int argument, int head, int position, int arguments, Scope scope) {
+        if (!decided.get(argument)) {
+            boolean isDelayed = !isCheap(argument) && !isNeeded(head, position, arguments, scope);
+            decided.set(argument);
+            delayed.set(argument, isDelayed);
+        }
+        return delayed.get(argument);
+    }
+
+    /**
+     * @param head      Function at the head of the application spine
+     * @param position  Position of the argument in the spine (0 indexed)
+     * @param arguments Number of arguments in the spine
+     * @param scope     Names visible at the application
+     * @return Whether the argument will certainly be evaluated by the application
+     */
+    private boolean isNeeded(int head, int position, int arguments, Scope scope) {
+        if (tree.isLabel(head, "id")) {
+            Scope binding = Scope.find(scope, tree.getValue(head));
+            if (binding == null) {
+                return position < builtinArity(tree.getValue(head));
+            }
+            return binding.function != null && binding.function.isStrictIn(position, arguments);
+        }
+        if (tree.isLabel(head, "lambda")) {
+            return functionOf(head, scope).isStrictIn(position, arguments);
+        }
+        return false;
+    }
+
+    /**
+     * Whether evaluating the node certainly evaluates the variable x.
+     *
+     * @param node  Expression node
+     * @param x     Variable name
+     * @param scope Names visible at the node
+     * @return Whether the node is strict in x
+     */
+    private boolean isStrict(int node, String x, Scope scope) {
+        if (tree.isLabel(node, "id")) {
+            return x.equals(tree.getValue(node));
+        } else if (tree.isLabel(node, "lambda")) {
+            return false;
+        } else if (tree.isLabel(node, "->")) {
+            return isStrict(tree.getChild(node, 0), x, scope)
+                    || (isStrict(tree.getChild(node, 1), x, scope) && isStrict(tree.getChild(node, 2), x, scope));
+        } else if (tree.isLabel(node, "gamma")) {
+            int head = spineHead(node);
+            ArrayList<Integer> arguments = spineArguments(node);
+            for (int i = 0; i < arguments.size(); i++) {
+                int argument = arguments.get(i);
+                if (!isDelayed(argument, head, i, arguments.size(), scope) && isStrict(argument, x, scope)) {
+                    return true;
+                }
+            }
+            if (tree.isLabel(head, "lambda")) {
+                Scope bodyScope = letScope(head, arguments.get(0), scope);
+                return Scope.find(bodyScope, x) == Scope.find(scope, x) && isStrict(tree.getChild(head, 1), x, bodyScope);
+            }
+            return isStrict(head, x, scope);
+        }
+        for (int child = tree.getFirstChild(node); child != FlatTree.NONE; child = tree.getNextSibling(child)) {
+            if (isStrict(child, x, scope)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Scope of the body of a lambda applied to an argument: let/where bindings.
+     *
+     * @param lambda   Applied lambda node
+     * @param argument Argument node
+     * @param scope    Names visible at the application
+     * @return Names visible in the body of the lambda
+     */
+    private Scope letScope(int lambda, int argument, Scope scope) {
+        int parameter = tree.getChild(lambda, 0);
+        if (tree.isLabel(parameter, "id")) {
+            return new Scope(tree.getValue(parameter), functionOf(argument, scope), scope);
+        }
+        return shadow(scope, parameter);
+    }
+
+    /**
+     * Scope of the body of the lambda given to yStar: the recursive name refers to the body.
+     *
+     * @param recLambda Lambda node applied to yStar
+     * @param scope     Names visible at the application
+     * @return Names visible in the body of the lambda
+     */
+    private Scope recursiveScope(int recLambda, Scope scope) {
+        String name = tree.getValue(tree.getChild(recLambda, 0));
+        return new Scope(name, recursiveFunction(recLambda, scope), scope);
+    }
+
+    /**
+     * Function of a rec binding, whose body sees the rec name bound to the function itself.
+     *
+     * @param recLambda Lambda node applied to yStar
+     * @param scope     Names visible at the application
+     * @return Function of the body of the lambda; null if the body is not a lambda
+     */
+    private Function recursiveFunction(int recLambda, Scope scope) {
+        if (recursiveFunctions.containsKey(recLambda)) {
+            return recursiveFunctions.get(recLambda);
+        }
+        int body = tree.getChild(recLambda, 1);
+        Function function = null;
+        if (tree.isLabel(body, "lambda")) {
+            function = new Function(body, tree.getValue(tree.getChild(recLambda, 0)), scope);
+        }
+        recursiveFunctions.put(recLambda, function);
+        return function;
+    }
+
+    /**
+     * Function an expression evaluates to, if it is a lambda chain or a recursive lambda chain.
+     * The chain stops at the first body that is not a lambda.
+     *
+     * @param node  Expression node
+     * @param scope Names visible at the expression
+     * @return Function or null if not known
+     */
+    private Function functionOf(int node, Scope scope) {
+        if (functions.containsKey(node)) {
+            return functions.get(node);
+        }
+        Function function = null;
+        if (tree.isLabel(node, "lambda")) {
+            function = new Function(node, null, scope);
+        } else if (tree.isLabel(node, "gamma") && tree.isLabel(tree.getChild(node, 0), "yStar")
+                && isSimpleLambda(tree.getChild(node, 1))) {
+            function = recursiveFunction(tree.getChild(node, 1), scope);
+        }
+        functions.put(node, function);
+        return function;
+    }
+
+    /**
+     * @return Whether the node is a lambda with a single (non tuple) parameter
+     */
+    private boolean isSimpleLambda(int node) {
+        return tree.isLabel(node, "lambda") && tree.isLabel(tree.getChild(node, 0), "id");
+    }
+
+    /**
+     * Cheap arguments are evaluated eagerly since a thunk would cost more than the value.
+     *
+     * @return Whether the node is a literal or a lambda
+     */
+    private boolean isCheap(int node) {
+        switch (tree.getLabel(node)) {
+            case "int":
+            case "str":
+            case "true":
+            case "false":
+            case "nil":
+            case "dummy":
+            case "lambda":
+            case "yStar":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @return Number of arguments a builtin certainly evaluates; 0 if not a builtin
+     */
+    private static int builtinArity(String name) {
+        Builtin builtin = Builtins.function(name);
+        return builtin == null ? 0 : builtin.getArity();
+    }
+
+    /**
+     * @return Innermost rator of nested gamma nodes
+     */
+    private int spineHead(int gamma) {
+        int head = gamma;
+        while (tree.isLabel(head, "gamma")) {
+            head = tree.getChild(head, 0);
+        }
+        return head;
+    }
+
+    /**
+     * @return Rands of nested gamma nodes, in the order they are applied
+     */
+    private ArrayList<Integer> spineArguments(int gamma) {
+        ArrayList<Integer> arguments = new ArrayList<>();
+        for (int node = gamma; tree.isLabel(node, "gamma"); node = tree.getChild(node, 0)) {
+            arguments.add(0, tree.getChild(node, 1));
+        }
+        return arguments;
+    }
+
+    /**
+     * @param parameter Parameter node of a lambda (id or ,)
+     * @return Scope with the parameters bound to unknown values
+     */
+    private Scope shadow(Scope scope, int parameter) {
+        if (tree.isLabel(parameter, ",")) {
+            for (int child = tree.getFirstChild(parameter); child != FlatTree.NONE; child = tree.getNextSibling(child)) {
+                scope = new Scope(tree.getValue(child), null, scope);
+            }
+            return scope;
+        }
+        return new Scope(tree.getValue(parameter), null, scope);
+    }
+
+    /**
+     * Lambda chain with its body and the scope of the body.
+     * A null parameter is a tuple of parameters.
+     */
+    private class Function {
+        private final ArrayList<String> parameters = new ArrayList<>();
+        private final ArrayList<String> boundNames = new ArrayList<>();
+        private final int body;
+        private final Scope bodyScope;
+        private final boolean[] strict;
+        private final int[] checked;
+
+        /**
+         * @param lambda  First lambda of the chain
+         * @param recName Name bound to the function itself in its body, null if not recursive
+         * @param scope   Names visible at the function
+         */
+        Function(int lambda, String recName, Scope scope) {
+            Scope bodyScope = recName == null ? scope : new Scope(recName, this, scope);
+            int body = lambda;
+            while (tree.isLabel(body, "lambda")) {
+                int parameter = tree.getChild(body, 0);
+                if (tree.isLabel(parameter, "id")) {
+                    parameters.add(tree.getValue(parameter));
+                    boundNames.add(tree.getValue(parameter));
+                } else {
+                    // Tuple of parameters
+                    parameters.add(null);
+                    tree.forEachChild(parameter, child -> boundNames.add(tree.getValue(child)));
+                }
+                bodyScope = shadow(bodyScope, parameter);
+                body = tree.getChild(body, 1);
+            }
+            this.body = body;
+            this.bodyScope = bodyScope;
+            this.strict = new boolean[parameters.size()];
+            this.checked = new int[parameters.size()];
+            Arrays.fill(strict, true);
+        }
+
+        /**
+         * @param position  Position of the argument (0 indexed)
+         * @param arguments Number of arguments applied
+         * @return Whether a saturated application certainly evaluates the argument
+         */
+        boolean isStrictIn(int position, int arguments) {
+            if (position >= parameters.size() || position >= arguments) {
+                return false;
+            }
+            String parameter = parameters.get(position);
+            if (parameter == null) {
+                // Binding a tuple of parameters forces the argument
+                return true;
+            }
+            if (arguments < parameters.size()) {
+                return false;
+            }
+            if (strict[position] && checked[position] != round) {
+                // Checked once a round; cycles see the current assumption
+                checked[position] = round;
+                if (Collections.frequency(boundNames, parameter) != 1 || !isStrict(body, parameter, bodyScope)) {
+                    strict[position] = false;
+                    changed = true;
+                }
+            }
+            return strict[position];
+        }
+    }
+
+    /**
+     * Immutable list of visible names. A null function means the name is bound to an unknown value.
+     */
+    private static class Scope {
+        private final String name;
+        private final Function function;
+        private final Scope parent;
+
+        Scope(String name, Function function, Scope parent) {
+            this.name = name;
+            this.function = function;
+            this.parent = parent;
+        }
+
+        /**
+         * @return Innermost binding of the name or null if not bound
+         */
+        static Scope find(Scope scope, String name) {
+            for (Scope current = scope; current != null; current = current.parent) {
+                if (current.name.equals(name)) return current;
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package cse;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fixed size ring buffers of machine step events, one for each thread that runs a machine.
+ * <p>
+ * Each step is recorded as a rule identifier, the control and stack depths when the step starts and
+ * the current environment index, packed into a long and an int. Only the latest events are kept.
+ * A machine takes the buffer of the thread it is created on and records into it without locking;
+ * the machines of forked components and of thunks run on the thread that creates them, so every
+ * buffer has a single writer. The events of a thread stay in step order, but the order of events
+ * on different threads is not kept.
+ * The buffers are written in a binary format and decoded to text by {@link #decode}.
+ * <pre>
+ * int magic, int version, int buffers,
+ * per buffer: utf thread name, long total events, int stored events,
+ * stored events oldest first: long (rule 8 bits | control depth 28 bits | stack depth 28 bits), int environment
+ * </pre>
+ */
+public class Trace {
+    private static final int MAGIC = 0x52505452;
+    private static final int VERSION = 2;
+    private static final int DEPTH_BITS = 28;
+    private static final long MAX_DEPTH = (1L << DEPTH_BITS) - 1;
+
+    private final int capacity;
+    private final List<Buffer> buffers = new ArrayList<>();
+    private final ThreadLocal<Buffer> threadBuffer = ThreadLocal.withInitial(this::newBuffer);
+
+    /**
+     * @param capacity Number of latest events to keep on each thread, positive
+     */
+    public Trace(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return Buffer of the current thread, created on first use
+     */
+    Buffer buffer() {
+        return threadBuffer.get();
+    }
+
+    /**
+     * @return New buffer for the current thread
+     */
+    private synchronized Buffer newBuffer() {
+        Buffer buffer = new Buffer(Thread.currentThread().getName(), capacity);
+        buffers.add(buffer);
+        return buffer;
+    }
+
+    /**
+     * Write the buffered events of every thread, oldest first.
+     * Threads still running when the trace is dumped may have their latest events torn.
+     *
+     * @param path File to write
+     * @throws IOException If the file cannot be written
+     */
+    public synchronized void dump(String path) throws IOException {
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(buffers.size());
+            for (Buffer buffer : buffers) {
+                buffer.write(output);
+            }
+        }
+    }
+
+    /**
+     * Decode a dumped trace to text, one event per line, the events of each thread under its name.
+     * <pre>
+     * step rule control=depth stack=depth env=index
+     * </pre>
+     *
+     * @param path Dumped trace file
+     * @param out  Output for the text
+     * @throws IOException If the file cannot be read or is not a trace
+     */
+    public static void decode(String path, PrintStream out) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(path)))) {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                throw new IOException("Not a trace file: " + path);
+            }
+            int buffers = input.readInt();
+            for (int i = 0; i < buffers; i++) {
+                String thread = input.readUTF();
+                long total = input.readLong();
+                int stored = input.readInt();
+                out.printf("%s: %d steps, last %d recorded%n", thread, total, stored);
+                for (long event = total - stored; event < total; event++) {
+                    long step = input.readLong();
+                    int environment = input.readInt();
+                    out.printf("%d %s control=%d stack=%d env=%d%n", event + 1,
+                            Rules.name((int) (step >>> (2 * DEPTH_BITS))),
+                            (step >>> DEPTH_BITS) & MAX_DEPTH, step & MAX_DEPTH, environment);
+                }
+            }
+        }
+    }
+
+    /**
+     * Ring buffer of the steps of the machines on one thread.
+     */
+    static final class Buffer {
+        private final String thread;
+        private final long[] steps;
+        private final int[] environments;
+        private int next;
+        private long total;
+
+        /**
+         * @param thread   Name of the thread that records into the buffer
+         * @param capacity Number of latest events to keep
+         */
+        private Buffer(String thread, int capacity) {
+            this.thread = thread;
+            this.steps = new long[capacity];
+            this.environments = new int[capacity];
+        }
+
+        /**
+         * Record a step. Depths that do not fit are saturated.
+         * Only called from the thread that owns the buffer.
+         *
+         * @param rule         Rule identifier from {@link Rules}
+         * @param controlDepth Control size when the step starts
+         * @param stackDepth   Stack size when the step starts
+         * @param environment  Current environment index
+         */
+        void record(int rule, int controlDepth, int stackDepth, int environment) {
+            int slot = next;
+            steps[slot] = ((long) rule << (2 * DEPTH_BITS))
+                    | (Math.min(controlDepth, MAX_DEPTH) << DEPTH_BITS)
+                    | Math.min(stackDepth, MAX_DEPTH);
+            environments[slot] = environment;
+            next = slot + 1 == steps.length ? 0 : slot + 1;
+            total++;
+        }
+
+        /**
+         * @param output Output to write the thread name, the counts and the events to
+         * @throws IOException If the output cannot be written
+         */
+        private void write(DataOutputStream output) throws IOException {
+            long total = this.total;
+            int stored = (int) Math.min(total, steps.length);
+            output.writeUTF(thread);
+            output.writeLong(total);
+            output.writeInt(stored);
+            for (long event = total - stored; event < total; event++) {
+                int slot = (int) (event % steps.length);
+                output.writeLong(steps[slot]);
+                output.writeInt(environments[slot]);
+            }
+        }
+    }
+}
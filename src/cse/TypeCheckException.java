@@ -0,0 +1,14 @@
+package cse;
+
+import java.util.List;
+
+/**
+ * Exception on operations that type inference proves can never succeed, found before evaluation.
+ */
+public class TypeCheckException extends CseException {
+    private static final long serialVersionUID = 1L;
+
+    public TypeCheckException(List<String> errors) {
+        super(String.join(System.lineSeparator(), errors));
+    }
+}
@@ -0,0 +1,556 @@
+package cse;
+
+import cse.applicator.Builtin;
+import cse.applicator.Builtins;
+import tree.FlatTree;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Type inference over the standardized tree, with a dynamic type where the inference gives up.
+ * <p>
+ * Every expression has a type variable. Unification merges the variables of expressions whose values
+ * flow into each other: arguments into the parameters of known functions, bodies into the results of
+ * the applications, branches into their conditional. Merging two different types gives the dynamic
+ * type instead of an error, as does any value the inference does not follow, such as tuple elements
+ * and results of unknown functions. Functions are known when bound by let/where or rec, like in
+ * {@link ArityAnalysis}; the parameters of a known function that escapes (passed as an argument, put
+ * in a tuple, returned by a conditional) are dynamic.
+ * <p>
+ * Once everything is merged, operators whose operands are proven to have the types they need are
+ * given typed operators that skip the checks. Operators and builtins whose operands have a type they
+ * can never accept are type errors, reported before evaluation.
+ */
+class TypeInference {
+    private static final Map<String, Kind> builtinResults = new HashMap<>();
+    private static final Map<String, Kind> builtinOperands = new HashMap<>();
+
+    static {
+        builtinResults.put("Print", Kind.DUMMY);
+        builtinResults.put("Isstring", Kind.TRUTH);
+        builtinResults.put("Isinteger", Kind.TRUTH);
+        builtinResults.put("Istruthvalue", Kind.TRUTH);
+        builtinResults.put("Istuple", Kind.TRUTH);
+        builtinResults.put("Isfunction", Kind.TRUTH);
+        builtinResults.put("Null", Kind.TRUTH);
+        builtinResults.put("Order", Kind.INT);
+        builtinResults.put("Stern", Kind.STR);
+        builtinResults.put("Stem", Kind.STR);
+        builtinResults.put("ItoS", Kind.STR);
+        builtinResults.put("Conc", Kind.STR);
+        builtinResults.put("Substr", Kind.STR);
+        builtinResults.put("Join", Kind.STR);
+        builtinResults.put("IndexOf", Kind.INT);
+        builtinResults.put("neg", Kind.INT);
+        builtinResults.put("not", Kind.TRUTH);
+
+        builtinOperands.put("Order", Kind.TUPLE);
+        builtinOperands.put("Stern", Kind.STR);
+        builtinOperands.put("Stem", Kind.STR);
+        builtinOperands.put("ItoS", Kind.INT);
+        builtinOperands.put("Conc", Kind.STR);
+        builtinOperands.put("neg", Kind.INT);
+        builtinOperands.put("not", Kind.TRUTH);
+    }
+
+    private final FlatTree tree;
+    private final Map<Integer, Type[]> parameters = new HashMap<>();
+    private final Map<Integer, Type> results = new HashMap<>();
+    private final Set<Integer> escaped = new HashSet<>();
+    private final List<Check> checks = new ArrayList<>();
+    private final Map<Integer, Builtin> typedOperators = new HashMap<>();
+    private final Set<String> errors = new LinkedHashSet<>();
+
+    private TypeInference(FlatTree tree) {
+        this.tree = tree;
+    }
+
+    /**
+     * Infers the types of the tree.
+     *
+     * @param tree Standardized tree
+     * @param root Root of the subtree to infer
+     * @return Inference with the typed operators and the type errors
+     */
+    static TypeInference of(FlatTree tree, int root) {
+        TypeInference inference = new TypeInference(tree);
+        inference.escape(inference.infer(root, null));
+        for (Check check : inference.checks) {
+            inference.resolve(check);
+        }
+        return inference;
+    }
+
+    /**
+     * @return Operator builtin without type checks for each operator node whose operand types are proven
+     */
+    Map<Integer, Builtin> getTypedOperators() {
+        return typedOperators;
+    }
+
+    /**
+     * @return Descriptions of the operations that can never succeed, in tree order
+     */
+    List<String> getErrors() {
+        return new ArrayList<>(errors);
+    }
+
+    /**
+     * @param node  Expression node
+     * @param scope Names visible at the node
+     * @return What is known about the value of the expression
+     */
+    private Info infer(int node, Scope scope) {
+        switch (tree.getLabel(node)) {
+            case "int":
+                return new Info(Kind.INT);
+            case "str":
+                return new Info(Kind.STR);
+            case "true":
+            case "false":
+                return new Info(Kind.TRUTH);
+            case "nil":
+                return new Info(Kind.NIL);
+            case "dummy":
+                return new Info(Kind.DUMMY);
+            case "id":
+                return Scope.lookup(scope, tree.getValue(node));
+            case "lambda":
+                return function(node, scope);
+            case "gamma":
+                return application(node, scope);
+            case "tau":
+                return tuple(node, scope);
+            case "->":
+                return conditional(node, scope);
+            case "neg":
+            case "not":
+                return operation(node, scope, tree.isLabel(node, "neg") ? Kind.INT : Kind.TRUTH);
+            case "+":
+            case "-":
+            case "*":
+            case "/":
+            case "**":
+                return operation(node, scope, Kind.INT);
+            case "aug":
+                return operation(node, scope, Kind.TUPLE);
+        }
+        if (Builtins.isBinaryOperator(tree.getLabel(node))) {
+            return operation(node, scope, Kind.TRUTH);
+        }
+        tree.forEachChild(node, child -> escape(infer(child, scope)));
+        return new Info(Kind.DYNAMIC);
+    }
+
+    /**
+     * A lambda as a value. Its body is inferred once, with the parameters bound to their variables.
+     */
+    private Info function(int lambda, Scope scope) {
+        int parameter = tree.getChild(lambda, 0);
+        Type[] types = parametersOf(lambda);
+        Scope bodyScope = scope;
+        if (tree.isLabel(parameter, ",")) {
+            int child = tree.getFirstChild(parameter);
+            for (int i = 0; i < types.length; i++, child = tree.getNextSibling(child)) {
+                bodyScope = new Scope(tree.getValue(child), new Info(types[i]), bodyScope);
+            }
+        } else if (tree.isLabel(parameter, "id")) {
+            bodyScope = new Scope(tree.getValue(parameter), new Info(types[0]), bodyScope);
+        }
+        Info body = infer(tree.getChild(lambda, 1), bodyScope);
+        unify(resultOf(lambda), body.type);
+        if (!tree.isLabel(tree.getChild(lambda, 1), "lambda")) {
+            // A curried body is followed through the applications, anything else is not
+            escape(body);
+        }
+        return new Info(new Type(Kind.FUNCTION), lambda, null, 0, null);
+    }
+
+    private Info application(int node, Scope scope) {
+        int rator = tree.getChild(node, 0);
+        int rand = tree.getChild(node, 1);
+        if (tree.isLabel(rator, "lambda")) {
+            // let/where: the body sees the bound name as the argument
+            Info argument = infer(rand, scope);
+            return infer(tree.getChild(rator, 1), bind(tree.getChild(rator, 0), argument, scope));
+        }
+        if (tree.isLabel(rator, "yStar") && tree.isLabel(rand, "lambda") && tree.isLabel(tree.getChild(rand, 0), "id")) {
+            // rec: the name refers to the body of the rec lambda within it
+            int body = tree.getChild(rand, 1);
+            String name = tree.getValue(tree.getChild(rand, 0));
+            if (tree.isLabel(body, "lambda")) {
+                return function(body, new Scope(name, new Info(new Type(Kind.FUNCTION), body, null, 0, null), scope));
+            }
+            escape(infer(body, new Scope(name, new Info(Kind.DYNAMIC), scope)));
+            return new Info(Kind.DYNAMIC);
+        }
+        Info function = infer(rator, scope);
+        Info argument = infer(rand, scope);
+        if (function.lambda != FlatTree.NONE) {
+            return call(function.lambda, argument);
+        }
+        escape(argument);
+        if (function.builtin != null) {
+            String name = function.builtin.getLabel();
+            if (builtinOperands.containsKey(name)) {
+                checks.add(new Check(node, name, argument.type));
+            }
+            int applied = function.applied + 1;
+            if (applied < function.builtin.getArity()) {
+                return new Info(new Type(Kind.FUNCTION), FlatTree.NONE, function.builtin, applied, null);
+            }
+            return new Info(builtinResults.getOrDefault(name, Kind.DYNAMIC));
+        }
+        return new Info(Kind.DYNAMIC);
+    }
+
+    /**
+     * Application of a known function: the argument flows into the parameters.
+     * Calls through the parameters are not followed, so a function argument escapes.
+     */
+    private Info call(int lambda, Info argument) {
+        Type[] types = parametersOf(lambda);
+        if (tree.isLabel(tree.getChild(lambda, 0), ",")) {
+            if (argument.components != null && argument.components.size() == types.length) {
+                for (int i = 0; i < types.length; i++) {
+                    unify(types[i], argument.components.get(i).type);
+                }
+            } else {
+                for (Type type : types) {
+                    unify(type, new Type(Kind.DYNAMIC));
+                }
+            }
+        } else {
+            unify(types[0], argument.type);
+        }
+        escape(argument);
+        int body = tree.getChild(lambda, 1);
+        return new Info(resultOf(lambda), tree.isLabel(body, "lambda") ? body : FlatTree.NONE, null, 0, null);
+    }
+
+    /**
+     * @param parameter Parameter node of the applied lambda
+     * @param argument  Argument of the application
+     * @param scope     Names visible at the application
+     * @return Names visible in the body of the applied lambda
+     */
+    private Scope bind(int parameter, Info argument, Scope scope) {
+        if (tree.isLabel(parameter, "id")) {
+            return new Scope(tree.getValue(parameter), argument, scope);
+        }
+        if (tree.isLabel(parameter, ",")) {
+            int names = tree.getNumberOfChildren(parameter);
+            boolean known = argument.components != null && argument.components.size() == names;
+            int child = tree.getFirstChild(parameter);
+            for (int i = 0; i < names; i++, child = tree.getNextSibling(child)) {
+                Info component = known ? argument.components.get(i) : new Info(Kind.DYNAMIC);
+                scope = new Scope(tree.getValue(child), component, scope);
+            }
+        }
+        return scope;
+    }
+
+    private Info tuple(int node, Scope scope) {
+        List<Info> components = new ArrayList<>();
+        for (int child = tree.getFirstChild(node); child != FlatTree.NONE; child = tree.getNextSibling(child)) {
+            Info component = infer(child, scope);
+            escape(component);
+            components.add(component);
+        }
+        return new Info(new Type(Kind.TUPLE), FlatTree.NONE, null, 0, components);
+    }
+
+    private Info conditional(int node, Scope scope) {
+        Info condition = infer(tree.getChild(node, 0), scope);
+        checks.add(new Check(node, "->", condition.type));
+        Type result = new Type(null);
+        for (int i = 1; i <= 2; i++) {
+            Info branch = infer(tree.getChild(node, i), scope);
+            escape(branch);
+            unify(result, branch.type);
+        }
+        return new Info(result);
+    }
+
+    /**
+     * @param result Type of the result, which is only produced if the operands are accepted
+     */
+    private Info operation(int node, Scope scope, Kind result) {
+        Type[] operands = new Type[tree.getNumberOfChildren(node)];
+        int child = tree.getFirstChild(node);
+        for (int i = 0; i < operands.length; i++, child = tree.getNextSibling(child)) {
+            Info operand = infer(child, scope);
+            escape(operand);
+            operands[i] = operand.type;
+        }
+        checks.add(new Check(node, tree.getLabel(node), operands));
+        return new Info(result);
+    }
+
+    /**
+     * The value goes somewhere it is not followed. If it is a known function, nothing is known
+     * about its arguments any more, including those of the functions it returns.
+     */
+    private void escape(Info info) {
+        int lambda = info.lambda;
+        while (lambda != FlatTree.NONE && escaped.add(lambda)) {
+            for (Type type : parametersOf(lambda)) {
+                unify(type, new Type(Kind.DYNAMIC));
+            }
+            lambda = tree.isLabel(tree.getChild(lambda, 1), "lambda") ? tree.getChild(lambda, 1) : FlatTree.NONE;
+        }
+    }
+
+    private Type[] parametersOf(int lambda) {
+        return parameters.computeIfAbsent(lambda, key -> {
+            int parameter = tree.getChild(key, 0);
+            Type[] types = new Type[tree.isLabel(parameter, ",") ? tree.getNumberOfChildren(parameter) : 1];
+            for (int i = 0; i < types.length; i++) {
+                types[i] = new Type(null);
+            }
+            return types;
+        });
+    }
+
+    private Type resultOf(int lambda) {
+        return results.computeIfAbsent(lambda, key -> new Type(null));
+    }
+
+    private static void unify(Type a, Type b) {
+        Type rootA = a.find();
+        Type rootB = b.find();
+        if (rootA != rootB) {
+            rootB.parent = rootA;
+            rootA.kind = Kind.join(rootA.kind, rootB.kind);
+        }
+    }
+
+    /**
+     * Decide on an operation once all the types are merged.
+     */
+    private void resolve(Check check) {
+        Kind[] kinds = new Kind[check.operands.length];
+        for (int i = 0; i < kinds.length; i++) {
+            kinds[i] = check.operands[i].find().kind;
+        }
+        switch (check.operation) {
+            case "->":
+                expect(check, kinds[0], Kind.TRUTH);
+                return;
+            case "+":
+            case "-":
+            case "*":
+            case "/":
+            case "**":
+            case "neg":
+                typed(check, kinds, Kind.INT);
+                return;
+            case "or":
+            case "&":
+            case "not":
+                typed(check, kinds, Kind.TRUTH);
+                return;
+            case "aug":
+            case "Order":
+                expect(check, kinds[0], Kind.TUPLE, Kind.NIL);
+                return;
+            case "eq":
+            case "ne":
+                return;
+        }
+        if (tree.isLabel(check.node, check.operation) && kinds.length == 2) {
+            // Comparison of two integers or two strings
+            if (expect(check, kinds[0], Kind.INT, Kind.STR) && expect(check, kinds[1], Kind.INT, Kind.STR)) {
+                if (kinds[0] == kinds[1] && kinds[0] != null) {
+                    typedOperators.put(check.node, Builtins.typedOperator(check.operation, kinds[0].toString()));
+                } else if (Kind.isConcrete(kinds[0]) && Kind.isConcrete(kinds[1])) {
+                    errors.add(String.format("Operator %s cannot compare %s with %s", check.operation, kinds[0], kinds[1]));
+                }
+            }
+            return;
+        }
+        // Argument of a builtin function
+        expect(check, kinds[0], builtinOperands.get(check.operation));
+    }
+
+    /**
+     * Give the operator its typed builtin if all its operands are proven to have the type.
+     */
+    private void typed(Check check, Kind[] kinds, Kind type) {
+        boolean proven = true;
+        for (Kind kind : kinds) {
+            proven &= expect(check, kind, type) && kind == type;
+        }
+        if (proven) {
+            typedOperators.put(check.node, Builtins.typedOperator(check.operation, type.toString()));
+        }
+    }
+
+    /**
+     * @param kind    Inferred type of an operand, null if unknown
+     * @param allowed Types the operation accepts
+     * @return Whether the operand may have an accepted type; records an error if it cannot
+     */
+    private boolean expect(Check check, Kind kind, Kind... allowed) {
+        if (!Kind.isConcrete(kind)) {
+            return true;
+        }
+        for (Kind type : allowed) {
+            if (kind == type) return true;
+        }
+        if (check.operation.equals("->")) {
+            errors.add(String.format("Condition must be a truth value, found %s", kind.description));
+        } else if (tree.isLabel(check.node, check.operation)) {
+            errors.add(String.format("Operator %s cannot be applied to %s", check.operation, kind.description));
+        } else {
+            errors.add(String.format("%s cannot be applied to %s", check.operation, kind.description));
+        }
+        return false;
+    }
+
+    /**
+     * Types of values. The type of a variable that nothing flows into is null.
+     */
+    private enum Kind {
+        INT("int", "an int"),
+        STR("str", "a str"),
+        TRUTH("truth", "a truth value"),
+        TUPLE("tuple", "a tuple"),
+        NIL("nil", "nil"),
+        DUMMY("dummy", "dummy"),
+        FUNCTION("function", "a function"),
+        DYNAMIC("dynamic", "a value of any type");
+
+        private final String name;
+        private final String description;
+
+        Kind(String name, String description) {
+            this.name = name;
+            this.description = description;
+        }
+
+        /**
+         * @return Whether the type is neither unknown nor dynamic
+         */
+        static boolean isConcrete(Kind kind) {
+            return kind != null && kind != DYNAMIC;
+        }
+
+        /**
+         * @return Type of a variable both types flow into
+         */
+        static Kind join(Kind a, Kind b) {
+            if (a == null) return b;
+            if (b == null || a == b) return a;
+            return DYNAMIC;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**
+     * Type variable, merged with others by union-find.
+     */
+    private static class Type {
+        private Type parent;
+        private Kind kind;
+
+        Type(Kind kind) {
+            this.kind = kind;
+        }
+
+        Type find() {
+            Type root = this;
+            while (root.parent != null) {
+                root = root.parent;
+            }
+            for (Type current = this; current != root; ) {
+                Type next = current.parent;
+                current.parent = root;
+                current = next;
+            }
+            return root;
+        }
+    }
+
+    /**
+     * What is known about a value: its type variable, and the function (lambda node, NONE if not known),
+     * partially applied builtin or tuple components it is known to be.
+     */
+    private static class Info {
+        private final Type type;
+        private final int lambda;
+        private final Builtin builtin;
+        private final int applied;
+        private final List<Info> components;
+
+        Info(Kind kind) {
+            this(new Type(kind));
+        }
+
+        Info(Type type) {
+            this(type, FlatTree.NONE, null, 0, null);
+        }
+
+        Info(Type type, int lambda, Builtin builtin, int applied, List<Info> components) {
+            this.type = type;
+            this.lambda = lambda;
+            this.builtin = builtin;
+            this.applied = applied;
+            this.components = components;
+        }
+    }
+
+    /**
+     * Operation whose operand types are decided once everything is merged.
+     */
+    private static class Check {
+        private final int node;
+        private final String operation;
+        private final Type[] operands;
+
+        Check(int node, String operation, Type... operands) {
+            this.node = node;
+            this.operation = operation;
+            this.operands = operands;
+        }
+    }
+
+    /**
+     * Immutable list of visible names with what is known about their values.
+     */
+    private static class Scope {
+        private final String name;
+        private final Info info;
+        private final Scope parent;
+
+        Scope(String name, Info info, Scope parent) {
+            this.name = name;
+            this.info = info;
+            this.parent = parent;
+        }
+
+        /**
+         * @return Innermost binding of the name, the builtin of the name, or a dynamic value if it is not bound
+         */
+        static Info lookup(Scope scope, String name) {
+            for (Scope current = scope; current != null; current = current.parent) {
+                if (current.name.equals(name)) return current.info;
+            }
+            Builtin builtin = Builtins.function(name);
+            if (builtin != null) {
+                return new Info(new Type(Kind.FUNCTION), FlatTree.NONE, builtin, 0, null);
+            }
+            return new Info(Kind.DYNAMIC);
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package cse;
+
+import cse.element.Element;
+import cse.element.Value;
+import tree.AstException;
+import tree.AstParseException;
+import tree.Converters;
+import tree.FlatTree;
+import tree.TreeParser;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Watch mode: evaluates a program and evaluates it again whenever its file changes, recompiling
+ * only the top-level definitions that changed.
+ * <p>
+ * The file is an ast, or RPAL source (.rpal) that the front end parses. The top-level definitions
+ * are those of the outermost chain of let and where, in the order they are evaluated:
+ * <pre>
+ * let D1 in let D2 in E           D1, D2, E
+ * (E where D2) where D1           D1, D2, E
+ * </pre>
+ * Each definition and the final expression is standardized and generated on its own, after the
+ * control structures generated so far, and remembered by its ast. A change recompiles the parts
+ * whose ast is new; the others keep their control structures. Each run is a new machine that
+ * evaluates the definitions in turn, binding their names as a let would (as thunks when lazy),
+ * and then the final expression. Control structures of parts that are no longer used are dropped
+ * by compiling everything again once they outnumber the used ones.
+ * <p>
+ * Functions defined in one part are not known to the arity analysis of the others, so calls across
+ * definitions stay curried. Type checking, profiling, tracing and checkpoints do not apply.
+ */
+public class Watch {
+    /**
+     * Editors write a file in several steps; changes within this time are handled together.
+     */
+    private static final long SETTLE_MILLIS = 50;
+
+    private final Path file;
+    private final FrontEnd frontEnd;
+    private final Options options;
+    private final PrintStream out;
+    private final ArrayList<Stack<Value>> controlStructures = new ArrayList<>();
+    private final HashMap<String, Part> parts = new HashMap<>();
+    private int usedControlStructures;
+
+    /**
+     * @param fileName Ast or RPAL source file to watch
+     * @param options  Generation and evaluation options with the front end
+     * @param out      Stream for the compilation summaries and errors
+     */
+    public Watch(String fileName, Options options, PrintStream out) {
+        this.file = Paths.get(fileName).toAbsolutePath();
+        this.frontEnd = new FrontEnd(options.getFrontEnd());
+        this.options = options;
+        this.out = out;
+        options.setTypecheck(false);
+        options.setProfilePath(null);
+        options.setTrace(false);
+        options.setCheckpointPath(null);
+    }
+
+    /**
+     * Evaluate the program, then again on every change of the file, until interrupted.
+     *
+     * @throws IOException If the directory of the file cannot be watched
+     */
+    public void run() throws IOException {
+        try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+            file.getParent().register(watcher,
+                    StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            update();
+            while (true) {
+                WatchKey key = watcher.take();
+                boolean changed = changes(key);
+                Thread.sleep(SETTLE_MILLIS);
+                for (WatchKey more = watcher.poll(); more != null; more = watcher.poll()) {
+                    changed |= changes(more);
+                }
+                if (changed) {
+                    update();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return Whether the events of the key are about the watched file
+     */
+    private boolean changes(WatchKey key) {
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            changed |= file.getFileName().equals(event.context());
+        }
+        key.reset();
+        return changed;
+    }
+
+    /**
+     * Recompile the changed parts of the program and evaluate it.
+     */
+    private void update() {
+        try {
+            long start = System.nanoTime();
+            FlatTree tree = load();
+            if (tree == null) {
+                return;
+            }
+            if (controlStructures.size() > 2 * usedControlStructures) {
+                controlStructures.clear();
+                parts.clear();
+            }
+
+            List<Part> program = new ArrayList<>();
+            int recompiled = 0;
+            int body = tree.getRoot();
+            while (tree.isLabel(body, "let") || tree.isLabel(body, "where")) {
+                boolean let = tree.isLabel(body, "let");
+                int definition = tree.getChild(body, let ? 0 : 1);
+                body = tree.getChild(body, let ? 1 : 0);
+                String key = keyOf(tree, definition);
+                if (!parts.containsKey(key)) {
+                    parts.put(key, compileDefinition(tree, definition));
+                    recompiled++;
+                }
+                program.add(parts.get(key));
+            }
+            String key = keyOf(tree, body);
+            if (!parts.containsKey(key)) {
+                parts.put(key, compileExpression(tree, body));
+                recompiled++;
+            }
+            program.add(parts.get(key));
+
+            usedControlStructures = 0;
+            for (Part part : program) {
+                usedControlStructures += part.size;
+            }
+            out.printf("[%s: %d of %d parts recompiled in %.1f ms]%n", file.getFileName(), recompiled,
+                    program.size(), (System.nanoTime() - start) / 1e6);
+            evaluate(program);
+        } catch (AstParseException exception) {
+            out.println("Error occurred while parsing ast:");
+            out.println(exception.getMessage());
+        } catch (AstException exception) {
+            out.println("Error occurred while standardizing ast:");
+            out.println(exception.getMessage());
+        } catch (LimitExceededException exception) {
+            out.println("Evaluation stopped:");
+            out.println(exception.getMessage());
+        } catch (CseException exception) {
+            out.println("Error occurred while evaluating cse:");
+            out.println(exception.getMessage());
+        } catch (RuntimeException exception) {
+            out.println("Runtime Exception:");
+            out.println(exception.getMessage());
+        } catch (StackOverflowError error) {
+            out.println("Evaluation stopped:");
+            out.println("Recursion is too deep for the Java stack; run java with a larger -Xss");
+        } catch (IOException exception) {
+            out.println(exception.getMessage());
+        }
+    }
+
+    /**
+     * @return Ast of the file, null if it cannot be parsed yet
+     */
+    private FlatTree load() throws IOException {
+        FlatTree tree;
+        if (file.toString().endsWith(".rpal")) {
+            FrontEnd.Result result = frontEnd.parse(file);
+            if (result.getError() != null) {
+                out.println("Syntax error:");
+                out.println(result.getError());
+                return null;
+            }
+            tree = result.getTree();
+        } else {
+            tree = TreeParser.flatTreeFromFile(file.toString());
+        }
+        if (tree.getRoot() == FlatTree.NONE) {
+            out.println("The ast is empty: " + file);
+            return null;
+        }
+        return tree;
+    }
+
+    /**
+     * Evaluate the parts of a program on a new machine.
+     *
+     * @param program Definitions in evaluation order, then the final expression
+     */
+    private void evaluate(List<Part> program) {
+        Machine machine = new Machine(controlStructures, options);
+        int environment = 0;
+        for (Part part : program.subList(0, program.size() - 1)) {
+            Element value;
+            if (options.isLazy()) {
+                value = machine.delay(part.delta, environment);
+            } else {
+                value = machine.evaluate(part.delta, environment);
+            }
+            environment = machine.define(environment, part.names, value);
+        }
+        machine.evaluate(program.get(program.size() - 1).delta, environment);
+    }
+
+    /**
+     * Standardize a definition into X = E and generate E.
+     */
+    private Part compileDefinition(FlatTree tree, int definition) {
+        Converters.astToSt(tree, definition);
+        int parameter = tree.getChild(definition, 0);
+        String[] names;
+        if (tree.isLabel(parameter, ",")) {
+            names = new String[tree.getNumberOfChildren(parameter)];
+            for (int i = 0; i < names.length; i++) {
+                names[i] = tree.getValue(tree.getChild(parameter, i));
+            }
+        } else {
+            names = new String[]{tree.getValue(parameter)};
+        }
+        return compile(names, tree, tree.getChild(definition, 1));
+    }
+
+    private Part compileExpression(FlatTree tree, int expression) {
+        Converters.astToSt(tree, expression);
+        return compile(null, tree, expression);
+    }
+
+    private Part compile(String[] names, FlatTree tree, int root) {
+        int start = controlStructures.size();
+        int delta = ElementParser.appendControlStructures(tree, root, options, controlStructures);
+        return new Part(names, delta, controlStructures.size() - start);
+    }
+
+    /**
+     * @param node Root of an ast subtree, not standardized yet
+     * @return Text that is the same for equal subtrees
+     */
+    private static String keyOf(FlatTree tree, int node) {
+        StringBuilder key = new StringBuilder();
+        appendKey(tree, node, key);
+        return key.toString();
+    }
+
+    private static void appendKey(FlatTree tree, int node, StringBuilder key) {
+        key.append(tree.getLabel(node)).append('\0');
+        if (tree.getValue(node) != null) {
+            key.append(tree.getValue(node));
+        }
+        key.append('\0').append(tree.getNumberOfChildren(node)).append('\0');
+        tree.forEachChild(node, child -> appendKey(tree, child, key));
+    }
+
+    /**
+     * Compiled top-level definition or final expression.
+     */
+    private static class Part {
+        private final String[] names;
+        private final int delta;
+        private final int size;
+
+        /**
+         * @param names Names bound by a definition, null for the final expression
+         * @param delta Control structure of the definition value or expression
+         * @param size  Number of control structures generated for it
+         */
+        Part(String[] names, int delta, int size) {
+            this.names = names;
+            this.delta = delta;
+            this.size = size;
+        }
+    }
+}
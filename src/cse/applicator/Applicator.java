@@ -1,121 +1,95 @@
 package cse.applicator;
 
 import cse.CseException;
+import cse.LimitExceededException;
 import cse.element.Element;
+import cse.element.Thunk;
 import cse.element.Tuple;
 import cse.element.Value;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+
 /**
  * Applies functions and operators.
  */
 public class Applicator {
-    static final String[] binaryOps = {"+", "-", "/", "*", "**", "eq", "ne", "gr", "ge", "le",
-            ">", "<", ">=", "<=", "or", "&", "aug", "ls"};
-    static final String[] unaryOps = {"Print", "Isstring", "Isinteger", "Istruthvalue", "Isfunction", "Null",
-            "Istuple", "Order", "Stern", "Stem", "ItoS", "neg", "not", "$ConcPartial"};
+    private final Caller caller;
+    private long maxTupleLength;
+    private boolean monitored;
+    private long tupleBytes;
 
     /**
-     * Checks if binary operation is applicable
+     * @param caller Machine that applies RPAL functions given to higher order builtins
      */
-    public boolean isBinaryOperation(Element op) {
-        for (String binaryOp : binaryOps) {
-            if (op.isLabel(binaryOp)) return true;
-        }
-        return false;
+    public Applicator(Caller caller) {
+        this.caller = caller;
     }
 
     /**
-     * Checks if un-ary operation is applicable
+     * @return Maximum number of elements in a tuple, 0 if unlimited
      */
-    public boolean isUnaryOperation(Element op) {
-        for (String unaryOp : unaryOps) {
-            if (op.isLabel(unaryOp)) return true;
-        }
-        return false;
+    public long getMaxTupleLength() {
+        return maxTupleLength;
+    }
+
+    /**
+     * Limit the length of tuples built by aug and the tuple builtins. 0 means unlimited.
+     *
+     * @param maxTupleLength Maximum number of elements in a tuple
+     */
+    public void setMaxTupleLength(long maxTupleLength) {
+        this.maxTupleLength = maxTupleLength;
+    }
+
+    /**
+     * @return Whether builtin invocations and tuple allocations are counted for the metrics
+     */
+    public boolean isMonitored() {
+        return monitored;
+    }
+
+    /**
+     * @param monitored Whether builtin invocations and tuple allocations are counted for the metrics
+     */
+    public void setMonitored(boolean monitored) {
+        this.monitored = monitored;
+    }
+
+    /**
+     * @return Estimated bytes of the tuples built since the previous call, counted if monitored
+     */
+    public long takeTupleBytes() {
+        long bytes = tupleBytes;
+        tupleBytes = 0;
+        return bytes;
     }
 
     /**
      * Applies binary operators. VAL1 OP VAL2
+     * Operators are strict, so thunk operands are forced.
      */
     public Element apply(Element operation, Element operand1, Element operand2) {
-        switch (operation.getLabel()) {
-            case "+":
-                return add(operand1, operand2);
-            case "-":
-                return subtract(operand1, operand2);
-            case "*":
-                return multiply(operand1, operand2);
-            case "**":
-                return power(operand1, operand2);
-            case "/":
-                return divide(operand1, operand2);
-            case "or":
-                return or(operand1, operand2);
-            case "&":
-                return and(operand1, operand2);
-            case "eq":
-                return eq(operand1, operand2);
-            case "ne":
-                return ne(operand1, operand2);
-            case ">":
-            case "gr":
-                return gr(operand1, operand2);
-            case "<":
-            case "ls":
-                return ls(operand1, operand2);
-            case ">=":
-            case "ge":
-                return ge(operand1, operand2);
-            case "<=":
-            case "le":
-                return le(operand1, operand2);
-            case "aug":
-                return aug(operand1, operand2);
-            default:
-                throw new CseException("Unknown operator: " + operation);
-        }
-    }
-
-    /**
-     * Applies un-ary functions and operators. OP VAL
+        Builtin operator = operation instanceof Builtin ? (Builtin) operation : Builtins.operator(operation.getLabel());
+        if (operator == null || operator.getArity() != 2) {
+            throw new CseException("Unknown operator: " + operation);
+        }
+        return operator.invoke(this, operand1, operand2);
+    }
+
+    /**
+     * Applies un-ary functions and operators, builtins applied to some of their arguments and tuples. OP VAL
+     * Builtins are strict, so a thunk operand is forced.
      */
     public Element apply(Element operation, Element operand) {
-        switch (operation.getLabel()) {
-            case "Print":
-                return print(operand);
-            case "Isstring":
-                return isString(operand);
-            case "Isinteger":
-                return isInteger(operand);
-            case "Istruthvalue":
-                return isTruthValue(operand);
-            case "Istuple":
-                return isTuple(operand);
-            case "Isfunction":
-                return isFunction(operand);
-            case "Order":
-                return order(operand);
-            case "Null":
-                return isNull(operand);
-            case "Stern":
-                return stern(operand);
-            case "Stem":
-                return stem(operand);
-            case "Conc":
-                return conc(operand);
-            case "$ConcPartial":
-                return conc(operation, operand);
-            case "ItoS":
-                return iToS(operand);
-            case "neg":
-                return neg(operand);
-            case "not":
-                return not(operand);
-            case "tuple":
-                return extract((Tuple) operation, operand);
-            default:
-                throw new CseException("Unknown uop/variable: " + operation);
+        if (operation instanceof Builtin) {
+            return ((Builtin) operation).apply(this, operand);
+        } else if (operation instanceof PartialApplication) {
+            return ((PartialApplication) operation).apply(this, operand);
+        } else if (operation instanceof Tuple) {
+            return extract((Tuple) operation, Thunk.force(operand));
         }
+        throw new CseException("Unknown uop/variable: " + operation);
     }
 
     /**
@@ -135,7 +109,7 @@ public class Applicator {
                 int value1 = Integer.parseInt(element1.getValue());
                 int value2 = Integer.parseInt(element2.getValue());
                 int result = operation.operation(value1, value2);
-                return new Value("int", Integer.toString(result));
+                return Value.integer(result);
             }
         }
         throw new RuntimeException("Incompatible types in numerical operator. Expected int.");
@@ -167,10 +141,16 @@ public class Applicator {
      */
     private String covertToString(Element element) {
         if (element instanceof Tuple) {
-            Element[] subElements = ((Tuple) element).getValue();
-            String[] data = new String[subElements.length];
-            for (int i = 0; i < subElements.length; i++) {
-                data[i] = covertToString(subElements[i]);
+            Tuple tuple = (Tuple) element;
+            String[] data = new String[tuple.size()];
+            for (int i = 0; i < data.length; i++) {
+                if (tuple.isIntegers()) {
+                    data[i] = Integer.toString(tuple.getInt(i));
+                } else if (tuple.isTruthValues()) {
+                    data[i] = Boolean.toString(tuple.getTruth(i));
+                } else {
+                    data[i] = covertToString(tuple.get(i));
+                }
             }
             return "(" + String.join(", ", data) + ")";
         } else if (element instanceof Value) {
@@ -196,10 +176,7 @@ public class Applicator {
      * @return Boolean element
      */
     private Element booleanCondition(boolean condition) {
-        if (condition) {
-            return new Value("true");
-        }
-        return new Value("false");
+        return Value.truthValue(condition);
     }
 
     /**
@@ -225,88 +202,90 @@ public class Applicator {
     /**
      * @return Integer addition; operand1 + operand2
      */
-    private Element add(Element operand1, Element operand2) {
+    Element add(Element operand1, Element operand2) {
         return numericalOperator(operand1, operand2, Integer::sum);
     }
 
     /**
      * @return Integer subtraction; operand1 - operand2
      */
-    private Element subtract(Element operand1, Element operand2) {
+    Element subtract(Element operand1, Element operand2) {
         return numericalOperator(operand1, operand2, (a, b) -> a - b);
     }
 
     /**
      * @return Integer multiplication; operand1 * operand2
      */
-    private Element multiply(Element operand1, Element operand2) {
+    Element multiply(Element operand1, Element operand2) {
         return numericalOperator(operand1, operand2, (a, b) -> a * b);
     }
 
     /**
      * @return Integer raising to power; operand1 ^ operand2
      */
-    private Element power(Element operand1, Element operand2) {
+    Element power(Element operand1, Element operand2) {
         return numericalOperator(operand1, operand2, (a, b) -> (int) Math.pow(a, b));
     }
 
     /**
      * @return Integer division; operand1 / operand2
      */
-    private Element divide(Element operand1, Element operand2) {
+    Element divide(Element operand1, Element operand2) {
         return numericalOperator(operand1, operand2, (a, b) -> a / b);
     }
 
     /**
      * @return Prints into standard output and returns Dummy value
      */
-    private Element print(Element operand) {
+    Element print(Element operand) {
         System.out.println(covertToString(operand));
-        return new Value("dummy");
+        return Value.DUMMY;
     }
 
     /**
      * @return Whether operand is a string.
      */
-    private Element isString(Element operand) {
+    Element isString(Element operand) {
         return booleanCondition(operand.isLabel("str"));
     }
 
     /**
      * @return Whether operand is an int.
      */
-    private Element isInteger(Element operand) {
+    Element isInteger(Element operand) {
         return booleanCondition(operand.isLabel("int"));
     }
 
     /**
      * @return Whether operand is a truth value(true/false).
      */
-    private Element isTruthValue(Element operand) {
+    Element isTruthValue(Element operand) {
         return booleanCondition(operand.isLabel("true") || operand.isLabel("false"));
     }
 
     /**
      * @return Whether operand is a tuple.
      */
-    private Element isTuple(Element operand) {
+    Element isTuple(Element operand) {
         return booleanCondition(operand.isLabel("tuple"));
     }
 
     /**
      * @return Whether operand is a function/lambda node.
      */
-    private Element isFunction(Element operand) {
+    Element isFunction(Element operand) {
         return booleanCondition(operand.isLabel("lambda"));
     }
 
     /**
      * @return Number of elements in the tuple operand; len(operand)
      */
-    private Element order(Element operand) {
+    Element order(Element operand) {
         if (operand instanceof Tuple) {
-            int elements = ((Tuple) operand).getValue().length;
-            return new Value("int", Integer.toString(elements));
+            int elements = ((Tuple) operand).size();
+            return Value.integer(elements);
+        } else if (operand.isLabel("nil")) {
+            return Value.integer(0);
         }
         throw new RuntimeException("Order operation is only applicable for tuples");
     }
@@ -314,43 +293,34 @@ public class Applicator {
     /**
      * @return true if tuple is nil, false otherwise
      */
-    private Element isNull(Element operand) {
+    Element isNull(Element operand) {
         return  booleanCondition(operand.isLabel("nil"));
     }
 
     /**
      * @return All except first character in string operand; operand[1:]
      */
-    private Element stern(Element operand) {
+    Element stern(Element operand) {
         return substringOperation(operand, (str) -> str.substring(1));
     }
 
     /**
      * @return First character in string operand; operand[0]
      */
-    private Element stem(Element operand) {
+    Element stem(Element operand) {
         return substringOperation(operand, (str) -> str.substring(0, 1));
     }
 
     /**
-     * @return Partially applies string concatenation; (operand2) -> operand + operand2
+     * @return String concatenation; operand1 + operand2
      */
-    private Element conc(Element operand) {
-        if (operand instanceof Value && operand.isLabel("str")) {
-            return new Value("$ConcPartial", ((Value) operand).getValue());
+    Element conc(Element operand1, Element operand2) {
+        if (!(operand1 instanceof Value && operand1.isLabel("str"))) {
+            throw new RuntimeException("Conc operation is only applicable for strings");
         }
-        throw new RuntimeException("Conc operation is only applicable for strings");
-    }
-
-    /**
-     * @return Applies operand2 to string concatenation and returns result string; operand1 + operand.
-     */
-    private Element conc(Element operator, Element operand2) {
-        if (operator instanceof Value && operand2 instanceof Value) {
-            if (operator.isLabel("$ConcPartial") && operand2.isLabel("str")) {
-                String string = ((Value) operator).getValue() + ((Value) operand2).getValue();
-                return new Value("str", string);
-            }
+        if (operand2 instanceof Value && operand2.isLabel("str")) {
+            String string = ((Value) operand1).getValue() + ((Value) operand2).getValue();
+            return new Value("str", string);
         }
         throw new RuntimeException("Invalid application of Conc");
     }
@@ -358,7 +328,7 @@ public class Applicator {
     /**
      * @return Converted integer; int(a)
      */
-    private Element iToS(Element operand) {
+    Element iToS(Element operand) {
         if (operand instanceof Value && operand.isLabel("int")) {
             String value = ((Value) operand).getValue();
             return new Value("str", value);
@@ -369,14 +339,14 @@ public class Applicator {
     /**
      * @return Numerical negation; -operand
      */
-    private Element neg(Element operand) {
-        return multiply(new Value("int", "-1"), operand);
+    Element neg(Element operand) {
+        return multiply(Value.integer(-1), operand);
     }
 
     /**
      * @return Boolean not operator; !operand
      */
-    private Element not(Element operand) {
+    Element not(Element operand) {
         if (isTruthValue(operand).isLabel("true")) {
             return booleanCondition(operand.isLabel("false"));
         }
@@ -386,29 +356,33 @@ public class Applicator {
     /**
      * @return Boolean or operator; operand1 || operand2
      */
-    private Element or(Element operand1, Element operand2) {
+    Element or(Element operand1, Element operand2) {
         return binaryBooleanOperator(operand1, operand2, (a, b) -> a || b);
     }
 
     /**
      * @return Boolean and operator; operand1 && operand2
      */
-    private Element and(Element operand1, Element operand2) {
+    Element and(Element operand1, Element operand2) {
         return binaryBooleanOperator(operand1, operand2, (a, b) -> a && b);
     }
 
     /**
+     * Thunks inside tuple operands are forced here, since comparing tuples evaluates nothing.
+     *
      * @return Checks if two elements are similar; operand1 == operand2
      */
-    private Element eq(Element operand1, Element operand2) {
-        return booleanCondition(operand1.equals(operand2));
+    Element eq(Element operand1, Element operand2) {
+        return booleanCondition(Thunk.forceAll(operand1).equals(Thunk.forceAll(operand2)));
     }
 
     /**
+     * Thunks inside tuple operands are forced here, since comparing tuples evaluates nothing.
+     *
      * @return Checks if two elements are not similar; operand1 != operand2
      */
-    private Element ne(Element operand1, Element operand2) {
-        return not(eq(operand1, operand2));
+    Element ne(Element operand1, Element operand2) {
+        return booleanCondition(!Thunk.forceAll(operand1).equals(Thunk.forceAll(operand2)));
     }
 
     /**
@@ -419,57 +393,141 @@ public class Applicator {
      *
      * @return Comparison result; operand1 > operand2
      */
-    private Element gr(Element operand1, Element operand2) {
+    private boolean greater(Element operand1, Element operand2) {
         if (operand1 instanceof Value && operand2 instanceof Value) {
             if (operand1.isLabel("int") && operand2.isLabel("int")) {
                 int value1 = Integer.parseInt(((Value) operand1).getValue());
                 int value2 = Integer.parseInt(((Value) operand2).getValue());
-                boolean condition = value1 > value2;
-                return booleanCondition(condition);
+                return value1 > value2;
             } else if (operand1.isLabel("str") && operand2.isLabel("str")) {
                 String value1 = ((Value) operand1).getValue();
                 String value2 = ((Value) operand2).getValue();
-                boolean condition = value1.compareTo(value2) > 0;
-                return booleanCondition(condition);
+                return value1.compareTo(value2) > 0;
             }
         }
         throw new RuntimeException("Incompatible types for comparison operator.");
     }
 
+    /**
+     * @return Comparison result; operand1 > operand2
+     */
+    Element gr(Element operand1, Element operand2) {
+        return booleanCondition(greater(operand1, operand2));
+    }
+
     /**
      * @return Comparison result; operand1 < operand2
      */
-    private Element ls(Element operand1, Element operand2) {
-        return not(gr(operand1, operand2));
+    Element ls(Element operand1, Element operand2) {
+        return booleanCondition(!greater(operand1, operand2) && !operand1.equals(operand2));
     }
 
     /**
      * @return Comparison result; operand1 >= operand2
      */
-    private Element ge(Element operand1, Element operand2) {
-        return or(gr(operand1, operand2), eq(operand1, operand2));
+    Element ge(Element operand1, Element operand2) {
+        return booleanCondition(greater(operand1, operand2) || operand1.equals(operand2));
     }
 
     /**
      * @return Comparison result; operand1 <= operand2
      */
-    private Element le(Element operand1, Element operand2) {
-        return or(ls(operand1, operand2), eq(operand1, operand2));
+    Element le(Element operand1, Element operand2) {
+        return booleanCondition(!greater(operand1, operand2) || operand1.equals(operand2));
+    }
+
+    /*
+     * Typed operators, used where type inference has proven the types of the operands.
+     * They leave out the type checks and give the same results as the checked operators.
+     */
+
+    private static int intOf(Element operand) {
+        return Integer.parseInt(((Value) operand).getValue());
+    }
+
+    private static String strOf(Element operand) {
+        return ((Value) operand).getValue();
+    }
+
+    Element addInt(Element operand1, Element operand2) {
+        return Value.integer(intOf(operand1) + intOf(operand2));
+    }
+
+    Element subtractInt(Element operand1, Element operand2) {
+        return Value.integer(intOf(operand1) - intOf(operand2));
+    }
+
+    Element multiplyInt(Element operand1, Element operand2) {
+        return Value.integer(intOf(operand1) * intOf(operand2));
+    }
+
+    Element powerInt(Element operand1, Element operand2) {
+        return Value.integer((int) Math.pow(intOf(operand1), intOf(operand2)));
+    }
+
+    Element divideInt(Element operand1, Element operand2) {
+        return Value.integer(intOf(operand1) / intOf(operand2));
+    }
+
+    Element negInt(Element operand) {
+        return Value.integer(-1 * intOf(operand));
+    }
+
+    Element grInt(Element operand1, Element operand2) {
+        return booleanCondition(intOf(operand1) > intOf(operand2));
+    }
+
+    Element lsInt(Element operand1, Element operand2) {
+        return booleanCondition(intOf(operand1) < intOf(operand2));
+    }
+
+    Element geInt(Element operand1, Element operand2) {
+        return booleanCondition(intOf(operand1) >= intOf(operand2));
+    }
+
+    Element leInt(Element operand1, Element operand2) {
+        return booleanCondition(intOf(operand1) <= intOf(operand2));
+    }
+
+    Element grStr(Element operand1, Element operand2) {
+        return booleanCondition(strOf(operand1).compareTo(strOf(operand2)) > 0);
+    }
+
+    Element lsStr(Element operand1, Element operand2) {
+        return booleanCondition(strOf(operand1).compareTo(strOf(operand2)) < 0);
+    }
+
+    Element geStr(Element operand1, Element operand2) {
+        return booleanCondition(strOf(operand1).compareTo(strOf(operand2)) >= 0);
+    }
+
+    Element leStr(Element operand1, Element operand2) {
+        return booleanCondition(strOf(operand1).compareTo(strOf(operand2)) <= 0);
+    }
+
+    Element orTruth(Element operand1, Element operand2) {
+        return booleanCondition(operand1.isLabel("true") || operand2.isLabel("true"));
+    }
+
+    Element andTruth(Element operand1, Element operand2) {
+        return booleanCondition(operand1.isLabel("true") && operand2.isLabel("true"));
+    }
+
+    Element notTruth(Element operand) {
+        return booleanCondition(operand.isLabel("false"));
     }
 
     /**
      * @return Appends element to a tuple; operand1.append(operand2)
      */
-    private Element aug(Element operand1, Element operand2) {
+    Element aug(Element operand1, Element operand2) {
         if (operand1.isLabel("nil")) {
-            operand1 = new Tuple(new Element[]{});
+            checkTupleLength(1);
+            return allocated(new Tuple(new Element[]{operand2}));
         }
         if (operand1 instanceof Tuple) {
-            Element[] op1Tuple = ((Tuple) operand1).getValue();
-            Element[] combined = new Element[op1Tuple.length + 1];
-            System.arraycopy(op1Tuple, 0, combined, 0, op1Tuple.length);
-            combined[op1Tuple.length] = operand2;
-            return new Tuple(combined);
+            checkTupleLength(((Tuple) operand1).size() + 1);
+            return allocated(((Tuple) operand1).aug(operand2));
         }
         throw new RuntimeException("Aug operator is only compatible for tuples.");
     }
@@ -480,8 +538,237 @@ public class Applicator {
     private Element extract(Tuple operation, Element operand) {
         if (operand instanceof Value && operand.isLabel("int")) {
             int index = Integer.parseInt(((Value) operand).getValue());
-            return operation.getValue()[index - 1];
+            return operation.get(index - 1);
         }
         throw new RuntimeException("Tuple index must be an integer.");
     }
+
+    /**
+     * @return Function applied to each element; (f(operand[1]), .., f(operand[n]))
+     */
+    Element map(Element function, Element operand) {
+        Element[] elements = elementsOf(operand, "Map");
+        Element[] mapped = new Element[elements.length];
+        for (int i = 0; i < elements.length; i++) {
+            mapped[i] = caller.call(function, elements[i]);
+        }
+        return tupleOf(mapped);
+    }
+
+    /**
+     * @return Elements for which the predicate is true, in order
+     */
+    Element filter(Element predicate, Element operand) {
+        Element[] elements = elementsOf(operand, "Filter");
+        Element[] kept = new Element[elements.length];
+        int size = 0;
+        for (Element element : elements) {
+            Element condition = Thunk.force(caller.call(predicate, element));
+            if (!condition.isLabel("true") && !condition.isLabel("false")) {
+                throw new RuntimeException("Filter predicate must return a truth value");
+            }
+            if (condition.isLabel("true")) {
+                kept[size++] = element;
+            }
+        }
+        return tupleOf(Arrays.copyOf(kept, size));
+    }
+
+    /**
+     * @return Left fold of the curried function over the elements; f (.. (f initial operand[1]) ..) operand[n]
+     */
+    Element fold(Element function, Element initial, Element operand) {
+        Element[] elements = elementsOf(operand, "Fold");
+        Element accumulator = initial;
+        for (Element element : elements) {
+            Element partial = caller.call(function, accumulator);
+            accumulator = caller.call(partial, element);
+        }
+        return accumulator;
+    }
+
+    /**
+     * @return Integers from operand1 to operand2 inclusive; (operand1, .., operand2)
+     */
+    Element range(Element operand1, Element operand2) {
+        if (operand1 instanceof Value && operand1.isLabel("int") && operand2 instanceof Value && operand2.isLabel("int")) {
+            int from = Integer.parseInt(((Value) operand1).getValue());
+            int to = Integer.parseInt(((Value) operand2).getValue());
+            long length = Math.max((long) to - from + 1, 0);
+            checkTupleLength(length);
+            if (length > Integer.MAX_VALUE - 8) {
+                throw new RuntimeException("Range is too long: " + length);
+            }
+            if (length == 0) {
+                return Value.NIL;
+            }
+            int[] integers = new int[(int) length];
+            for (int i = 0; i < integers.length; i++) {
+                integers[i] = from + i;
+            }
+            return allocated(Tuple.ofIntegers(integers));
+        }
+        throw new RuntimeException("Range operation is only applicable for integers");
+    }
+
+    /**
+     * @return Elements of a tuple or characters of a string in reverse order
+     */
+    Element reverse(Element operand) {
+        if (operand instanceof Value && operand.isLabel("str")) {
+            return new Value("str", new StringBuilder(((Value) operand).getValue()).reverse().toString());
+        }
+        if (operand instanceof Tuple && ((Tuple) operand).isIntegers()) {
+            Tuple tuple = (Tuple) operand;
+            int[] reversed = new int[tuple.size()];
+            for (int i = 0; i < reversed.length; i++) {
+                reversed[i] = tuple.getInt(reversed.length - 1 - i);
+            }
+            return allocated(Tuple.ofIntegers(reversed));
+        }
+        Element[] elements = elementsOf(operand, "Reverse");
+        Element[] reversed = new Element[elements.length];
+        for (int i = 0; i < elements.length; i++) {
+            reversed[i] = elements[elements.length - 1 - i];
+        }
+        return tupleOf(reversed);
+    }
+
+    /**
+     * @return At most operand3 characters of the string starting at operand2 (1 indexed); operand1[i:i+n]
+     */
+    Element substr(Element operand1, Element operand2, Element operand3) {
+        if (operand1 instanceof Value && operand1.isLabel("str") && operand2 instanceof Value && operand2.isLabel("int")
+                && operand3 instanceof Value && operand3.isLabel("int")) {
+            String string = ((Value) operand1).getValue();
+            int start = Math.max(Integer.parseInt(((Value) operand2).getValue()) - 1, 0);
+            int length = Math.max(Integer.parseInt(((Value) operand3).getValue()), 0);
+            int begin = Math.min(start, string.length());
+            int end = (int) Math.min((long) begin + length, string.length());
+            return new Value("str", string.substring(begin, end));
+        }
+        throw new RuntimeException("Substr operation is only applicable for a string and two integers");
+    }
+
+    /**
+     * @return Strings of the tuple joined with the separator; operand2[1] + operand1 + .. + operand2[n]
+     */
+    Element join(Element separator, Element operand) {
+        if (separator instanceof Value && separator.isLabel("str")) {
+            Element[] elements = elementsOf(operand, "Join");
+            StringBuilder joined = new StringBuilder();
+            for (int i = 0; i < elements.length; i++) {
+                Element element = Thunk.force(elements[i]);
+                if (!(element instanceof Value && element.isLabel("str"))) {
+                    throw new RuntimeException("Join operation is only applicable for tuples of strings");
+                }
+                if (i > 0) joined.append(((Value) separator).getValue());
+                joined.append(((Value) element).getValue());
+            }
+            return new Value("str", joined.toString());
+        }
+        throw new RuntimeException("Join separator must be a string");
+    }
+
+    /**
+     * @return Parts of operand2 between occurrences of the separator, or its characters if the separator is empty
+     */
+    Element split(Element separator, Element operand) {
+        if (separator instanceof Value && separator.isLabel("str") && operand instanceof Value && operand.isLabel("str")) {
+            String delimiter = ((Value) separator).getValue();
+            String string = ((Value) operand).getValue();
+            ArrayList<Element> parts = new ArrayList<>();
+            if (delimiter.isEmpty()) {
+                for (int i = 0; i < string.length(); i++) {
+                    parts.add(new Value("str", string.substring(i, i + 1)));
+                }
+            } else {
+                int start = 0;
+                for (int end = string.indexOf(delimiter); end >= 0; end = string.indexOf(delimiter, start)) {
+                    parts.add(new Value("str", string.substring(start, end)));
+                    start = end + delimiter.length();
+                }
+                parts.add(new Value("str", string.substring(start)));
+            }
+            checkTupleLength(parts.size());
+            return tupleOf(parts.toArray(new Element[0]));
+        }
+        throw new RuntimeException("Split operation is only applicable for strings");
+    }
+
+    /**
+     * @return Position (1 indexed) of the first element equal to operand2 in the tuple,
+     * or of the substring operand2 in the string; 0 if there is none
+     */
+    Element indexOf(Element operand1, Element operand2) {
+        if (operand1 instanceof Value && operand1.isLabel("str")) {
+            if (operand2 instanceof Value && operand2.isLabel("str")) {
+                int index = ((Value) operand1).getValue().indexOf(((Value) operand2).getValue());
+                return Value.integer(index + 1);
+            }
+            throw new RuntimeException("IndexOf in a string needs a string to search for");
+        }
+        if (operand1 instanceof Tuple && ((Tuple) operand1).isIntegers() && operand2 instanceof Value && operand2.isLabel("int")) {
+            Tuple tuple = (Tuple) operand1;
+            int integer = Integer.parseInt(((Value) operand2).getValue());
+            for (int i = 0; i < tuple.size(); i++) {
+                if (tuple.getInt(i) == integer) {
+                    return Value.integer(i + 1);
+                }
+            }
+            return Value.integer(0);
+        }
+        Element[] elements = elementsOf(operand1, "IndexOf");
+        Element element = Thunk.forceAll(operand2);
+        for (int i = 0; i < elements.length; i++) {
+            if (Thunk.forceAll(elements[i]).equals(element)) {
+                return Value.integer(i + 1);
+            }
+        }
+        return Value.integer(0);
+    }
+
+    /**
+     * @param operand   Tuple or nil
+     * @param operation Name of the builtin for the error
+     * @return Elements of the tuple, none for nil
+     */
+    private Element[] elementsOf(Element operand, String operation) {
+        if (operand instanceof Tuple) {
+            return ((Tuple) operand).getValue();
+        } else if (operand.isLabel("nil")) {
+            return new Element[0];
+        }
+        throw new RuntimeException(operation + " operation is only applicable for tuples");
+    }
+
+    /**
+     * @return Tuple of the elements, nil if there are none
+     */
+    private Element tupleOf(Element[] elements) {
+        if (elements.length == 0) {
+            return Value.NIL;
+        }
+        return allocated(new Tuple(elements));
+    }
+
+    /**
+     * @param tuple Tuple just built
+     * @return The tuple, counted if monitored
+     */
+    private Tuple allocated(Tuple tuple) {
+        if (monitored) {
+            tupleBytes += tuple.getEstimatedSize();
+        }
+        return tuple;
+    }
+
+    /**
+     * @param length Length of a tuple about to be built
+     */
+    private void checkTupleLength(long length) {
+        if (maxTupleLength > 0 && length > maxTupleLength) {
+            throw new LimitExceededException(LimitExceededException.Limit.TUPLE_LENGTH, maxTupleLength);
+        }
+    }
 }
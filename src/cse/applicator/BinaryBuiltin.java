@@ -0,0 +1,10 @@
+package cse.applicator;
+
+import cse.element.Element;
+
+/**
+ * Interface definition for lambda closure of builtins taking two forced arguments
+ */
+interface BinaryBuiltin {
+    Element apply(Applicator applicator, Element operand1, Element operand2);
+}
@@ -0,0 +1,198 @@
+package cse.applicator;
+
+import cse.element.Element;
+import cse.element.Thunk;
+import cse.element.Value;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Builtin function or operator as a first class value.
+ * <p>
+ * A builtin has a fixed arity. Applied to fewer arguments it gives a {@link PartialApplication}
+ * that collects the rest; called with all of them it is invoked directly.
+ * Builtins are strict, so thunk arguments are forced. Invocations by a monitored applicator are
+ * counted and timed for the slow builtin flight recorder event.
+ * Checkpoints save a builtin by its key in the registry and read back the registered one.
+ */
+public class Builtin extends Value {
+    private static final long serialVersionUID = 1L;
+    private final int arity;
+    private final UnaryBuiltin unary;
+    private final BinaryBuiltin binary;
+    private final TernaryBuiltin ternary;
+    private final LongAdder calls = new LongAdder();
+
+    /**
+     * @param name  Name of the builtin, also its label
+     * @param unary Implementation
+     */
+    Builtin(String name, UnaryBuiltin unary) {
+        super(name);
+        this.arity = 1;
+        this.unary = unary;
+        this.binary = null;
+        this.ternary = null;
+    }
+
+    /**
+     * @param name   Name of the builtin, also its label
+     * @param binary Implementation
+     */
+    Builtin(String name, BinaryBuiltin binary) {
+        super(name);
+        this.arity = 2;
+        this.unary = null;
+        this.binary = binary;
+        this.ternary = null;
+    }
+
+    /**
+     * @param name    Name of the builtin, also its label
+     * @param ternary Implementation
+     */
+    Builtin(String name, TernaryBuiltin ternary) {
+        super(name);
+        this.arity = 3;
+        this.unary = null;
+        this.binary = null;
+        this.ternary = ternary;
+    }
+
+    /**
+     * @return Number of arguments the builtin takes
+     */
+    public int getArity() {
+        return arity;
+    }
+
+    /**
+     * @return Number of invocations by monitored applicators
+     */
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    /**
+     * Apply to one argument, curried.
+     *
+     * @param applicator Applicator of the machine
+     * @param operand    Argument
+     * @return Result, or a partial application if more arguments are needed
+     */
+    Element apply(Applicator applicator, Element operand) {
+        if (arity == 1) {
+            return invoke(applicator, operand);
+        }
+        return new PartialApplication(this, new Element[]{Thunk.force(operand)});
+    }
+
+    /**
+     * Invoke a builtin of arity 1.
+     *
+     * @param applicator Applicator of the machine
+     * @param operand    Argument
+     * @return Result
+     */
+    public Element invoke(Applicator applicator, Element operand) {
+        Element forced = Thunk.force(operand);
+        if (applicator.isMonitored()) {
+            SlowBuiltinEvent event = begin();
+            Element result = unary.apply(applicator, forced);
+            event.finish(getLabel());
+            return result;
+        }
+        return unary.apply(applicator, forced);
+    }
+
+    /**
+     * Invoke a builtin of arity 2.
+     *
+     * @param applicator Applicator of the machine
+     * @param operand1   First argument
+     * @param operand2   Second argument
+     * @return Result
+     */
+    public Element invoke(Applicator applicator, Element operand1, Element operand2) {
+        Element forced1 = Thunk.force(operand1);
+        Element forced2 = Thunk.force(operand2);
+        if (applicator.isMonitored()) {
+            SlowBuiltinEvent event = begin();
+            Element result = binary.apply(applicator, forced1, forced2);
+            event.finish(getLabel());
+            return result;
+        }
+        return binary.apply(applicator, forced1, forced2);
+    }
+
+    /**
+     * Invoke a builtin of arity 3.
+     *
+     * @param applicator Applicator of the machine
+     * @param operand1   First argument
+     * @param operand2   Second argument
+     * @param operand3   Third argument
+     * @return Result
+     */
+    public Element invoke(Applicator applicator, Element operand1, Element operand2, Element operand3) {
+        Element forced1 = Thunk.force(operand1);
+        Element forced2 = Thunk.force(operand2);
+        Element forced3 = Thunk.force(operand3);
+        if (applicator.isMonitored()) {
+            SlowBuiltinEvent event = begin();
+            Element result = ternary.apply(applicator, forced1, forced2, forced3);
+            event.finish(getLabel());
+            return result;
+        }
+        return ternary.apply(applicator, forced1, forced2, forced3);
+    }
+
+    /**
+     * Count a monitored invocation and start timing it.
+     */
+    private SlowBuiltinEvent begin() {
+        calls.increment();
+        SlowBuiltinEvent event = new SlowBuiltinEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Invoke with all the arguments.
+     *
+     * @param applicator Applicator of the machine
+     * @param operands   Arguments, as many as the arity
+     * @return Result
+     */
+    public Element invoke(Applicator applicator, Element[] operands) {
+        switch (arity) {
+            case 1:
+                return invoke(applicator, operands[0]);
+            case 2:
+                return invoke(applicator, operands[0], operands[1]);
+            default:
+                return invoke(applicator, operands[0], operands[1], operands[2]);
+        }
+    }
+
+    private Object writeReplace() {
+        return new Key(Builtins.keyOf(this));
+    }
+
+    /**
+     * Serialized form of a builtin.
+     */
+    private static class Key implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private final String key;
+
+        Key(String key) {
+            this.key = key;
+        }
+
+        private Object readResolve() {
+            return Builtins.byKey(key);
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package cse.applicator;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * Registry of the builtins.
+ * <p>
+ * Functions are bound by name in the primary environment. Operators are the builtins that the
+ * control structures apply directly (rules 6 and 7); neg and not are both. Map, Filter and Fold
+ * apply RPAL functions through the {@link Caller} of the applicator. Typed operators are
+ * variants of the operators for operands of a known type, which skip the type checks.
+ */
+public final class Builtins {
+    private static final HashMap<String, Builtin> functions = new HashMap<>();
+    private static final HashMap<String, Builtin> operators = new HashMap<>();
+    private static final HashMap<String, Builtin> typedOperators = new HashMap<>();
+    private static final IdentityHashMap<Builtin, String> keys = new IdentityHashMap<>();
+
+    static {
+        function(new Builtin("Print", Applicator::print));
+        function(new Builtin("Isstring", Applicator::isString));
+        function(new Builtin("Isinteger", Applicator::isInteger));
+        function(new Builtin("Istruthvalue", Applicator::isTruthValue));
+        function(new Builtin("Istuple", Applicator::isTuple));
+        function(new Builtin("Isfunction", Applicator::isFunction));
+        function(new Builtin("Null", Applicator::isNull));
+        function(new Builtin("Order", Applicator::order));
+        function(new Builtin("Stern", Applicator::stern));
+        function(new Builtin("Stem", Applicator::stem));
+        function(new Builtin("ItoS", Applicator::iToS));
+        function(new Builtin("Conc", Applicator::conc));
+        function(new Builtin("Map", Applicator::map));
+        function(new Builtin("Filter", Applicator::filter));
+        function(new Builtin("Fold", Applicator::fold));
+        function(new Builtin("Range", Applicator::range));
+        function(new Builtin("Reverse", Applicator::reverse));
+        function(new Builtin("Substr", Applicator::substr));
+        function(new Builtin("Join", Applicator::join));
+        function(new Builtin("Split", Applicator::split));
+        function(new Builtin("IndexOf", Applicator::indexOf));
+        operator(function(new Builtin("neg", Applicator::neg)));
+        operator(function(new Builtin("not", Applicator::not)));
+
+        operator(new Builtin("+", Applicator::add));
+        operator(new Builtin("-", Applicator::subtract));
+        operator(new Builtin("*", Applicator::multiply));
+        operator(new Builtin("**", Applicator::power));
+        operator(new Builtin("/", Applicator::divide));
+        operator(new Builtin("or", Applicator::or));
+        operator(new Builtin("&", Applicator::and));
+        operator(new Builtin("eq", Applicator::eq));
+        operator(new Builtin("ne", Applicator::ne));
+        operator(new Builtin("gr", Applicator::gr));
+        operator(new Builtin(">", Applicator::gr));
+        operator(new Builtin("ls", Applicator::ls));
+        operator(new Builtin("<", Applicator::ls));
+        operator(new Builtin("ge", Applicator::ge));
+        operator(new Builtin(">=", Applicator::ge));
+        operator(new Builtin("le", Applicator::le));
+        operator(new Builtin("<=", Applicator::le));
+        operator(new Builtin("aug", Applicator::aug));
+
+        typed("int", new Builtin("+", Applicator::addInt));
+        typed("int", new Builtin("-", Applicator::subtractInt));
+        typed("int", new Builtin("*", Applicator::multiplyInt));
+        typed("int", new Builtin("**", Applicator::powerInt));
+        typed("int", new Builtin("/", Applicator::divideInt));
+        typed("int", new Builtin("neg", Applicator::negInt));
+        typed("int", new Builtin("gr", Applicator::grInt), new Builtin(">", Applicator::grInt));
+        typed("int", new Builtin("ls", Applicator::lsInt), new Builtin("<", Applicator::lsInt));
+        typed("int", new Builtin("ge", Applicator::geInt), new Builtin(">=", Applicator::geInt));
+        typed("int", new Builtin("le", Applicator::leInt), new Builtin("<=", Applicator::leInt));
+        typed("str", new Builtin("gr", Applicator::grStr), new Builtin(">", Applicator::grStr));
+        typed("str", new Builtin("ls", Applicator::lsStr), new Builtin("<", Applicator::lsStr));
+        typed("str", new Builtin("ge", Applicator::geStr), new Builtin(">=", Applicator::geStr));
+        typed("str", new Builtin("le", Applicator::leStr), new Builtin("<=", Applicator::leStr));
+        typed("truth", new Builtin("or", Applicator::orTruth));
+        typed("truth", new Builtin("&", Applicator::andTruth));
+        typed("truth", new Builtin("not", Applicator::notTruth));
+    }
+
+    private Builtins() {
+    }
+
+    private static Builtin function(Builtin builtin) {
+        functions.put(builtin.getLabel(), builtin);
+        keys.put(builtin, "function " + builtin.getLabel());
+        return builtin;
+    }
+
+    private static void operator(Builtin builtin) {
+        operators.put(builtin.getLabel(), builtin);
+        keys.putIfAbsent(builtin, "operator " + builtin.getLabel());
+    }
+
+    private static void typed(String type, Builtin... builtins) {
+        for (Builtin builtin : builtins) {
+            typedOperators.put(builtin.getLabel() + " " + type, builtin);
+            keys.put(builtin, "typed " + builtin.getLabel() + " " + type);
+        }
+    }
+
+    /**
+     * @param builtin Registered builtin
+     * @return Key that identifies the builtin, typed operators included
+     */
+    static String keyOf(Builtin builtin) {
+        return keys.get(builtin);
+    }
+
+    /**
+     * @param key Key from {@link #keyOf}
+     * @return Registered builtin of the key
+     */
+    static Builtin byKey(String key) {
+        String[] kindAndLabel = key.split(" ", 2);
+        switch (kindAndLabel[0]) {
+            case "function":
+                return functions.get(kindAndLabel[1]);
+            case "operator":
+                return operators.get(kindAndLabel[1]);
+            default:
+                return typedOperators.get(kindAndLabel[1]);
+        }
+    }
+
+    /**
+     * @return Builtin functions bound in the primary environment
+     */
+    public static Collection<Builtin> functions() {
+        return Collections.unmodifiableCollection(functions.values());
+    }
+
+    /**
+     * @return Every builtin function, operator and typed operator
+     */
+    public static Collection<Builtin> all() {
+        // Builtins equal by label, so typed operators are told apart by identity
+        Set<Builtin> all = Collections.newSetFromMap(new IdentityHashMap<>());
+        all.addAll(functions.values());
+        all.addAll(operators.values());
+        all.addAll(typedOperators.values());
+        return all;
+    }
+
+    /**
+     * @param name Name in the primary environment
+     * @return Builtin function of the name, null if there is none
+     */
+    public static Builtin function(String name) {
+        return functions.get(name);
+    }
+
+    /**
+     * @param label Label of an operator node
+     * @return Operator builtin of the label, null if it is not an operator
+     */
+    public static Builtin operator(String label) {
+        return operators.get(label);
+    }
+
+    /**
+     * Operators whose operand types are proven do not need to check them.
+     *
+     * @param label Label of an operator node
+     * @param type  Type of the operands: int, str or truth
+     * @return Operator builtin of the label without type checks, null if there is none for the type
+     */
+    public static Builtin typedOperator(String label, String type) {
+        return typedOperators.get(label + " " + type);
+    }
+
+    /**
+     * @param label Label of a node or element
+     * @return Whether the label is a binary operator
+     */
+    public static boolean isBinaryOperator(String label) {
+        Builtin operator = operators.get(label);
+        return operator != null && operator.getArity() == 2;
+    }
+}
@@ -0,0 +1,10 @@
+package cse.applicator;
+
+import cse.element.Element;
+
+/**
+ * Interface definition for the machine applying RPAL functions on behalf of higher order builtins
+ */
+public interface Caller {
+    Element call(Element function, Element argument);
+}
@@ -0,0 +1,41 @@
+package cse.applicator;
+
+import cse.element.Element;
+import cse.element.Thunk;
+import cse.element.Value;
+
+/**
+ * Builtin applied to some of its arguments. Labelled $NamePartial, like $ConcPartial.
+ */
+public class PartialApplication extends Value {
+    private static final long serialVersionUID = 1L;
+    private final Builtin builtin;
+    private final Element[] operands;
+
+    /**
+     * @param builtin  Applied builtin
+     * @param operands Forced arguments so far, fewer than the arity
+     */
+    PartialApplication(Builtin builtin, Element[] operands) {
+        super("$" + builtin.getLabel() + "Partial");
+        this.builtin = builtin;
+        this.operands = operands;
+    }
+
+    /**
+     * Apply to the next argument.
+     *
+     * @param applicator Applicator of the machine
+     * @param operand    Next argument
+     * @return Result, or a partial application if more arguments are needed
+     */
+    Element apply(Applicator applicator, Element operand) {
+        Element[] combined = new Element[operands.length + 1];
+        System.arraycopy(operands, 0, combined, 0, operands.length);
+        combined[operands.length] = Thunk.force(operand);
+        if (combined.length == builtin.getArity()) {
+            return builtin.invoke(applicator, combined);
+        }
+        return new PartialApplication(builtin, combined);
+    }
+}
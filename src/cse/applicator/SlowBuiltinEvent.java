@@ -0,0 +1,32 @@
+package cse.applicator;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight recorder event for a builtin invocation that takes longer than the threshold,
+ * such as Map over a long tuple. Higher order builtins include the functions they apply.
+ */
+@Name("rpal.SlowBuiltin")
+@Label("Slow Builtin")
+@Category("RPAL")
+@Threshold("10 ms")
+class SlowBuiltinEvent extends jdk.jfr.Event {
+    @Label("Builtin")
+    private String builtin;
+
+    /**
+     * End the timing and commit the event if it took longer than the threshold.
+     *
+     * @param builtin Name of the builtin
+     */
+    void finish(String builtin) {
+        end();
+        if (shouldCommit()) {
+            this.builtin = builtin;
+            commit();
+        }
+    }
+}
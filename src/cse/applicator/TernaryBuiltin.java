@@ -0,0 +1,10 @@
+package cse.applicator;
+
+import cse.element.Element;
+
+/**
+ * Interface definition for lambda closure of builtins taking three forced arguments
+ */
+interface TernaryBuiltin {
+    Element apply(Applicator applicator, Element operand1, Element operand2, Element operand3);
+}
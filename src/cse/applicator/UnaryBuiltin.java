@@ -0,0 +1,10 @@
+package cse.applicator;
+
+import cse.element.Element;
+
+/**
+ * Interface definition for lambda closure of builtins taking one forced argument
+ */
+interface UnaryBuiltin {
+    Element apply(Applicator applicator, Element operand);
+}
@@ -1,10 +1,12 @@
 package cse.element;
 
+import java.io.Serializable;
 
 /**
- * Element in the stack.
+ * Element in the stack. Elements are serializable so that machine checkpoints can save them.
  */
-public abstract class Element {
+public abstract class Element implements Serializable {
+    private static final long serialVersionUID = 1L;
     private final String label;
 
     Element(String label) {
@@ -0,0 +1,157 @@
+package cse.element;
+
+import cse.CseException;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Memoized delayed computation used by lazy evaluation.
+ * The computation runs at most once, on the first force.
+ */
+public class Thunk extends Element {
+    private static final long serialVersionUID = 1L;
+    private Supplier<Element> computation;
+    private Element value;
+    private boolean forcing;
+
+    /**
+     * Create a thunk with thunk label.
+     *
+     * @param computation Computation evaluating the delayed expression
+     */
+    public Thunk(Supplier<Element> computation) {
+        super("thunk");
+        this.computation = computation;
+    }
+
+    /**
+     * Evaluate the computation if not done already.
+     *
+     * @return Value of the delayed expression
+     */
+    public synchronized Element force() {
+        if (value == null) {
+            if (forcing) {
+                throw new CseException("Value depends on itself");
+            }
+            forcing = true;
+            value = force(computation.get());
+            computation = null;
+        }
+        return value;
+    }
+
+    /**
+     * @return Computation of the thunk, null once it has its value
+     */
+    public synchronized Supplier<Element> getComputation() {
+        return computation;
+    }
+
+    /**
+     * Start forcing the thunk on a machine that runs the computation itself, so forcing a chain
+     * of thunks does not nest Java calls. The machine passes the value to {@link #complete}.
+     *
+     * @return Whether the thunk still needs its value; false if it already has one
+     */
+    public synchronized boolean begin() {
+        if (value != null) {
+            return false;
+        }
+        if (forcing) {
+            throw new CseException("Value depends on itself");
+        }
+        forcing = true;
+        return true;
+    }
+
+    /**
+     * Finish forcing the thunk started by {@link #begin}.
+     *
+     * @param value Value of the computation
+     * @return Value of the thunk
+     */
+    public synchronized Element complete(Element value) {
+        this.value = force(value);
+        computation = null;
+        return this.value;
+    }
+
+    /**
+     * Force the element if it is a thunk.
+     *
+     * @param element Element which may be a thunk
+     * @return Element itself or the value of the thunk
+     */
+    public static Element force(Element element) {
+        if (element instanceof Thunk) {
+            return ((Thunk) element).force();
+        }
+        return element;
+    }
+
+    /**
+     * Force the element and, if it is a tuple, every thunk reachable through its elements,
+     * so that it can be compared or hashed. Shared sub tuples are visited once.
+     *
+     * @param element Element which may be a thunk or hold thunks
+     * @return Element itself or the value of the thunk
+     */
+    public static Element forceAll(Element element) {
+        element = force(element);
+        if (!(element instanceof Tuple)) {
+            return element;
+        }
+        Set<Tuple> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        ArrayDeque<Tuple> pending = new ArrayDeque<>();
+        pending.push((Tuple) element);
+        while (!pending.isEmpty()) {
+            Tuple tuple = pending.pop();
+            if (tuple.isIntegers() || tuple.isTruthValues() || !visited.add(tuple)) {
+                continue;
+            }
+            for (int i = 0; i < tuple.size(); i++) {
+                Element value = force(tuple.get(i));
+                if (value instanceof Tuple) {
+                    pending.push((Tuple) value);
+                }
+            }
+        }
+        return element;
+    }
+
+    /**
+     * Value of the element without evaluating anything.
+     *
+     * @param element Element which may be a thunk
+     * @return Element itself or the value of the forced thunk
+     * @throws IllegalStateException If the element is a thunk that has not been forced
+     */
+    public static Element forced(Element element) {
+        if (element instanceof Thunk) {
+            Element value = ((Thunk) element).getValue();
+            if (value == null) {
+                throw new IllegalStateException("Thunk has not been forced");
+            }
+            return value;
+        }
+        return element;
+    }
+
+    /**
+     * @return Value of the computation, null if it has not run
+     */
+    private synchronized Element getValue() {
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        if (value == null) return getLabel();
+        return value.toString();
+    }
+}
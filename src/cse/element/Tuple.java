@@ -1,12 +1,28 @@
 package cse.element;
 
+import java.util.ArrayDeque;
 import java.util.Arrays;
 
 /**
  * Tuple for storing multiple elements.
+ * <p>
+ * Tuples whose elements are all integers are stored as an int[], and tuples of truth values
+ * as packed bits; other tuples keep an array of elements. The representation is chosen when the
+ * tuple is built and changes to the generic one when an element of another type is appended.
+ * Elements of specialized tuples are only boxed when they are taken out one by one.
  */
 public class Tuple extends Element {
+    private static final long serialVersionUID = 1L;
+    private static final long NOT_INTEGER = Long.MIN_VALUE;
+    private static final int INT_LABEL_HASH = "int".hashCode();
+    private static final int SHALLOW_SIZE = 40;
+    private static final int ARRAY_HEADER_SIZE = 16;
+
     private final Element[] value;
+    private final int[] integers;
+    private final long[] truths;
+    private final int size;
+    private volatile int hash;
 
     /**
      * Create a tuple element with tuple label.
@@ -14,32 +30,304 @@ public class Tuple extends Element {
      * @param value Tuple of elements
      */
     public Tuple(Element[] value) {
+        super("tuple");
+        this.size = value.length;
+        this.integers = integersOf(value);
+        this.truths = integers == null ? truthsOf(value) : null;
+        this.value = integers == null && truths == null ? value : null;
+    }
+
+    private Tuple(Element[] value, int[] integers, long[] truths, int size) {
         super("tuple");
         this.value = value;
+        this.integers = integers;
+        this.truths = truths;
+        this.size = size;
+    }
+
+    /**
+     * Create a tuple of integers.
+     *
+     * @param integers Elements, kept by the tuple
+     * @return Tuple element
+     */
+    public static Tuple ofIntegers(int[] integers) {
+        return new Tuple(null, integers, null, integers.length);
+    }
+
+    /**
+     * @return Number of elements.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return Whether the elements are stored as ints.
+     */
+    public boolean isIntegers() {
+        return integers != null;
+    }
+
+    /**
+     * @return Whether the elements are stored as packed truth values.
+     */
+    public boolean isTruthValues() {
+        return truths != null;
+    }
+
+    /**
+     * @return Estimated heap size of the tuple and its array, not counting the elements it refers to
+     */
+    public long getEstimatedSize() {
+        // ints and compressed references take 4 bytes; arrays are 8 byte aligned
+        long array = truths != null ? 8L * truths.length : 4L * size;
+        return SHALLOW_SIZE + ((ARRAY_HEADER_SIZE + array + 7) & ~7);
+    }
+
+    /**
+     * @param index Index of the element, from 0
+     * @return Integer element of a tuple of integers, without boxing
+     */
+    public int getInt(int index) {
+        return integers[index];
+    }
+
+    /**
+     * @param index Index of the element, from 0
+     * @return Truth value element of a tuple of truth values, without boxing
+     */
+    public boolean getTruth(int index) {
+        if (index < 0 || index >= size) {
+            throw new ArrayIndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+        }
+        return (truths[index >> 6] & 1L << index) != 0;
+    }
+
+    /**
+     * @param index Index of the element, from 0
+     * @return Element at the index, boxed if the tuple is specialized
+     */
+    public Element get(int index) {
+        if (integers != null) {
+            return Value.integer(integers[index]);
+        } else if (truths != null) {
+            return Value.truthValue(getTruth(index));
+        }
+        return value[index];
     }
 
     /**
-     * Get the tuples inside the element.
+     * Get the tuples inside the element. Elements of a specialized tuple are boxed into a new array.
      */
     public Element[] getValue() {
-        return value;
+        if (value != null) {
+            return value;
+        }
+        Element[] elements = new Element[size];
+        for (int i = 0; i < size; i++) {
+            elements[i] = get(i);
+        }
+        return elements;
+    }
+
+    /**
+     * Append an element, keeping the representation if the element fits it.
+     *
+     * @param element Element to append
+     * @return New tuple with the element at the end
+     */
+    public Tuple aug(Element element) {
+        long integer = integers != null ? integerOf(element) : NOT_INTEGER;
+        if (integer != NOT_INTEGER) {
+            int[] combined = Arrays.copyOf(integers, size + 1);
+            combined[size] = (int) integer;
+            return new Tuple(null, combined, null, size + 1);
+        } else if (truths != null && isTruthValue(element)) {
+            long[] combined = Arrays.copyOf(truths, words(size + 1));
+            if (element.isLabel("true")) combined[size >> 6] |= 1L << size;
+            return new Tuple(null, null, combined, size + 1);
+        } else if (value != null) {
+            Element[] combined = Arrays.copyOf(value, size + 1);
+            combined[size] = element;
+            return new Tuple(combined, null, null, size + 1);
+        }
+        Element[] combined = Arrays.copyOf(getValue(), size + 1);
+        combined[size] = element;
+        return new Tuple(combined, null, null, size + 1);
+    }
+
+    /**
+     * @return Elements as ints, null if they are not all integers that fit an int
+     */
+    private static int[] integersOf(Element[] elements) {
+        if (elements.length == 0) return null;
+        int[] integers = new int[elements.length];
+        for (int i = 0; i < elements.length; i++) {
+            long integer = integerOf(elements[i]);
+            if (integer == NOT_INTEGER) return null;
+            integers[i] = (int) integer;
+        }
+        return integers;
+    }
+
+    /**
+     * @return Elements as packed bits, null if they are not all truth values
+     */
+    private static long[] truthsOf(Element[] elements) {
+        if (elements.length == 0) return null;
+        long[] truths = new long[words(elements.length)];
+        for (int i = 0; i < elements.length; i++) {
+            if (!isTruthValue(elements[i])) return null;
+            if (elements[i].isLabel("true")) truths[i >> 6] |= 1L << i;
+        }
+        return truths;
+    }
+
+    /**
+     * @return Value of an integer element, NOT_INTEGER if it is not an integer that fits an int
+     */
+    private static long integerOf(Element element) {
+        if (!(element instanceof Value && element.isLabel("int"))) return NOT_INTEGER;
+        try {
+            return Integer.parseInt(((Value) element).getValue());
+        } catch (NumberFormatException e) {
+            return NOT_INTEGER;
+        }
     }
 
+    private static boolean isTruthValue(Element element) {
+        return element instanceof Value && (element.isLabel("true") || element.isLabel("false"));
+    }
+
+    /**
+     * @return Number of longs holding the given number of bits
+     */
+    private static int words(int bits) {
+        return (bits + 63) >> 6;
+    }
+
+    /**
+     * Compares element by element without recursion, so deeply nested tuples cannot overflow the
+     * Java stack. Shared sub tuples are skipped and tuples with different cached hashes differ.
+     * <p>
+     * Nothing is evaluated: thunk elements must have been forced, as {@link Thunk#forceAll} does,
+     * and an unforced one is an {@link IllegalStateException}.
+     */
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
-        Tuple that = (Tuple) o;
-        return Arrays.equals(value, that.value);
+        ArrayDeque<Tuple> left = new ArrayDeque<>();
+        ArrayDeque<Tuple> right = new ArrayDeque<>();
+        left.push(this);
+        right.push((Tuple) o);
+        while (!left.isEmpty()) {
+            Tuple a = left.pop();
+            Tuple b = right.pop();
+            if (a == b) continue;
+            if (a.size != b.size) return false;
+            if (a.hash != 0 && b.hash != 0 && a.hash != b.hash) return false;
+            if (a.integers != null && b.integers != null) {
+                if (!Arrays.equals(a.integers, b.integers)) return false;
+                continue;
+            }
+            if (a.truths != null && b.truths != null) {
+                if (!Arrays.equals(a.truths, b.truths)) return false;
+                continue;
+            }
+            for (int i = 0; i < a.size; i++) {
+                Element x = Thunk.forced(a.get(i));
+                Element y = Thunk.forced(b.get(i));
+                if (x == y) continue;
+                if (x instanceof Tuple && y instanceof Tuple) {
+                    left.push((Tuple) x);
+                    right.push((Tuple) y);
+                } else if (!x.equals(y)) {
+                    return false;
+                }
+            }
+        }
+        return true;
     }
 
+    /**
+     * The hash is computed once, children first without recursion, and kept since tuples are immutable.
+     * It matches the hash of a tuple holding the same elements in another representation.
+     * <p>
+     * Like {@link #equals}, it evaluates nothing and needs the thunk elements forced. Tuples are
+     * shared by forked machines, so the cache is volatile and 0 means not computed yet; threads
+     * that race compute the same hash.
+     */
     @Override
     public int hashCode() {
-        return Arrays.hashCode(value);
+        int h = hash;
+        if (h == 0) {
+            ArrayDeque<Tuple> pending = new ArrayDeque<>();
+            pending.push(this);
+            while (!pending.isEmpty()) {
+                Tuple tuple = pending.peek();
+                boolean ready = true;
+                for (int i = 0; tuple.value != null && i < tuple.size; i++) {
+                    Element element = Thunk.forced(tuple.value[i]);
+                    if (element instanceof Tuple && ((Tuple) element).hash == 0) {
+                        pending.push((Tuple) element);
+                        ready = false;
+                    }
+                }
+                if (ready) {
+                    pending.pop();
+                    tuple.hash = tuple.elementsHash();
+                }
+            }
+            h = hash;
+        }
+        return h;
+    }
+
+    /**
+     * @return Hash of the elements, whose sub tuples already have their hash; never 0
+     */
+    private int elementsHash() {
+        int result = 1;
+        for (int i = 0; i < size; i++) {
+            int elementHash;
+            if (integers != null) {
+                elementHash = 31 * INT_LABEL_HASH + decimalHash(integers[i]);
+            } else if (truths != null) {
+                elementHash = Value.truthValue(getTruth(i)).hashCode();
+            } else {
+                elementHash = Thunk.forced(value[i]).hashCode();
+            }
+            result = 31 * result + elementHash;
+        }
+        return result == 0 ? 1 : result;
+    }
+
+    /**
+     * @return Hash of the decimal string of the integer, without building the string
+     */
+    private static int decimalHash(int integer) {
+        if (integer == Integer.MIN_VALUE) {
+            return Integer.toString(integer).hashCode();
+        }
+        int hash = 0;
+        if (integer < 0) {
+            hash = '-';
+            integer = -integer;
+        }
+        int divisor = 1;
+        while (integer / divisor >= 10) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            hash = 31 * hash + ('0' + integer / divisor % 10);
+        }
+        return hash;
     }
 
     @Override
     public String toString() {
-        return Arrays.toString(value);
+        return Arrays.toString(getValue());
     }
 }
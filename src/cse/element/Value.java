@@ -8,6 +8,22 @@ import java.util.Objects;
  * Value which will store all elements except tuples.
  */
 public class Value extends Element {
+    private static final long serialVersionUID = 1L;
+    public static final Value TRUE = new Value("true");
+    public static final Value FALSE = new Value("false");
+    public static final Value NIL = new Value("nil");
+    public static final Value DUMMY = new Value("dummy");
+
+    private static final int MIN_CACHED_INTEGER = -128;
+    private static final int MAX_CACHED_INTEGER = 1023;
+    private static final Value[] integers = new Value[MAX_CACHED_INTEGER - MIN_CACHED_INTEGER + 1];
+
+    static {
+        for (int i = 0; i < integers.length; i++) {
+            integers[i] = new Value("int", Integer.toString(i + MIN_CACHED_INTEGER));
+        }
+    }
+
     private final String value;
 
     /**
@@ -34,21 +50,62 @@ public class Value extends Element {
         this.value = node.getValue();
     }
 
+    /**
+     * @return Canonical true or false element
+     */
+    public static Value truthValue(boolean condition) {
+        return condition ? TRUE : FALSE;
+    }
+
+    /**
+     * @return Int element of the integer, shared for small integers
+     */
+    public static Value integer(int integer) {
+        if (integer >= MIN_CACHED_INTEGER && integer <= MAX_CACHED_INTEGER) {
+            return integers[integer - MIN_CACHED_INTEGER];
+        }
+        return new Value("int", Integer.toString(integer));
+    }
+
     public String getValue() {
         return value;
     }
 
+    /**
+     * Canonical constants and small integers read from a checkpoint are shared again.
+     */
+    private Object readResolve() {
+        if (value == null) {
+            switch (getLabel()) {
+                case "true":
+                    return TRUE;
+                case "false":
+                    return FALSE;
+                case "nil":
+                    return NIL;
+                case "dummy":
+                    return DUMMY;
+            }
+        } else if (isLabel("int")) {
+            int integer = Integer.parseInt(value);
+            if (integer >= MIN_CACHED_INTEGER && integer <= MAX_CACHED_INTEGER) {
+                return integers[integer - MIN_CACHED_INTEGER];
+            }
+        }
+        return this;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         Value that = (Value) o;
-        return Objects.equals(value, that.value);
+        return isLabel(that.getLabel()) && Objects.equals(value, that.value);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(value);
+        return 31 * getLabel().hashCode() + Objects.hashCode(value);
     }
 
     @Override
@@ -4,6 +4,8 @@ package tree;
  * Exception when standardizing the abstract syntax tree.
  */
 public class AstException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
     AstException(String message) {
         super(message);
     }
@@ -0,0 +1,12 @@
+package tree;
+
+/**
+ * Exception when a line of the ast text is not a node of the tree.
+ */
+public class AstParseException extends AstException {
+    private static final long serialVersionUID = 1L;
+
+    AstParseException(String message) {
+        super(message);
+    }
+}
@@ -1,9 +1,48 @@
 package tree;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
 /**
  * Helper class to convert ast to st.
  */
 public class Converters {
+    /**
+     * Subtrees of at most this many nodes are standardized by a single task in a parallel standardization.
+     */
+    public static final int PARALLEL_THRESHOLD = 1 << 14;
+    /**
+     * Labels of the nodes the rules add.
+     */
+    private static final String[] ADDED_LABELS = {"gamma", "lambda", "=", ",", "tau", "yStar"};
+
+    /**
+     * Converts ast to st.
+     * <p>
+     * The tree is standardized as a {@link FlatTree} and the node is replaced by the result.
+     *
+     * @param node Node of the subtree to standardize.
+     */
+    public static void astToSt(Node node) {
+        FlatTree tree = FlatTree.of(node);
+        astToSt(tree, tree.getRoot());
+        node.replaceWith(tree.toNode(tree.getRoot()));
+    }
+
+    /**
+     * Converts ast to st.
+     *
+     * @param tree Tree to standardize in place.
+     */
+    public static void astToSt(FlatTree tree) {
+        if (tree.getRoot() != FlatTree.NONE) {
+            astToSt(tree, tree.getRoot());
+        }
+    }
+
     /**
      * Converts ast to st.
      * <p>
@@ -11,29 +50,235 @@ public class Converters {
      * Not standardizing -> Nodes <br/>
      * Not standardizing tau Nodes <br/>
      * Not standardizing , Nodes
+     * <p>
+     * Children are standardized before their parents. The nodes are visited in that order from
+     * an explicit stack, so deep trees do not overflow the call stack.
      *
-     * @param node Node of the subtree to standardize.
+     * @param tree Tree to standardize in place.
+     * @param node Node of the subtree to standardize, which stays its root.
      */
-    public static void astToSt(Node node) {
-        // Ast -> st conversion
-        node.forEachChild(Converters::astToSt);
-
-        if (node.isLabel("let")) {
-            stForLet(node);
-        } else if (node.isLabel("where")) {
-            stForWhere(node);
-        } else if (node.isLabel("function_form")) {
-            stForFuncForm(node);
-        } else if (node.isLabel("and")) {
-            stForAnd(node);
-        } else if (node.isLabel("rec")) {
-            stForRec(node);
-        } else if (node.isLabel("lambda")) {
-            stForLambda(node);
-        } else if (node.isLabel("within")) {
-            stForWithin(node);
-        } else if (node.isLabel("@")) {
-            stForAt(node);
+    public static void astToSt(FlatTree tree, int node) {
+        standardizeSubtree(tree, node, new Block(tree));
+    }
+
+    /**
+     * Converts ast to st, standardizing subtrees of {@link #PARALLEL_THRESHOLD} nodes in parallel.
+     *
+     * @param tree Tree to standardize in place.
+     */
+    public static void astToStParallel(FlatTree tree) {
+        astToStParallel(tree, PARALLEL_THRESHOLD);
+    }
+
+    /**
+     * Converts ast to st, standardizing independent subtrees in parallel.
+     * <p>
+     * Each rewrite only changes a node and its children, so disjoint subtrees can be standardized
+     * at the same time. A sizing pass finds the size of every subtree and the number of nodes its
+     * standardization adds. Subtrees of at most threshold nodes are grouped into fork-join tasks of
+     * about threshold nodes, and each task adds its nodes in a range of indices reserved for it.
+     * The nodes above those subtrees are standardized once the tasks are done, children first.
+     * The result is the same tree as the sequential pass, with the added nodes at other indices.
+     *
+     * @param tree      Tree to standardize in place.
+     * @param threshold Number of nodes of a subtree below which it is standardized by a single task
+     */
+    public static void astToStParallel(FlatTree tree, int threshold) {
+        int root = tree.getRoot();
+        if (root == FlatTree.NONE) {
+            return;
+        }
+        int[] order = preorder(tree, root);
+        int[] sizes = new int[tree.size()];
+        int[] added = new int[tree.size()];
+        for (int i = order.length - 1; i >= 0; i--) {
+            int node = order[i];
+            sizes[node] = 1;
+            added[node] = addedBy(tree, node, sizes);
+            for (int child = tree.getFirstChild(node); child != FlatTree.NONE; child = tree.getNextSibling(child)) {
+                sizes[node] += sizes[child];
+                added[node] += added[child];
+            }
+        }
+        if (sizes[root] <= threshold) {
+            standardizeRange(tree, order, 0, order.length, new Block(tree));
+            return;
+        }
+
+        // Split the preorder: nodes of larger subtrees are upper nodes, the smaller subtrees are
+        // ranges of the preorder that are grouped into tasks
+        tree.intern(ADDED_LABELS);
+        List<StandardizeTask> tasks = new ArrayList<>();
+        int[] upper = new int[64];
+        int upperCount = 0;
+        int upperAdded = 0;
+        int[] ranges = new int[64];
+        int rangesSize = 0;
+        int batchSize = 0;
+        int batchAdded = 0;
+        for (int i = 0; i < order.length; ) {
+            int node = order[i];
+            if (sizes[node] > threshold) {
+                if (upperCount == upper.length) {
+                    upper = Arrays.copyOf(upper, upperCount * 2);
+                }
+                upper[upperCount++] = node;
+                upperAdded += added[node];
+                for (int child = tree.getFirstChild(node); child != FlatTree.NONE; child = tree.getNextSibling(child)) {
+                    upperAdded -= added[child];
+                }
+                i++;
+                continue;
+            }
+            if (rangesSize == ranges.length) {
+                ranges = Arrays.copyOf(ranges, rangesSize * 2);
+            }
+            ranges[rangesSize++] = i;
+            ranges[rangesSize++] = i + sizes[node];
+            batchSize += sizes[node];
+            batchAdded += added[node];
+            i += sizes[node];
+            if (batchSize >= threshold || i == order.length) {
+                int[] taskRanges = Arrays.copyOf(ranges, rangesSize);
+                tasks.add(new StandardizeTask(tree, order, taskRanges, tree.reserve(batchAdded), batchAdded));
+                rangesSize = 0;
+                batchSize = 0;
+                batchAdded = 0;
+            }
+        }
+        Block block = new Block(tree, tree.reserve(upperAdded), upperAdded);
+
+        ForkJoinTask.invokeAll(tasks);
+        // Upper nodes are in preorder, so parents come before their children
+        for (int i = upperCount - 1; i >= 0; i--) {
+            standardize(tree, upper[i], block);
+        }
+        block.expectUsed();
+    }
+
+    /**
+     * Standardize the nodes of a subtree, children first.
+     */
+    private static void standardizeSubtree(FlatTree tree, int node, Block block) {
+        int[] order = preorder(tree, node);
+        standardizeRange(tree, order, 0, order.length, block);
+    }
+
+    /**
+     * Standardize the nodes of a range of a preorder, children first.
+     *
+     * @param order Nodes in preorder
+     * @param start First node of the range
+     * @param end   Node after the range
+     */
+    private static void standardizeRange(FlatTree tree, int[] order, int start, int end, Block block) {
+        // Parents come before their children, so the reverse order has children first
+        for (int i = end - 1; i >= start; i--) {
+            standardize(tree, order[i], block);
+        }
+    }
+
+    /**
+     * @return Nodes of the subtree, each before its children
+     */
+    private static int[] preorder(FlatTree tree, int node) {
+        int[] stack = new int[64];
+        int[] order = new int[64];
+        int stackSize = 0;
+        int orderSize = 0;
+        stack[stackSize++] = node;
+        while (stackSize > 0) {
+            int current = stack[--stackSize];
+            if (orderSize == order.length) {
+                order = Arrays.copyOf(order, orderSize * 2);
+            }
+            order[orderSize++] = current;
+            for (int child = tree.getFirstChild(current); child != FlatTree.NONE; child = tree.getNextSibling(child)) {
+                if (stackSize == stack.length) {
+                    stack = Arrays.copyOf(stack, stackSize * 2);
+                }
+                stack[stackSize++] = child;
+            }
+        }
+        return Arrays.copyOf(order, orderSize);
+    }
+
+    /**
+     * Number of nodes the rule of a node adds, from the tree before the node is standardized.
+     *
+     * @param sizes Sizes of the subtrees below the node
+     */
+    private static int addedBy(FlatTree tree, int node, int[] sizes) {
+        switch (tree.getLabel(node)) {
+            case "function_form":
+            case "lambda":
+                // A lambda for each parameter but the first, or for each parameter of a function form
+                return Math.max(tree.getNumberOfChildren(node) - 2, 0);
+            case "and":
+            case "within":
+                return 2;
+            case "@":
+                return 1;
+            case "rec":
+                // gamma, yStar, lambda and a copy of the names
+                int definition = tree.getFirstChild(node);
+                return 3 + (definition == FlatTree.NONE ? 0 : namesSize(tree, definition, sizes));
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * @param definition Definition before it is standardized
+     * @param sizes      Sizes of the subtrees below the definition
+     * @return Number of nodes of X once the definition is standardized into X = E
+     */
+    private static int namesSize(FlatTree tree, int definition, int[] sizes) {
+        int first = tree.getFirstChild(definition);
+        if (first == FlatTree.NONE) {
+            return 0;
+        }
+        switch (tree.getLabel(definition)) {
+            case "=":
+                return sizes[first];
+            case "function_form":
+                return 1;
+            case "and":
+                int size = 1;
+                for (int child = first; child != FlatTree.NONE; child = tree.getNextSibling(child)) {
+                    size += namesSize(tree, child, sizes);
+                }
+                return size;
+            case "rec":
+                return namesSize(tree, first, sizes);
+            case "within":
+                int second = tree.getNextSibling(first);
+                return second == FlatTree.NONE ? 0 : namesSize(tree, second, sizes);
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Standardize a node whose children are standardized.
+     */
+    private static void standardize(FlatTree tree, int node, Block block) {
+        if (tree.isLabel(node, "let")) {
+            stForLet(tree, node);
+        } else if (tree.isLabel(node, "where")) {
+            stForWhere(tree, node);
+        } else if (tree.isLabel(node, "function_form")) {
+            stForFuncForm(tree, node, block);
+        } else if (tree.isLabel(node, "and")) {
+            stForAnd(tree, node, block);
+        } else if (tree.isLabel(node, "rec")) {
+            stForRec(tree, node, block);
+        } else if (tree.isLabel(node, "lambda")) {
+            stForLambda(tree, node, block);
+        } else if (tree.isLabel(node, "within")) {
+            stForWithin(tree, node, block);
+        } else if (tree.isLabel(node, "@")) {
+            stForAt(tree, node, block);
         }
     }
 
@@ -47,28 +292,25 @@ public class Converters {
      * X  E               X   P
      * </pre>
      *
+     * @param tree     Tree being standardized
      * @param rootNode Root Node
      **/
-    private static void stForLet(Node rootNode) {
-        expectLabel(rootNode, "let");
-        expectChildren(rootNode, 2);
-        Node eqNode = rootNode.getChild(0);
-        Node pNode = rootNode.getChild(1);
+    private static void stForLet(FlatTree tree, int rootNode) {
+        expectLabel(tree, rootNode, "let");
+        expectChildren(tree, rootNode, 2);
+        int eqNode = tree.getChild(rootNode, 0);
+        int pNode = tree.getChild(rootNode, 1);
 
-        expectLabel(eqNode, "=");
-        expectChildren(eqNode, 2);
-        Node xNode = eqNode.getChild(0);
-        Node eNode = eqNode.getChild(1);
+        expectLabel(tree, eqNode, "=");
+        expectChildren(tree, eqNode, 2);
+        int xNode = tree.getChild(eqNode, 0);
+        int eNode = tree.getChild(eqNode, 1);
 
         // Reorganize tree
-        rootNode.setLabel("gamma");
-        eqNode.setLabel("lambda");
-        rootNode.clearChildren();
-        rootNode.addChild(eqNode);
-        rootNode.addChild(eNode);
-        eqNode.clearChildren();
-        eqNode.addChild(xNode);
-        eqNode.addChild(pNode);
+        tree.setLabel(rootNode, "gamma");
+        tree.setLabel(eqNode, "lambda");
+        tree.setChildren(rootNode, eqNode, eNode);
+        tree.setChildren(eqNode, xNode, pNode);
     }
 
     /**
@@ -81,29 +323,25 @@ public class Converters {
      *    X E        X    P
      * </pre>
      *
+     * @param tree     Tree being standardized
      * @param rootNode Root Node
      **/
-    private static void stForWhere(Node rootNode) {
-        expectLabel(rootNode, "where");
-        expectChildren(rootNode, 2);
-        Node pNode = rootNode.getChild(0);
-        Node eqNode = rootNode.getChild(1);
+    private static void stForWhere(FlatTree tree, int rootNode) {
+        expectLabel(tree, rootNode, "where");
+        expectChildren(tree, rootNode, 2);
+        int pNode = tree.getChild(rootNode, 0);
+        int eqNode = tree.getChild(rootNode, 1);
 
-        expectLabel(eqNode, "=");
-        expectChildren(eqNode, 2);
-        Node xNode = eqNode.getChild(0);
-        Node eNode = eqNode.getChild(1);
+        expectLabel(tree, eqNode, "=");
+        expectChildren(tree, eqNode, 2);
+        int xNode = tree.getChild(eqNode, 0);
+        int eNode = tree.getChild(eqNode, 1);
 
         // Reorganize tree
-        rootNode.setLabel("gamma");
-        eqNode.setLabel("lambda");
-
-        rootNode.clearChildren();
-        rootNode.addChild(eqNode);
-        rootNode.addChild(eNode);
-        eqNode.clearChildren();
-        eqNode.addChild(xNode);
-        eqNode.addChild(pNode);
+        tree.setLabel(rootNode, "gamma");
+        tree.setLabel(eqNode, "lambda");
+        tree.setChildren(rootNode, eqNode, eNode);
+        tree.setChildren(eqNode, xNode, pNode);
     }
 
     /**
@@ -116,32 +354,35 @@ public class Converters {
      *                         V   .E
      * </pre>
      *
+     * @param tree     Tree being standardized
      * @param rootNode Root Node
+     * @param block    Indices for the added nodes
      **/
-    private static void stForFuncForm(Node rootNode) {
-        expectLabel(rootNode, "function_form");
-        expectMoreChildren(rootNode, 3);
-
-        int numberOfVNodes = rootNode.getNumberOfChildren() - 2;
-        Node pNode = rootNode.getChild(0);
-        Node eNode = rootNode.getChild(numberOfVNodes + 1);
-        Node[] vNodes = new Node[numberOfVNodes];
+    private static void stForFuncForm(FlatTree tree, int rootNode, Block block) {
+        expectLabel(tree, rootNode, "function_form");
+        expectMoreChildren(tree, rootNode, 3);
+
+        int numberOfVNodes = tree.getNumberOfChildren(rootNode) - 2;
+        int pNode = tree.getFirstChild(rootNode);
+        int[] vNodes = new int[numberOfVNodes];
+        int child = tree.getNextSibling(pNode);
         for (int i = 0; i < numberOfVNodes; i++) {
-            vNodes[i] = rootNode.getChild(i + 1);
+            vNodes[i] = child;
+            child = tree.getNextSibling(child);
         }
+        int eNode = child;
 
         // Reorganize tree
-        rootNode.setLabel("=");
-        rootNode.clearChildren();
-        rootNode.addChild(pNode);
-        Node prevNode = rootNode;
+        tree.setLabel(rootNode, "=");
+        int prevNode = rootNode;
+        int prevChild = pNode;
         for (int i = 0; i < numberOfVNodes; i++) {
-            Node currentNode = new Node("lambda");
-            prevNode.addChild(currentNode);
-            currentNode.addChild(vNodes[i]);
+            int currentNode = block.add("lambda", null);
+            tree.setChildren(prevNode, prevChild, currentNode);
             prevNode = currentNode;
+            prevChild = vNodes[i];
         }
-        prevNode.addChild(eNode);
+        tree.setChildren(prevNode, prevChild, eNode);
     }
 
     /**
@@ -154,33 +395,33 @@ public class Converters {
      *  X   E       X++  E++
      * </pre>
      *
+     * @param tree     Tree being standardized
      * @param rootNode Root Node
+     * @param block    Indices for the added nodes
      **/
-    private static void stForAnd(Node rootNode) {
-        expectLabel(rootNode, "and");
-        expectMoreChildren(rootNode, 2);
+    private static void stForAnd(FlatTree tree, int rootNode, Block block) {
+        expectLabel(tree, rootNode, "and");
+        expectMoreChildren(tree, rootNode, 2);
 
-        int numberOfEqNodes = rootNode.getNumberOfChildren();
-        Node[] eqNodes = new Node[numberOfEqNodes];
+        int numberOfEqNodes = tree.getNumberOfChildren(rootNode);
+        int[] xNodes = new int[numberOfEqNodes];
+        int[] eNodes = new int[numberOfEqNodes];
+        int eqNode = tree.getFirstChild(rootNode);
         for (int i = 0; i < numberOfEqNodes; i++) {
-            eqNodes[i] = rootNode.getChild(i);
-            expectLabel(eqNodes[i], "=");
-            expectChildren(eqNodes[i], 2);
+            expectLabel(tree, eqNode, "=");
+            expectChildren(tree, eqNode, 2);
+            xNodes[i] = tree.getChild(eqNode, 0);
+            eNodes[i] = tree.getChild(eqNode, 1);
+            eqNode = tree.getNextSibling(eqNode);
         }
 
         // Reorganize tree
-        rootNode.setLabel("=");
-        rootNode.clearChildren();
-        Node commaNode = new Node(",");
-        Node tauNode = new Node("tau");
-        rootNode.addChild(commaNode);
-        rootNode.addChild(tauNode);
-        for (int i = 0; i < numberOfEqNodes; i++) {
-            Node xNode = eqNodes[i].getChild(0);
-            Node eNode = eqNodes[i].getChild(1);
-            commaNode.addChild(xNode);
-            tauNode.addChild(eNode);
-        }
+        tree.setLabel(rootNode, "=");
+        int commaNode = block.add(",", null);
+        int tauNode = block.add("tau", null);
+        tree.setChildren(rootNode, commaNode, tauNode);
+        tree.setChildren(commaNode, xNodes);
+        tree.setChildren(tauNode, eNodes);
     }
 
     /**
@@ -195,31 +436,29 @@ public class Converters {
      *                             X    E
      * </pre>
      *
+     * @param tree     Tree being standardized
      * @param rootNode Root Node
+     * @param block    Indices for the added nodes
      **/
-    private static void stForRec(Node rootNode) {
-        expectLabel(rootNode, "rec");
-        expectChildren(rootNode, 1);
-        Node eqNode = rootNode.getChild(0);
+    private static void stForRec(FlatTree tree, int rootNode, Block block) {
+        expectLabel(tree, rootNode, "rec");
+        expectChildren(tree, rootNode, 1);
+        int eqNode = tree.getChild(rootNode, 0);
 
-        expectLabel(eqNode, "=");
-        expectChildren(eqNode, 2);
-        Node xNode = eqNode.getChild(0);
-        Node eNode = eqNode.getChild(1);
+        expectLabel(tree, eqNode, "=");
+        expectChildren(tree, eqNode, 2);
+        int xNode = tree.getChild(eqNode, 0);
+        int eNode = tree.getChild(eqNode, 1);
 
         // Reorganize tree
-        Node secondXNode = xNode.copy();
-        rootNode.setLabel("=");
-        rootNode.clearChildren();
-        Node gammaNode = new Node("gamma");
-        Node yStarNode = new Node("yStar");
-        Node lambdaNode = new Node("lambda");
-        rootNode.addChild(xNode);
-        rootNode.addChild(gammaNode);
-        gammaNode.addChild(yStarNode);
-        gammaNode.addChild(lambdaNode);
-        lambdaNode.addChild(secondXNode);
-        lambdaNode.addChild(eNode);
+        int secondXNode = copy(tree, xNode, block);
+        tree.setLabel(rootNode, "=");
+        int gammaNode = block.add("gamma", null);
+        int yStarNode = block.add("yStar", null);
+        int lambdaNode = block.add("lambda", null);
+        tree.setChildren(rootNode, xNode, gammaNode);
+        tree.setChildren(gammaNode, yStarNode, lambdaNode);
+        tree.setChildren(lambdaNode, secondXNode, eNode);
     }
 
     /**
@@ -230,30 +469,31 @@ public class Converters {
      * V++   E    =>      ++V   .E
      * </pre>
      *
+     * @param tree     Tree being standardized
      * @param rootNode Root Node
+     * @param block    Indices for the added nodes
      **/
-    private static void stForLambda(Node rootNode) {
-        expectLabel(rootNode, "lambda");
-        expectMoreChildren(rootNode, 2);
+    private static void stForLambda(FlatTree tree, int rootNode, Block block) {
+        expectLabel(tree, rootNode, "lambda");
+        expectMoreChildren(tree, rootNode, 2);
 
-        int numberOfVNodes = rootNode.getNumberOfChildren() - 1;
-        Node[] vNodes = new Node[numberOfVNodes];
-        Node eNode = rootNode.getChild(numberOfVNodes);
+        int numberOfVNodes = tree.getNumberOfChildren(rootNode) - 1;
+        int[] vNodes = new int[numberOfVNodes];
+        int child = tree.getFirstChild(rootNode);
         for (int i = 0; i < numberOfVNodes; i++) {
-            vNodes[i] = rootNode.getChild(i);
+            vNodes[i] = child;
+            child = tree.getNextSibling(child);
         }
+        int eNode = child;
 
         // Reorganize tree
-        Node currentLambdaNode = rootNode;
-        currentLambdaNode.clearChildren();
-        currentLambdaNode.addChild(vNodes[0]);
+        int currentLambdaNode = rootNode;
         for (int i = 1; i < numberOfVNodes; i++) {
-            Node newLambdaNode = new Node("lambda");
-            currentLambdaNode.addChild(newLambdaNode);
-            newLambdaNode.addChild(vNodes[i]);
+            int newLambdaNode = block.add("lambda", null);
+            tree.setChildren(currentLambdaNode, vNodes[i - 1], newLambdaNode);
             currentLambdaNode = newLambdaNode;
         }
-        currentLambdaNode.addChild(eNode);
+        tree.setChildren(currentLambdaNode, vNodes[numberOfVNodes - 1], eNode);
     }
 
 
@@ -269,34 +509,32 @@ public class Converters {
      *                 X1  E2
      * </pre>
      *
+     * @param tree     Tree being standardized
      * @param rootNode Root Node
+     * @param block    Indices for the added nodes
      **/
-    private static void stForWithin(Node rootNode) {
-        expectLabel(rootNode, "within");
-        expectChildren(rootNode, 2);
-        Node eq1Node = rootNode.getChild(0);
-        Node eq2Node = rootNode.getChild(1);
-
-        expectLabel(eq1Node, "=");
-        expectChildren(eq1Node, 2);
-        expectLabel(eq2Node, "=");
-        expectChildren(eq2Node, 2);
-        Node x1Node = eq1Node.getChild(0);
-        Node e1Node = eq1Node.getChild(1);
-        Node x2Node = eq2Node.getChild(0);
-        Node e2Node = eq2Node.getChild(1);
+    private static void stForWithin(FlatTree tree, int rootNode, Block block) {
+        expectLabel(tree, rootNode, "within");
+        expectChildren(tree, rootNode, 2);
+        int eq1Node = tree.getChild(rootNode, 0);
+        int eq2Node = tree.getChild(rootNode, 1);
+
+        expectLabel(tree, eq1Node, "=");
+        expectChildren(tree, eq1Node, 2);
+        expectLabel(tree, eq2Node, "=");
+        expectChildren(tree, eq2Node, 2);
+        int x1Node = tree.getChild(eq1Node, 0);
+        int e1Node = tree.getChild(eq1Node, 1);
+        int x2Node = tree.getChild(eq2Node, 0);
+        int e2Node = tree.getChild(eq2Node, 1);
 
         // Reorganize tree
-        Node gammaNode = new Node("gamma");
-        Node lambdaNode = new Node("lambda");
-        rootNode.setLabel("=");
-        rootNode.clearChildren();
-        rootNode.addChild(x2Node);
-        rootNode.addChild(gammaNode);
-        gammaNode.addChild(lambdaNode);
-        gammaNode.addChild(e1Node);
-        lambdaNode.addChild(x1Node);
-        lambdaNode.addChild(e2Node);
+        int gammaNode = block.add("gamma", null);
+        int lambdaNode = block.add("lambda", null);
+        tree.setLabel(rootNode, "=");
+        tree.setChildren(rootNode, x2Node, gammaNode);
+        tree.setChildren(gammaNode, lambdaNode, e1Node);
+        tree.setChildren(lambdaNode, x1Node, e2Node);
     }
 
     /**
@@ -309,23 +547,22 @@ public class Converters {
      *              N   E1
      * </pre>
      *
+     * @param tree     Tree being standardized
      * @param rootNode Root Node
+     * @param block    Indices for the added nodes
      **/
-    private static void stForAt(Node rootNode) {
-        expectLabel(rootNode, "@");
-        expectChildren(rootNode, 3);
-        Node e1Node = rootNode.getChild(0);
-        Node nNode = rootNode.getChild(1);
-        Node e2Node = rootNode.getChild(2);
+    private static void stForAt(FlatTree tree, int rootNode, Block block) {
+        expectLabel(tree, rootNode, "@");
+        expectChildren(tree, rootNode, 3);
+        int e1Node = tree.getChild(rootNode, 0);
+        int nNode = tree.getChild(rootNode, 1);
+        int e2Node = tree.getChild(rootNode, 2);
 
         // Reorganize tree
-        rootNode.clearChildren();
-        rootNode.setLabel("gamma");
-        Node gammaNode = new Node("gamma");
-        rootNode.addChild(gammaNode);
-        rootNode.addChild(e2Node);
-        gammaNode.addChild(nNode);
-        gammaNode.addChild(e1Node);
+        tree.setLabel(rootNode, "gamma");
+        int gammaNode = block.add("gamma", null);
+        tree.setChildren(rootNode, gammaNode, e2Node);
+        tree.setChildren(gammaNode, nNode, e1Node);
     }
 
     /**
@@ -334,9 +571,9 @@ public class Converters {
      * @param node   Node to check
      * @param expect Expected number of children
      */
-    private static void expectChildren(Node node, int expect) {
-        if (!node.hasChildren(expect)) {
-            String errorMessage = String.format("Expected %s node to have %s nodes", node.getLabel(), expect);
+    private static void expectChildren(FlatTree tree, int node, int expect) {
+        if (tree.getNumberOfChildren(node) != expect) {
+            String errorMessage = String.format("Expected %s node to have %s nodes", tree.getLabel(node), expect);
             throw new AstException(errorMessage);
         }
     }
@@ -347,9 +584,9 @@ public class Converters {
      * @param node    Node to check
      * @param minimum Minimum expected number of children
      */
-    private static void expectMoreChildren(Node node, int minimum) {
-        if (node.getNumberOfChildren() < minimum) {
-            String errorMessage = String.format("Expected %s node to have at least %s nodes", node.getLabel(), minimum);
+    private static void expectMoreChildren(FlatTree tree, int node, int minimum) {
+        if (tree.getNumberOfChildren(node) < minimum) {
+            String errorMessage = String.format("Expected %s node to have at least %s nodes", tree.getLabel(node), minimum);
             throw new AstException(errorMessage);
         }
     }
@@ -360,10 +597,118 @@ public class Converters {
      * @param node   Node to check
      * @param expect Expected type
      */
-    private static void expectLabel(Node node, String expect) {
-        if (!node.isLabel(expect)) {
-            String errorMessage = String.format("Expected %s node but found %s node", expect, node.getLabel());
+    private static void expectLabel(FlatTree tree, int node, String expect) {
+        if (!tree.isLabel(node, expect)) {
+            String errorMessage = String.format("Expected %s node but found %s node", expect, tree.getLabel(node));
             throw new AstException(errorMessage);
         }
     }
+
+    /**
+     * Copies the subtree under a node.
+     *
+     * @param node  Root of the subtree
+     * @param block Indices for the copied nodes
+     * @return Root of the copy
+     */
+    private static int copy(FlatTree tree, int node, Block block) {
+        int copied = block.add(tree.getLabel(node), tree.getValue(node));
+        int previous = FlatTree.NONE;
+        for (int child = tree.getFirstChild(node); child != FlatTree.NONE; child = tree.getNextSibling(child)) {
+            int copiedChild = copy(tree, child, block);
+            if (previous == FlatTree.NONE) {
+                tree.setFirstChild(copied, copiedChild);
+            } else {
+                tree.setNextSibling(previous, copiedChild);
+            }
+            previous = copiedChild;
+        }
+        return copied;
+    }
+
+    /**
+     * Indices for the nodes the rules add: new nodes at the end of the tree, or a range
+     * reserved for a task of a parallel standardization.
+     */
+    private static class Block {
+        private final FlatTree tree;
+        private final int end;
+        private int next;
+
+        /**
+         * Block that adds nodes at the end of the tree.
+         */
+        Block(FlatTree tree) {
+            this.tree = tree;
+            this.next = FlatTree.NONE;
+            this.end = FlatTree.NONE;
+        }
+
+        /**
+         * Block of reserved nodes.
+         *
+         * @param start First reserved node
+         * @param count Number of reserved nodes
+         */
+        Block(FlatTree tree, int start, int count) {
+            this.tree = tree;
+            this.next = start;
+            this.end = start + count;
+        }
+
+        int add(String label, String value) {
+            if (end == FlatTree.NONE) {
+                return tree.add(label, value);
+            }
+            if (next == end) {
+                throw new IllegalStateException("Standardization added more nodes than were reserved");
+            }
+            tree.set(next, label, value);
+            return next++;
+        }
+
+        /**
+         * Check that every reserved node was set, so none is left without a label.
+         */
+        void expectUsed() {
+            if (next != end) {
+                throw new IllegalStateException("Standardization added fewer nodes than were reserved");
+            }
+        }
+    }
+
+    /**
+     * Standardizes subtrees with nodes reserved for them.
+     */
+    private static class StandardizeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final FlatTree tree;
+        private final int[] order;
+        private final int[] ranges;
+        private final int start;
+        private final int count;
+
+        /**
+         * @param order  Nodes in preorder
+         * @param ranges Start and end of the range of each subtree in the preorder
+         * @param start  First reserved node
+         * @param count  Number of reserved nodes
+         */
+        StandardizeTask(FlatTree tree, int[] order, int[] ranges, int start, int count) {
+            this.tree = tree;
+            this.order = order;
+            this.ranges = ranges;
+            this.start = start;
+            this.count = count;
+        }
+
+        @Override
+        protected void compute() {
+            Block block = new Block(tree, start, count);
+            for (int i = 0; i < ranges.length; i += 2) {
+                standardizeRange(tree, order, ranges[i], ranges[i + 1], block);
+            }
+            block.expectUsed();
+        }
+    }
 }
@@ -0,0 +1,282 @@
+package tree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.function.IntConsumer;
+
+/**
+ * Tree stored as parallel arrays instead of node objects.
+ * <p>
+ * A node is an index into the arrays, which hold its label, its value, its first child and its
+ * next sibling. Labels and values are ids in a table of distinct strings, so a name used all over
+ * the program is stored once. A node costs four ints, where a {@link Node} costs an object, a
+ * children list and its array, so large asts take a fraction of the heap and are walked without
+ * chasing pointers between objects. Standardization adds nodes at the end and relinks the others.
+ * <pre>
+ * labels         label id of each node
+ * values         value id of each node, NONE for intermediate nodes
+ * firstChildren  first child of each node, NONE for leaves
+ * nextSiblings   next child of the same parent, NONE for the last child
+ * </pre>
+ */
+public class FlatTree {
+    /**
+     * Index of a missing node or value.
+     */
+    public static final int NONE = -1;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final ArrayList<String> strings = new ArrayList<>();
+    private final HashMap<String, Integer> stringIds = new HashMap<>();
+    private int[] labels = new int[INITIAL_CAPACITY];
+    private int[] values = new int[INITIAL_CAPACITY];
+    private int[] firstChildren = new int[INITIAL_CAPACITY];
+    private int[] nextSiblings = new int[INITIAL_CAPACITY];
+    private int size;
+    private int root = NONE;
+
+    /**
+     * @return Root node, NONE if the tree is empty
+     */
+    public int getRoot() {
+        return root;
+    }
+
+    /**
+     * @return Number of nodes, including nodes that standardization left unreachable
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return Node type.
+     */
+    public String getLabel(int node) {
+        return strings.get(labels[node]);
+    }
+
+    /**
+     * @return Node value, null for intermediate nodes.
+     */
+    public String getValue(int node) {
+        return values[node] == NONE ? null : strings.get(values[node]);
+    }
+
+    /**
+     * Boolean specifying whether the label of the node is the specified string.
+     *
+     * @param node  Node to check
+     * @param label Expected label
+     * @return Truth value
+     */
+    public boolean isLabel(int node, String label) {
+        return strings.get(labels[node]).equals(label);
+    }
+
+    /**
+     * @return First child of the node, NONE for a leaf
+     */
+    public int getFirstChild(int node) {
+        return firstChildren[node];
+    }
+
+    /**
+     * @return Next child of the parent of the node, NONE for the last child
+     */
+    public int getNextSibling(int node) {
+        return nextSiblings[node];
+    }
+
+    /**
+     * @return Number of child nodes.
+     */
+    public int getNumberOfChildren(int node) {
+        int children = 0;
+        for (int child = firstChildren[node]; child != NONE; child = nextSiblings[child]) {
+            children++;
+        }
+        return children;
+    }
+
+    /**
+     * Get the child node with specified offset.
+     * Indexing starts from 0. Children are linked, so iterate over many of them with
+     * {@link #getFirstChild} and {@link #getNextSibling} instead.
+     *
+     * @param node Parent node
+     * @param i    Child index to return
+     * @return Child node
+     * @throws IndexOutOfBoundsException If the node has no such child
+     */
+    public int getChild(int node, int i) {
+        int child = firstChildren[node];
+        for (int j = 0; j < i && child != NONE; j++) {
+            child = nextSiblings[child];
+        }
+        if (child == NONE) {
+            throw new IndexOutOfBoundsException(String.format("%s node has no child %s", getLabel(node), i));
+        }
+        return child;
+    }
+
+    /**
+     * Execute a function for each child of the node.
+     *
+     * @param action A lambda expression to execute.
+     */
+    public void forEachChild(int node, IntConsumer action) {
+        for (int child = firstChildren[node]; child != NONE; child = nextSiblings[child]) {
+            action.accept(child);
+        }
+    }
+
+    /**
+     * Add a node without children or siblings.
+     *
+     * @param label Node type
+     * @param value Node value, null for intermediate nodes
+     * @return The new node
+     */
+    int add(String label, String value) {
+        int node = reserve(1);
+        set(node, label, value);
+        return node;
+    }
+
+    /**
+     * @return Id of the string in the string table, added if new
+     */
+    private int idOf(String string) {
+        Integer id = stringIds.get(string);
+        if (id == null) {
+            id = strings.size();
+            strings.add(string);
+            stringIds.put(string, id);
+        }
+        return id;
+    }
+
+    void setRoot(int root) {
+        this.root = root;
+    }
+
+    /**
+     * Set the label of a node.
+     * Will also change the value to none.
+     * Label must be an intermediate label type.
+     */
+    void setLabel(int node, String label) {
+        labels[node] = idOf(label);
+        values[node] = NONE;
+    }
+
+    void setFirstChild(int node, int child) {
+        firstChildren[node] = child;
+    }
+
+    void setNextSibling(int node, int sibling) {
+        nextSiblings[node] = sibling;
+    }
+
+    /**
+     * Replace the children of a node. The children lose their previous siblings.
+     *
+     * @param node     Parent node
+     * @param children New children in order
+     */
+    void setChildren(int node, int... children) {
+        firstChildren[node] = children.length == 0 ? NONE : children[0];
+        for (int i = 0; i < children.length; i++) {
+            nextSiblings[children[i]] = i + 1 < children.length ? children[i + 1] : NONE;
+        }
+    }
+
+    /**
+     * Add nodes to be set later, so that tasks can add nodes to the tree at the same time,
+     * each in its own range of indices.
+     *
+     * @param count Number of nodes
+     * @return First of the new nodes
+     */
+    int reserve(int count) {
+        int first = size;
+        if (size + count > labels.length) {
+            int capacity = Math.max(size * 2, size + count);
+            labels = Arrays.copyOf(labels, capacity);
+            values = Arrays.copyOf(values, capacity);
+            firstChildren = Arrays.copyOf(firstChildren, capacity);
+            nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+        }
+        Arrays.fill(firstChildren, first, first + count, NONE);
+        Arrays.fill(nextSiblings, first, first + count, NONE);
+        size += count;
+        return first;
+    }
+
+    /**
+     * Set a reserved node. The strings must be in the string table already when nodes are set
+     * by several tasks at once.
+     *
+     * @param node  Reserved node
+     * @param label Node type
+     * @param value Node value, null for intermediate nodes
+     */
+    void set(int node, String label, String value) {
+        labels[node] = idOf(label);
+        values[node] = value == null ? NONE : idOf(value);
+        firstChildren[node] = NONE;
+        nextSiblings[node] = NONE;
+    }
+
+    /**
+     * Add strings to the string table.
+     */
+    void intern(String... strings) {
+        for (String string : strings) {
+            idOf(string);
+        }
+    }
+
+    /**
+     * Flatten a tree of nodes.
+     *
+     * @param root Root of the tree
+     * @return Tree with the same nodes
+     */
+    public static FlatTree of(Node root) {
+        FlatTree tree = new FlatTree();
+        tree.setRoot(tree.addAll(root));
+        return tree;
+    }
+
+    private int addAll(Node node) {
+        int flat = add(node.getLabel(), node.getValue());
+        int previous = NONE;
+        for (int i = 0; i < node.getNumberOfChildren(); i++) {
+            int child = addAll(node.getChild(i));
+            if (previous == NONE) {
+                firstChildren[flat] = child;
+            } else {
+                nextSiblings[previous] = child;
+            }
+            previous = child;
+        }
+        return flat;
+    }
+
+    /**
+     * Build the tree of nodes under a node.
+     *
+     * @param node Root of the subtree
+     * @return Root node of a copy of the subtree
+     */
+    public Node toNode(int node) {
+        Node copied = new Node(getLabel(node), getValue(node));
+        for (int child = firstChildren[node]; child != NONE; child = nextSiblings[child]) {
+            copied.addChild(toNode(child));
+        }
+        return copied;
+    }
+}
@@ -138,6 +138,22 @@ public class Node {
         child.parent = this;
     }
 
+    /**
+     * Take the label, value and children of another node, which loses its children.
+     * The parent of this node is kept.
+     *
+     * @param other Node to take the place of
+     */
+    void replaceWith(Node other) {
+        clearChildren();
+        this.label = other.label;
+        this.value = other.value;
+        for (Node child : other.children) {
+            addChild(child);
+        }
+        other.children.clear();
+    }
+
     /**
      * Copies the complete tree starting from this node.
      *
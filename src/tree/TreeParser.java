@@ -1,16 +1,34 @@
 package tree;
 
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Scanner;
+import java.util.Set;
 
 /**
  * Helper class to parse tree from string.
+ * <p>
+ * Each line is a node, nested one dot deeper than its parent. Lines that are nested more than one
+ * level below the line before them, or that are not a node of the RPAL ast, such as the error of a
+ * front end that could not parse the program, are reported with {@link AstParseException}.
  */
 public class TreeParser {
+    /**
+     * Labels of the nodes that are not written in angle brackets.
+     */
+    private static final Set<String> LABELS = new HashSet<>(Arrays.asList(
+            "let", "lambda", "where", "tau", "aug", "->", "or", "&", "not", "gr", "ge", "ls", "le", "eq", "ne",
+            "+", "-", "neg", "*", "/", "**", "@", "gamma", "within", "and", "rec", "=", "function_form", "()", ","));
+
     /**
      * Parse node from the given file
      *
@@ -28,48 +46,27 @@ public class TreeParser {
      *
      * @param lines String array to parse tree
      * @return Parsed tree root node
+     * @throws AstParseException If a line is not a node or is nested too deep
      */
     public static Node nodeFromString(List<String> lines) {
         NodeWithDepth root = null;
         NodeWithDepth parent = null;
+        int lineNumber = 0;
         for (String line : lines) {
+            lineNumber++;
             line = line.trim();
             if (line.isEmpty()) continue;
 
             String data = trimLeadingDots(line);
             int currentDepth = line.length() - data.length();
             if (currentDepth == 0 && root != null) break;
+            checkDepth(lineNumber, line, currentDepth, parent == null ? -1 : parent.getDepth());
             while (parent != null && parent.getDepth() >= currentDepth) {
                 parent = parent.getParent();
             }
 
-            NodeWithDepth node;
-            if (data.startsWith("<") && data.endsWith(">")) {
-                // ID/Value nodes
-                String label, value;
-                if (data.contains(":")) {
-                    // Str, Int, ... value nodes
-                    int borderPos = data.indexOf(':');
-                    label = data.substring(1, borderPos).toLowerCase();
-                    if (label.equals("str")) {
-                        // Str nodes: Remove quotations
-                        value = data.substring(borderPos + 2, data.length() - 2);
-                        // Evaluate string with \n,\t unescaped.
-                        value = unescapeJavaString(value);
-                    } else {
-                        // Int nodes
-                        value = data.substring(borderPos + 1, data.length() - 1);
-                    }
-                } else {
-                    // Truth, value nodes
-                    label = data.substring(1, data.length() - 1).toLowerCase();
-                    value = null;
-                }
-                node = new NodeWithDepth(parent, label, value, currentDepth);
-            } else {
-                // Other nodes
-                node = new NodeWithDepth(parent, data, currentDepth);
-            }
+            String[] labelAndValue = labelAndValue(lineNumber, line, data);
+            NodeWithDepth node = new NodeWithDepth(parent, labelAndValue[0], labelAndValue[1], currentDepth);
             if (parent == null) {
                 root = node;
             }
@@ -78,6 +75,175 @@ public class TreeParser {
         return root;
     }
 
+    /**
+     * Parse a flat tree from the given file, reading one line at a time.
+     *
+     * @param fileName Filename/path as a string
+     * @return Parsed tree, without a root if the file has no nodes
+     * @throws FileNotFoundException If file did not exist
+     * @throws IOException           If the file cannot be read
+     */
+    public static FlatTree flatTreeFromFile(String fileName) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new FileReader(fileName))) {
+            return flatTreeFromString(reader.lines()::iterator);
+        } catch (UncheckedIOException exception) {
+            throw exception.getCause();
+        }
+    }
+
+    /**
+     * Parse a flat tree from the given lines.
+     * Nodes are added in preorder, so the nodes of a subtree are next to each other.
+     *
+     * @param lines Lines to parse tree
+     * @return Parsed tree, without a root if there are no nodes
+     * @throws AstParseException If a line is not a node or is nested too deep
+     */
+    public static FlatTree flatTreeFromString(Iterable<String> lines) {
+        FlatTree tree = new FlatTree();
+        // Path from the root to the last node, with the depth and the last child of each
+        int[] path = new int[64];
+        int[] depths = new int[64];
+        int[] lastChildren = new int[64];
+        int pathLength = 0;
+        int lineNumber = 0;
+        for (String line : lines) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty()) continue;
+
+            String data = trimLeadingDots(line);
+            int currentDepth = line.length() - data.length();
+            if (currentDepth == 0 && tree.getRoot() != FlatTree.NONE) break;
+            checkDepth(lineNumber, line, currentDepth, pathLength == 0 ? -1 : depths[pathLength - 1]);
+            while (pathLength > 0 && depths[pathLength - 1] >= currentDepth) {
+                pathLength--;
+            }
+
+            String[] labelAndValue = labelAndValue(lineNumber, line, data);
+            int node = tree.add(labelAndValue[0], labelAndValue[1]);
+            if (pathLength == 0) {
+                tree.setRoot(node);
+            } else if (lastChildren[pathLength - 1] == FlatTree.NONE) {
+                tree.setFirstChild(path[pathLength - 1], node);
+            } else {
+                tree.setNextSibling(lastChildren[pathLength - 1], node);
+            }
+            if (pathLength > 0) {
+                lastChildren[pathLength - 1] = node;
+            }
+            if (pathLength == path.length) {
+                path = Arrays.copyOf(path, pathLength * 2);
+                depths = Arrays.copyOf(depths, pathLength * 2);
+                lastChildren = Arrays.copyOf(lastChildren, pathLength * 2);
+            }
+            path[pathLength] = node;
+            depths[pathLength] = currentDepth;
+            lastChildren[pathLength] = FlatTree.NONE;
+            pathLength++;
+        }
+        return tree;
+    }
+
+    /**
+     * Check that a node is nested at most one level below the node before it.
+     *
+     * @param lineNumber    Number of the line, from 1
+     * @param line          Line of the node
+     * @param depth         Depth of the node
+     * @param previousDepth Depth of the node before it, -1 for the first node
+     * @throws AstParseException If the node is nested deeper
+     */
+    private static void checkDepth(int lineNumber, String line, int depth, int previousDepth) {
+        if (previousDepth < 0 && depth > 0) {
+            throw new AstParseException(String.format("Line %d is nested below no node: %s", lineNumber, line));
+        }
+        if (depth > previousDepth + 1) {
+            throw new AstParseException(String.format("Line %d is nested more than one level below the node before it: %s",
+                    lineNumber, line));
+        }
+    }
+
+    /**
+     * Decode the text of a node.
+     *
+     * @param lineNumber Number of the line, from 1
+     * @param line       Line of the node, for the error
+     * @param data       Line without the leading dots
+     * @return Label and value (null for intermediate nodes) of the node
+     * @throws AstParseException If the text is not a node of the RPAL ast
+     */
+    private static String[] labelAndValue(int lineNumber, String line, String data) {
+        if (!isNode(data)) {
+            throw new AstParseException(String.format("Line %d is not an ast node: %s", lineNumber, line));
+        }
+        return labelAndValue(data);
+    }
+
+    /**
+     * @param data Line without the leading dots
+     * @return Whether the text is a node of the RPAL ast: an operator, an identifier, an integer,
+     * a quoted string or a constant
+     */
+    private static boolean isNode(String data) {
+        if (!data.startsWith("<")) {
+            return LABELS.contains(data);
+        }
+        if (!data.endsWith(">") || data.length() < 3) {
+            return false;
+        }
+        int borderPos = data.indexOf(':');
+        if (borderPos < 0) {
+            String label = data.substring(1, data.length() - 1).toLowerCase();
+            return label.equals("true") || label.equals("false") || label.equals("nil") || label.equals("dummy");
+        }
+        String value = data.substring(borderPos + 1, data.length() - 1);
+        switch (data.substring(1, borderPos).toLowerCase()) {
+            case "id":
+                return !value.isEmpty();
+            case "int":
+                return value.matches("[0-9]+");
+            case "str":
+                return value.length() >= 2 && value.startsWith("'") && value.endsWith("'");
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Decode the text of a node.
+     *
+     * @param data Line without the leading dots
+     * @return Label and value (null for intermediate nodes) of the node
+     */
+    private static String[] labelAndValue(String data) {
+        if (data.startsWith("<") && data.endsWith(">")) {
+            // ID/Value nodes
+            String label, value;
+            if (data.contains(":")) {
+                // Str, Int, ... value nodes
+                int borderPos = data.indexOf(':');
+                label = data.substring(1, borderPos).toLowerCase();
+                if (label.equals("str")) {
+                    // Str nodes: Remove quotations
+                    value = data.substring(borderPos + 2, data.length() - 2);
+                    // Evaluate string with \n,\t unescaped.
+                    value = unescapeJavaString(value);
+                } else {
+                    // Int nodes
+                    value = data.substring(borderPos + 1, data.length() - 1);
+                }
+            } else {
+                // Truth, value nodes
+                label = data.substring(1, data.length() - 1).toLowerCase();
+                value = null;
+            }
+            return new String[]{label, value};
+        }
+        // Other nodes
+        return new String[]{data, null};
+    }
+
     /**
      * Reads the given file.
      *